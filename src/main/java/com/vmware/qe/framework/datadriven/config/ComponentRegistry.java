@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.config;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.KEY_DEFAULT;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Named components of one kind, each created only when it is first asked for.<br>
+ * Components are registered by class name, from dd-components-config.xml or from the
+ * META-INF/services files of the component interface as read by java.util.ServiceLoader, or as
+ * instances at runtime. {@link #get(Object)} loads and instantiates the class of the component
+ * the first time, recording how long that took, see {@link #getStartupCosts()}. The name
+ * {@value com.vmware.qe.framework.datadriven.core.DDConstants#KEY_DEFAULT} stands for the
+ * default component, if one was registered, and is a key of the map like the name of the
+ * component. Iterating creates the components as they are reached, in the order they were
+ * registered, followed by the default component.<br>
+ * Registration and lookup may happen from any thread.<br>
+ *
+ * @param <T> type of the components.
+ */
+public final class ComponentRegistry<T> extends AbstractMap<String, T> {
+    private static final Logger log = LoggerFactory.getLogger(ComponentRegistry.class);
+    private static final String SERVICES_DIR = "META-INF/services/";
+    private final Class<T> type;
+    private final Map<String, Component> components = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+    private volatile String defaultName;
+
+    /**
+     * @param type type of the components.
+     */
+    public ComponentRegistry(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Registers a component to be created from the given class when first asked for. A component
+     * of the same name is replaced.<br>
+     *
+     * @param name name of the component.
+     * @param className class of the component, with a public no-argument constructor, loaded by
+     *        the class loader of the registry.
+     * @param isDefault whether the component is the default one.
+     */
+    public void register(String name, String className, boolean isDefault) {
+        register(name, new Component(name, className, ComponentRegistry.class.getClassLoader(),
+                null), isDefault);
+    }
+
+    /**
+     * Registers a component which is already created. A component of the same name is
+     * replaced.<br>
+     *
+     * @param name name of the component.
+     * @param component the component.
+     * @param isDefault whether the component is the default one.
+     */
+    public void register(String name, T component, boolean isDefault) {
+        register(name, new Component(name, component.getClass().getName(),
+                component.getClass().getClassLoader(), component), isDefault);
+    }
+
+    /**
+     * Registers the components listed in the META-INF/services files of the component type, named
+     * by the simple name of their class. Classes already registered are left out.<br>
+     *
+     * @param classLoader class loader to look up the files and load the classes with.
+     * @return number of components registered.
+     */
+    public int registerServices(ClassLoader classLoader) {
+        Set<String> classNames = new HashSet<>();
+        for (Component component : components.values()) {
+            classNames.add(component.className);
+        }
+        int registered = 0;
+        try {
+            Enumeration<URL> files = classLoader.getResources(SERVICES_DIR + type.getName());
+            while (files.hasMoreElements()) {
+                URL file = files.nextElement();
+                for (String className : readServices(file)) {
+                    if (!classNames.add(className)) {
+                        continue;
+                    }
+                    String name = className.substring(className.lastIndexOf('.') + 1);
+                    if (components.containsKey(name)) {
+                        name = className;
+                    }
+                    register(name, new Component(name, className, classLoader, null), false);
+                    registered++;
+                }
+            }
+        } catch (IOException e) {
+            throw new DDException("Error reading services of " + type.getName(), e);
+        }
+        return registered;
+    }
+
+    /**
+     * @return name of the default component, null if there is none.
+     */
+    public String getDefaultName() {
+        return defaultName;
+    }
+
+    /**
+     * @return the time in nanoseconds taken to create each component created so far.
+     */
+    public Map<String, Long> getStartupCosts() {
+        Map<String, Long> costs = new LinkedHashMap<>();
+        for (String name : names) {
+            Component component = components.get(name);
+            if (component != null && component.startupNanos >= 0) {
+                costs.put(name, component.startupNanos);
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Gets the component of given name, creating it if it was not created yet.<br>
+     *
+     * @return the component, null if there is none of the name.
+     * @throws DDException if the component can't be created.
+     */
+    @Override
+    public T get(Object name) {
+        Component component = lookup(name);
+        return component == null ? null : component.getInstance();
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return lookup(name) != null;
+    }
+
+    /**
+     * Registers the component at runtime, see {@link #register(String, Object, boolean)}.<br>
+     *
+     * @return the component which was replaced, or the previous default component for the name
+     *         {@value com.vmware.qe.framework.datadriven.core.DDConstants#KEY_DEFAULT}, null if
+     *         it was never created.
+     */
+    @Override
+    public T put(String name, T component) {
+        Component old = lookup(name);
+        if (KEY_DEFAULT.equals(name)) {
+            register(component.getClass().getName(), component, true);
+        } else {
+            register(name, component, false);
+        }
+        return old == null ? null : old.instance;
+    }
+
+    @Override
+    public int size() {
+        return components.size() + (lookup(KEY_DEFAULT) == null ? 0 : 1);
+    }
+
+    @Override
+    public Set<Map.Entry<String, T>> entrySet() {
+        return new AbstractSet<Map.Entry<String, T>>() {
+            @Override
+            public Iterator<Map.Entry<String, T>> iterator() {
+                final Iterator<String> it = names.iterator();
+                return new Iterator<Map.Entry<String, T>>() {
+                    private Map.Entry<String, T> next;
+                    private boolean defaultReached;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (next == null && it.hasNext()) {
+                            next = components.get(it.next());
+                        }
+                        if (next == null && !defaultReached) {
+                            defaultReached = true;
+                            Component aDefault = lookup(KEY_DEFAULT);
+                            next = aDefault == null ? null : new DefaultEntry(aDefault);
+                        }
+                        return next != null;
+                    }
+
+                    @Override
+                    public Map.Entry<String, T> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, T> entry = next;
+                        next = null;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ComponentRegistry.this.size();
+            }
+        };
+    }
+
+    private synchronized void register(String name, Component component, boolean isDefault) {
+        if (name == null || KEY_DEFAULT.equals(name)) {
+            throw new DDException("Invalid name for " + type.getSimpleName() + ": " + name);
+        }
+        if (components.put(name, component) == null) {
+            names.add(name);
+        }
+        if (isDefault) {
+            defaultName = name;
+        }
+        log.debug("Registered {} '{}': {}", type.getSimpleName(), name, component.className);
+    }
+
+    private Component lookup(Object name) {
+        if (KEY_DEFAULT.equals(name)) {
+            String aDefault = defaultName;
+            return aDefault == null ? null : components.get(aDefault);
+        }
+        return name == null ? null : components.get(name);
+    }
+
+    private static List<String> readServices(URL file) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.openStream(),
+                StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null;) {
+                int comment = line.indexOf('#');
+                String className = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!className.isEmpty()) {
+                    classNames.add(className);
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * A registered component, created when its value is first asked for.<br>
+     */
+    private final class Component implements Map.Entry<String, T> {
+        private final String name;
+        private final String className;
+        private final ClassLoader classLoader;
+        private volatile T instance;
+        private volatile long startupNanos = -1;
+
+        private Component(String name, String className, ClassLoader classLoader, T instance) {
+            this.name = name;
+            this.className = className;
+            this.classLoader = classLoader;
+            this.instance = instance;
+        }
+
+        private T getInstance() {
+            T result = instance;
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        result = create();
+                        instance = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private T create() {
+            long start = System.nanoTime();
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new DDException("Class not found: " + className, e);
+            }
+            if (!type.isAssignableFrom(clazz)) {
+                throw new DDException("Class " + className + " of " + type.getSimpleName()
+                        + " '" + name + "' is not a " + type.getName());
+            }
+            T result;
+            try {
+                result = type.cast(clazz.getConstructor().newInstance());
+            } catch (InvocationTargetException e) {
+                throw new DDException("Error in creating " + type.getSimpleName() + " instance",
+                        e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new DDException("Error in creating " + type.getSimpleName() + " instance",
+                        e);
+            }
+            startupNanos = System.nanoTime() - start;
+            log.info("Created {} '{}' ({}) in {} ms", type.getSimpleName(), name, className,
+                    startupNanos / 1000000.0);
+            return result;
+        }
+
+        @Override
+        public String getKey() {
+            return name;
+        }
+
+        @Override
+        public T getValue() {
+            return getInstance();
+        }
+
+        @Override
+        public T setValue(T value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + className;
+        }
+    }
+
+    /**
+     * The default component under the name
+     * {@value com.vmware.qe.framework.datadriven.core.DDConstants#KEY_DEFAULT}.<br>
+     */
+    private final class DefaultEntry implements Map.Entry<String, T> {
+        private final Component component;
+
+        private DefaultEntry(Component component) {
+            this.component = component;
+        }
+
+        @Override
+        public String getKey() {
+            return KEY_DEFAULT;
+        }
+
+        @Override
+        public T getValue() {
+            return component.getInstance();
+        }
+
+        @Override
+        public T setValue(T value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return KEY_DEFAULT + "=" + component.className;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 package com.vmware.qe.framework.datadriven.config;
 
 import static com.vmware.qe.framework.datadriven.core.DDConstants.DD_COMPONENT_CONFIG_FILE_NAME;
-import static com.vmware.qe.framework.datadriven.core.DDConstants.KEY_DEFAULT;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_CLASS;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_FILTER;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_GENERATOR;
@@ -28,8 +27,7 @@ import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_NAME;
 
 import java.net.URL;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
@@ -47,15 +45,23 @@ import com.vmware.qe.framework.datadriven.core.TestInstanceCreator;
 
 /**
  * Represents the configuration of various components in DD framework.<br>
- * This looks for file with name {@link DDConstants#CONFIG_FILE_NAME} and loads it from class path.<br>
+ * This looks for file with name {@link DDConstants#DD_COMPONENT_CONFIG_FILE_NAME} and loads it from
+ * class path, which may also be a jar. Components listed in the META-INF/services files of the
+ * component interfaces are registered as well. Each component is created only when it is first
+ * selected, see {@link ComponentRegistry}, and more can be registered at runtime.<br>
  */
 public class DDComponentsConfig {
     private static final Logger log = LoggerFactory.getLogger(DDComponentsConfig.class);
-    private final Map<String, DataSupplier> dataSupplierMap = new HashMap<>();
-    private final Map<String, DataGenerator> dataGeneratorMap = new HashMap<>();
-    private final Map<String, DataFilter> dataFilterMap = new HashMap<>();
-    private final Map<String, TestInstanceCreator> instanceCreatorMap = new HashMap<>();
-    private final Map<String, DataInjector> dataInjectorMap = new HashMap<>();
+    private final ComponentRegistry<DataSupplier> dataSupplierMap = new ComponentRegistry<>(
+            DataSupplier.class);
+    private final ComponentRegistry<DataGenerator> dataGeneratorMap = new ComponentRegistry<>(
+            DataGenerator.class);
+    private final ComponentRegistry<DataFilter> dataFilterMap = new ComponentRegistry<>(
+            DataFilter.class);
+    private final ComponentRegistry<TestInstanceCreator> instanceCreatorMap =
+            new ComponentRegistry<>(TestInstanceCreator.class);
+    private final ComponentRegistry<DataInjector> dataInjectorMap = new ComponentRegistry<>(
+            DataInjector.class);
     private static final DDComponentsConfig instance = new DDComponentsConfig();
 
     public static DDComponentsConfig getInstance() {
@@ -64,118 +70,76 @@ public class DDComponentsConfig {
 
     private DDComponentsConfig() throws DDException {
         log.info("Initializing Components...");
+        long start = System.nanoTime();
         final XMLConfiguration ddconfig;
         try {
             log.info("Config file '{}'", DD_COMPONENT_CONFIG_FILE_NAME);
             URL cfgFile = this.getClass().getResource(DD_COMPONENT_CONFIG_FILE_NAME);
             log.info("Loading Components from: {}", cfgFile);
-            ddconfig = new XMLConfiguration(cfgFile.getFile());
+            if (cfgFile == null) {
+                throw new DDException("File not found in class path");
+            }
+            ddconfig = new XMLConfiguration(cfgFile);
         } catch (Exception e) {
             throw new DDException("Error loading File: " + DD_COMPONENT_CONFIG_FILE_NAME, e);
         }
-        List<HierarchicalConfiguration> suppliers = ddconfig.configurationsAt(TAG_DATA_SUPPLIER);
-        for (HierarchicalConfiguration supplier : suppliers) {
-            String name = supplier.getString(TAG_NAME);
-            String className = supplier.getString(TAG_CLASS);
-            Class<?> clazz = registerClass(className);
-            DataSupplier dataSupplier;
-            try {
-                dataSupplier = (DataSupplier) clazz.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new DDException("Error in creating supplier instance", e);
-            }
-            dataSupplierMap.put(name, dataSupplier);
-            if (supplier.getBoolean(TAG_DEFAULT_ATTR, false)) {
-                if (dataSupplierMap.containsKey(KEY_DEFAULT)) {
-                    throw new DDException("multiple default supplier configuration found!!!");
-                } else {
-                    dataSupplierMap.put(KEY_DEFAULT, dataSupplier);
-                }
-            }
-        }
+        register(ddconfig, TAG_DATA_SUPPLIER, dataSupplierMap, true);
         log.info("Data Suppliers: {}", dataSupplierMap.keySet());
-        List<HierarchicalConfiguration> generators = ddconfig.configurationsAt(TAG_DATA_GENERATOR);
-        for (HierarchicalConfiguration generator : generators) {
-            String name = generator.getString(TAG_NAME);
-            String className = generator.getString(TAG_CLASS);
-            Class<?> clazz = registerClass(className);
-            DataGenerator dataGenerator;
-            try {
-                dataGenerator = (DataGenerator) clazz.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new DDException("Error in creating generator instance", e);
-            }
-            dataGeneratorMap.put(name, dataGenerator);
-            if (generator.getBoolean(TAG_DEFAULT_ATTR, false)) {
-                if (dataGeneratorMap.containsKey(KEY_DEFAULT)) {
-                    throw new DDException("multiple default supplier configuration found!!!");
-                } else {
-                    dataGeneratorMap.put(KEY_DEFAULT, dataGenerator);
-                }
-            }
-        }
+        register(ddconfig, TAG_DATA_GENERATOR, dataGeneratorMap, true);
         log.info("Data Generators: {}", dataGeneratorMap.keySet());
-        List<HierarchicalConfiguration> filters = ddconfig.configurationsAt(TAG_DATA_FILTER);
-        for (HierarchicalConfiguration filter : filters) {
-            String name = filter.getString(TAG_NAME);
-            String className = filter.getString(TAG_CLASS);
-            Class<?> clazz = registerClass(className);
-            DataFilter dataFilter;
-            try {
-                dataFilter = (DataFilter) clazz.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new DDException("Error in creating filter instance", e);
-            }
-            dataFilterMap.put(name, dataFilter);
-        }
-        log.info("Data Filters {}", dataFilterMap.keySet());
         // No default for filters, all will be applied...
-        List<HierarchicalConfiguration> instanceCreators = ddconfig
-                .configurationsAt(TAG_INSTANCE_CREATOR);
-        for (HierarchicalConfiguration instanceCreator : instanceCreators) {
-            String name = instanceCreator.getString(TAG_NAME);
-            String className = instanceCreator.getString(TAG_CLASS);
-            Class<?> clazz = registerClass(className);
-            TestInstanceCreator testInstanceCreator;
-            try {
-                testInstanceCreator = (TestInstanceCreator) clazz.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new DDException("Error in creating testInstanceCreator instance", e);
-            }
-            instanceCreatorMap.put(name, testInstanceCreator);
-            if (instanceCreator.getBoolean(TAG_DEFAULT_ATTR, false)) {
-                instanceCreatorMap.put(KEY_DEFAULT, testInstanceCreator);
-            }
-        }
+        register(ddconfig, TAG_DATA_FILTER, dataFilterMap, false);
+        log.info("Data Filters {}", dataFilterMap.keySet());
+        register(ddconfig, TAG_INSTANCE_CREATOR, instanceCreatorMap, false);
         log.info("Instance Creators: {}", instanceCreatorMap.keySet());
-        List<HierarchicalConfiguration> dataInjectors = ddconfig
-                .configurationsAt(TAG_DATA_INJECTOR);
-        for (HierarchicalConfiguration dataInjector : dataInjectors) {
-            String name = dataInjector.getString(TAG_NAME);
-            String className = dataInjector.getString(TAG_CLASS);
-            Class<?> clazz = registerClass(className);
-            DataInjector dataInjectorObj;
-            try {
-                dataInjectorObj = (DataInjector) clazz.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new DDException("Error in creating DataInjector instance", e);
-            }
-            dataInjectorMap.put(name, dataInjectorObj);
-            if (dataInjector.getBoolean(TAG_DEFAULT_ATTR, false)) {
-                dataInjectorMap.put(KEY_DEFAULT, dataInjectorObj);
+        register(ddconfig, TAG_DATA_INJECTOR, dataInjectorMap, false);
+        log.info("Data Injectors  : {}", dataInjectorMap.keySet());
+        log.info("Components registered in {} ms", (System.nanoTime() - start) / 1000000.0);
+    }
+
+    /**
+     * Registers the components of given tag in the config file, then those of the services.<br>
+     *
+     * @param singleDefault whether more than one default component is an error, else the last
+     *        one is the default.
+     */
+    private void register(HierarchicalConfiguration ddconfig, String tag,
+            ComponentRegistry<?> registry, boolean singleDefault) throws DDException {
+        boolean hasDefault = !TAG_DATA_FILTER.equals(tag);
+        for (HierarchicalConfiguration component : ddconfig.configurationsAt(tag)) {
+            String name = component.getString(TAG_NAME);
+            String className = component.getString(TAG_CLASS).trim();
+            boolean isDefault = hasDefault && component.getBoolean(TAG_DEFAULT_ATTR, false);
+            if (isDefault && singleDefault && registry.getDefaultName() != null) {
+                throw new DDException("multiple default " + tag + " configuration found!!!");
             }
+            registry.register(name, className, isDefault);
+        }
+        int services = registry.registerServices(DDComponentsConfig.class.getClassLoader());
+        if (services > 0) {
+            log.info("Registered {} {} from services", services, tag);
         }
-        log.info("Data Injectors  : {}", dataInjectorMap.keySet());
     }
 
-    private Class<?> registerClass(String className) throws DDException {
-        Class<?> clazz = null;
-        try {
-            clazz = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            throw new DDException("Class not found: " + className, e);
+    /**
+     * @return the time in nanoseconds taken to create each component created so far, by kind and
+     *         name of the component.
+     */
+    public Map<String, Long> getStartupCosts() {
+        Map<String, Long> costs = new LinkedHashMap<>();
+        addStartupCosts(costs, TAG_DATA_SUPPLIER, dataSupplierMap);
+        addStartupCosts(costs, TAG_DATA_GENERATOR, dataGeneratorMap);
+        addStartupCosts(costs, TAG_DATA_FILTER, dataFilterMap);
+        addStartupCosts(costs, TAG_INSTANCE_CREATOR, instanceCreatorMap);
+        addStartupCosts(costs, TAG_DATA_INJECTOR, dataInjectorMap);
+        return costs;
+    }
+
+    private static void addStartupCosts(Map<String, Long> costs, String tag,
+            ComponentRegistry<?> registry) {
+        for (Map.Entry<String, Long> cost : registry.getStartupCosts().entrySet()) {
+            costs.put(tag + ":" + cost.getKey(), cost.getValue());
         }
-        return clazz;
     }
 
     public Collection<DataSupplier> getDataSuppliers() {
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+/**
+ * Data filter which can work out what it checks once for a test class, so that the check of each
+ * data is only a lookup.<br>
+ * The compiled predicate must accept the same data as
+ * {@link #canRun(String, HierarchicalConfiguration, HierarchicalConfiguration)} does for the same
+ * class and context.<br>
+ */
+public interface CompilableDataFilter extends DataFilter {
+    /**
+     * Compiles the filter for the given class and context.<br>
+     *
+     * @param className name of the class to which the data is associated with.
+     * @param context Context information.
+     * @return the predicate of the filter, null if the filter accepts all data.
+     */
+    Predicate compile(String className, HierarchicalConfiguration context);
+
+    /**
+     * Check of a data by a compiled filter.<br>
+     */
+    interface Predicate {
+        /**
+         * @param data the data to be filtered.
+         * @return 'true' if the data can be used else 'false'.
+         */
+        boolean accept(HierarchicalConfiguration data);
+    }
+}
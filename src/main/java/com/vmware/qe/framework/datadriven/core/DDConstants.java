@@ -35,12 +35,31 @@ public class DDConstants {
     public final static String TAG_SUPPLIER_TYPE = "supplier.type";
     public final static String TAG_SUPPLIER_DEFAULT = "supplier.default";
     public final static String TAG_SUPPLIER_FILE_PATH = "supplier.file.path";
+    public final static String TAG_SUPPLIER_XML_CACHE = "supplier.xml.cache.enabled";
+    public final static String TAG_SUPPLIER_XML_VALIDATE_ONCE = "supplier.xml.validate.once";
+    public final static String TAG_SUPPLIER_XML_INDEX = "supplier.xml.index.enabled";
+    public final static String TAG_SUPPLIER_CSV_MMAP = "supplier.csv.mmap.enabled";
+    public final static String TAG_SUPPLIER_CSV_PARALLEL = "supplier.csv.parallel.enabled";
+    public final static String TAG_SUPPLIER_CSV_PARALLEL_THRESHOLD = "supplier.csv.parallel.threshold";
+    public final static String TAG_SUPPLIER_TESTID_INDEX = "supplier.testid.index.enabled";
+    public final static String TAG_SUPPLIER_TESTID_INDEX_DIR = "supplier.testid.index.dir";
+    public final static String TAG_FILTER_PUSHDOWN = "filter.pushdown.enabled";
     public final static String TAG_GENERATOR_DYNAMIC = "generator.dynamic.enabled";
     public final static String TAG_GENERATOR_TYPE = "generator.type";
     public final static String TAG_GENERATOR_DEFAULT = "generator.default";
+    public final static String TAG_GENERATOR_STRENGTH = "generator.strength";
+    public final static String TAG_GENERATOR_CACHE = "generator.cache.enabled";
+    public final static String TAG_GENERATOR_CACHE_DIR = "generator.cache.dir";
     public static final String TAG_DATA = "data";
     public final static String TAG_INSTANCE_CREATOR_TYPE = "instancecreator.type";
     public final static String TAG_INSTANCE_CREATOR_DEFAULT = "instancecreator.default";
+    public final static String TAG_INSTANCE_CREATOR_PARALLEL = "instancecreator.parallel.enabled";
+    public final static String TAG_INSTANCE_CREATOR_POOL_SIZE = "instancecreator.parallel.poolsize";
+    public final static String TAG_INSTANCE_CREATOR_LAZY = "instancecreator.lazy.enabled";
+    public final static String TAG_SHARD_INDEX = "shard.index";
+    public final static String TAG_SHARD_COUNT = "shard.count";
+    public final static String TAG_SHARD_MODE = "shard.mode";
+    public final static String TAG_SHARD_COST_FILE = "shard.cost.file";
     public final static String TAG_DATA_INJECTOR_TYPE = "datainjector.type";
     public final static String TAG_DATA_INJECTOR_DEFAULT = "datainjector.default";
     public final static String DATA_INJECTOR_DEFAULT_PROPERTY_NAME = "data";
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+/**
+ * Compiled filter which accepts the data having at least one of the keys with a value in the
+ * accepted values of that key. Only the first value of a key is checked.<br>
+ * Unlike other predicates it's condition can be read, so that a {@link SelectiveDataSupplier} can
+ * leave out the data it rejects while loading.<br>
+ */
+public final class KeyValuePredicate implements CompilableDataFilter.Predicate {
+    private final Map<String, Set<String>> acceptedValues;
+
+    /**
+     * @param acceptedValues accepted values of each key.
+     */
+    public KeyValuePredicate(Map<String, ? extends Collection<String>> acceptedValues) {
+        Map<String, Set<String>> values = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : acceptedValues.entrySet()) {
+            values.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<String>(entry
+                    .getValue())));
+        }
+        this.acceptedValues = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return accepted values of each key, in the order of the keys.
+     */
+    public Map<String, Set<String>> getAcceptedValues() {
+        return acceptedValues;
+    }
+
+    @Override
+    public boolean accept(HierarchicalConfiguration data) {
+        for (Map.Entry<String, Set<String>> entry : acceptedValues.entrySet()) {
+            if (data.containsKey(entry.getKey())
+                    && entry.getValue().contains(data.getString(entry.getKey(), ""))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyValuePredicate" + acceptedValues;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+/**
+ * Data supplier which can leave out the data rows rejected by the filters while loading them, so
+ * that rows which will be filtered out anyway are never built.<br>
+ * The filters are still applied to the supplied rows, so a supplier may keep any row it can not
+ * check cheaply.<br>
+ */
+public interface SelectiveDataSupplier extends DataSupplier {
+    /**
+     * Gets the data like {@link DataSupplier#getData(String, HierarchicalConfiguration)}, leaving
+     * out the &lt;data&gt; rows rejected by any of the given predicates. Data used for generating
+     * rows is supplied as it is.<br>
+     * 
+     * @param nameSpace namespace for which data needs to be supplied. Generally it's FQCN of test.
+     * @param context The context of the application.
+     * @param selection predicates every supplied row must be accepted by, can be empty.
+     * @return the data sets in the form of HierarchicalConfiguration
+     * @throws DDException If data can't be fetched for any reason.
+     */
+    HierarchicalConfiguration getData(String nameSpace, HierarchicalConfiguration context,
+            List<KeyValuePredicate> selection);
+}
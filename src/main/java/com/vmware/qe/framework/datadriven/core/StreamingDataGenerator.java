@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import java.util.Iterator;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+/**
+ * Data generator which can hand out the generated data one at a time, so that the data need not
+ * be held in memory all together.<br>
+ */
+public interface StreamingDataGenerator extends DataGenerator {
+    /**
+     * Generate the data's based on information given in 'data' and using context if required,
+     * lazily. Each call to next() of the returned iterator generates the next data.<br>
+     * The iterator yields the same data in the same order as
+     * {@link #generate(HierarchicalConfiguration, HierarchicalConfiguration)} returns.<br>
+     * 
+     * @param data the Data which will be use for generation purpose.
+     * @param context Context containing the configuration info.
+     * @return Iterator over the generated data.
+     */
+    Iterator<HierarchicalConfiguration> iterate(HierarchicalConfiguration data,
+            HierarchicalConfiguration context);
+}
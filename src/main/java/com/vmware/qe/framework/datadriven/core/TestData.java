@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.HierarchicalConfiguration.Node;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+
+/**
+ * Compact, immutable data of one test, used instead of a node tree for data which only has values
+ * directly under it.<br>
+ * The data is a table of keys shared by all data of the same shape, see {@link Keys}, and an array
+ * holding the values of each key. The keys are the keys a HierarchicalConfiguration would report
+ * for the data, like 'user' or '[@test-id]', so the data can be handed out as a
+ * {@link TestDataConfiguration} which answers the lookups of those keys from the array and builds
+ * the node tree only when something needs it.<br>
+ * Data can also be composed of other data, see {@link Composer}, in which case it only references
+ * the parts and looks up the values in them, so parts shared by many data are held once.<br>
+ */
+public final class TestData implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String[] NO_VALUES = new String[0];
+    private final Keys keys;
+    /** values of each key: null, a String or a String array with more than one value. */
+    private final Object[] values;
+    /** the parts of composed data, null otherwise. */
+    private final TestData[] parts;
+    /** the part and the slot in the part of each value of each key of composed data. */
+    private final int[][] sources;
+
+    private TestData(Keys keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.parts = null;
+        this.sources = null;
+    }
+
+    private TestData(Composer.Layout layout, TestData[] parts) {
+        this.keys = layout.keys;
+        this.values = null;
+        this.parts = parts;
+        this.sources = layout.sources;
+    }
+
+    /**
+     * @return values of the key in given slot: null, a String or a String array.
+     */
+    private Object value(int slot) {
+        if (parts == null) {
+            return values[slot];
+        }
+        int[] source = sources[slot];
+        if (source.length == 2) {
+            return parts[source[0]].value(source[1]);
+        }
+        List<String> slotValues = new ArrayList<>();
+        for (int i = 0; i < source.length; i += 2) {
+            slotValues.addAll(Arrays.asList(parts[source[i]].getValues(source[i + 1])));
+        }
+        return slotValues.isEmpty() ? null : slotValues.size() == 1 ? slotValues.get(0)
+                : slotValues.toArray(new String[slotValues.size()]);
+    }
+
+    /**
+     * @return the keys of this data, shared with other data of the same shape.
+     */
+    public Keys getKeys() {
+        return keys;
+    }
+
+    /**
+     * @param slot index of the key in the {@link Keys}.
+     * @return values of the key, empty if the key has no value in this data.
+     */
+    public String[] getValues(int slot) {
+        Object value = value(slot);
+        if (value == null) {
+            return NO_VALUES;
+        }
+        return value instanceof String ? new String[] { (String) value } : ((String[]) value)
+                .clone();
+    }
+
+    /**
+     * @param key the key.
+     * @return values of the key, empty if the key has no value in this data.
+     */
+    public List<String> getList(String key) {
+        int slot = keys.slotOf(key);
+        return slot < 0 ? Collections.<String> emptyList() : Arrays.asList(getValues(slot));
+    }
+
+    /**
+     * @param key the key.
+     * @return first value of the key, null if the key has no value in this data.
+     */
+    public String getString(String key) {
+        int slot = keys.slotOf(key);
+        Object value = slot < 0 ? null : value(slot);
+        if (value == null) {
+            return null;
+        }
+        return value instanceof String ? (String) value : ((String[]) value)[0];
+    }
+
+    /**
+     * @param key the key.
+     * @return true if the key has a value in this data.
+     */
+    public boolean containsKey(String key) {
+        int slot = keys.slotOf(key);
+        return slot >= 0 && value(slot) != null;
+    }
+
+    /**
+     * @return test-id of this data, null if it has none.
+     */
+    public String getTestId() {
+        return getString(TAG_TESTID_ATTR);
+    }
+
+    /**
+     * @return true if no key has a value.
+     */
+    public boolean isEmpty() {
+        for (int slot = 0; slot < keys.size(); slot++) {
+            if (value(slot) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return iterator over the keys which have a value in this data, in the order of the keys.
+     */
+    public Iterator<String> keyIterator() {
+        return new Iterator<String>() {
+            private int slot = nextSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String key = keys.get(slot);
+                slot = nextSlot(slot + 1);
+                return key;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int nextSlot(int from) {
+                int next = from;
+                while (next < keys.size() && value(next) == null) {
+                    next++;
+                }
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Value of a key as HierarchicalConfiguration.getProperty returns it: null, the only value or
+     * a new list of all the values.<br>
+     */
+    Object getProperty(int slot) {
+        Object value = value(slot);
+        if (value instanceof String[]) {
+            return new ArrayList<Object>(Arrays.asList((Object[]) value));
+        }
+        return value;
+    }
+
+    /**
+     * @return new configuration backed by this data.
+     */
+    public HierarchicalConfiguration toConfiguration() {
+        return new TestDataConfiguration(this);
+    }
+
+    /**
+     * Builds the node tree of this data, the same way it is built by adding the values of each key
+     * to an empty configuration.<br>
+     *
+     * @param name name of the root node, can be null.
+     * @return the new root node.
+     */
+    public Node toNode(String name) {
+        TreeBuilder builder = new TreeBuilder();
+        for (int slot = 0; slot < keys.size(); slot++) {
+            for (String value : getValues(slot)) {
+                builder.add(keys.get(slot), value);
+            }
+        }
+        Node root = builder.getRoot();
+        root.setName(name);
+        return root;
+    }
+
+    /**
+     * Turns the given node in to compact data if it only has values directly under it: attributes
+     * and children without attributes or children of their own.<br>
+     *
+     * @param node the node of the data.
+     * @param interner interner of the keys, shared by all data of a namespace.
+     * @return the data, or null if the node has more structure than data can hold.
+     */
+    public static TestData fromNode(ConfigurationNode node, Keys.Interner interner) {
+        if (node.getValue() != null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        List<List<String>> slotValues = new ArrayList<>();
+        for (ConfigurationNode attribute : node.getAttributes()) {
+            if (!collect("[@" + attribute.getName() + "]", attribute, names, slotValues)) {
+                return null;
+            }
+        }
+        for (ConfigurationNode child : node.getChildren()) {
+            if (child.getChildrenCount() > 0 || child.getAttributeCount() > 0) {
+                return null;
+            }
+            String key = childKey(child.getName());
+            if (key == null || !collect(key, child, names, slotValues)) {
+                return null;
+            }
+        }
+        Keys keys = interner.intern(names);
+        Builder builder = new Builder(keys);
+        for (int slot = 0; slot < slotValues.size(); slot++) {
+            for (String value : slotValues.get(slot)) {
+                builder.add(slot, value);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param name name of a child node.
+     * @return key of the child, null if the name can not be given in a key.
+     */
+    public static String childKey(String name) {
+        if (name == null || name.isEmpty() || name.indexOf('[') >= 0 || name.indexOf(']') >= 0
+                || name.indexOf('(') >= 0 || name.indexOf(')') >= 0) {
+            return null;
+        }
+        return name.replace(".", "..");
+    }
+
+    private static boolean collect(String key, ConfigurationNode node, List<String> names,
+            List<List<String>> slotValues) {
+        Object value = node.getValue();
+        if (!(value instanceof String)) {
+            return false; // nodes without value can not be told apart from missing ones.
+        }
+        int slot = names.indexOf(key);
+        if (slot < 0) {
+            names.add(key);
+            slotValues.add(new ArrayList<String>(1));
+            slot = names.size() - 1;
+        }
+        slotValues.get(slot).add((String) value);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int slot = 0; slot < keys.size(); slot++) {
+            if (value(slot) != null) {
+                builder.append(builder.length() == 1 ? "" : ", ").append(keys.get(slot))
+                        .append('=').append(Arrays.toString(getValues(slot)));
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Ordered table of keys, shared by all data of the same shape.<br>
+     */
+    public static final class Keys implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] names;
+        private final Map<String, Integer> slots;
+
+        private Keys(List<String> names) {
+            this.names = new String[names.size()];
+            this.slots = new HashMap<>(names.size() * 2);
+            for (int slot = 0; slot < this.names.length; slot++) {
+                this.names[slot] = names.get(slot).intern();
+                if (slots.put(this.names[slot], slot) != null) {
+                    throw new IllegalArgumentException("Duplicate key: " + names.get(slot));
+                }
+            }
+        }
+
+        /**
+         * @param names the keys, in order.
+         * @return new table of the given keys.
+         */
+        public static Keys of(List<String> names) {
+            return new Keys(names);
+        }
+
+        /**
+         * @return number of keys.
+         */
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * @param slot index of the key.
+         * @return the key.
+         */
+        public String get(int slot) {
+            return names[slot];
+        }
+
+        /**
+         * @param key the key.
+         * @return index of the key, -1 if it is not in the table.
+         */
+        public int slotOf(String key) {
+            Integer slot = slots.get(key);
+            return slot == null ? -1 : slot;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(names);
+        }
+
+        /**
+         * Hands out one table for all data with the same keys. Not thread safe.<br>
+         */
+        public static final class Interner {
+            private final Map<List<String>, Keys> tables = new HashMap<>();
+
+            /**
+             * @param names the keys, in order.
+             * @return the table of the given keys.
+             */
+            public Keys intern(List<String> names) {
+                Keys keys = tables.get(names);
+                if (keys == null) {
+                    keys = new Keys(names);
+                    tables.put(new ArrayList<String>(names), keys);
+                }
+                return keys;
+            }
+        }
+    }
+
+    /**
+     * Builds data over a table of keys by adding the values of the keys one by one.<br>
+     */
+    public static final class Builder {
+        private final Keys keys;
+        private final Object[] values;
+
+        public Builder(Keys keys) {
+            this.keys = keys;
+            this.values = new Object[keys.size()];
+        }
+
+        /**
+         * @param key the key, which must be in the table.
+         * @param value the value to add to the values of the key.
+         * @return this builder.
+         */
+        public Builder add(String key, String value) {
+            int slot = keys.slotOf(key);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown key: " + key + " in " + keys);
+            }
+            return add(slot, value);
+        }
+
+        /**
+         * @param slot index of the key.
+         * @param value the value to add to the values of the key.
+         * @return this builder.
+         */
+        public Builder add(int slot, String value) {
+            Object current = values[slot];
+            if (current == null) {
+                values[slot] = value;
+            } else if (current instanceof String) {
+                values[slot] = new String[] { (String) current, value };
+            } else {
+                String[] currentValues = (String[]) current;
+                String[] newValues = Arrays.copyOf(currentValues, currentValues.length + 1);
+                newValues[currentValues.length] = value;
+                values[slot] = newValues;
+            }
+            return this;
+        }
+
+        /**
+         * @return the data, the builder must not be used afterwards.
+         */
+        public TestData build() {
+            return new TestData(keys, values);
+        }
+    }
+
+    /**
+     * Composes data of parts, like appending the parts one after the other to a configuration
+     * does. The keys of the composed data are those of the parts, the keys of children before the
+     * attributes of the root, each key having the values of all parts in order. The way the keys of
+     * the parts map to the composed keys is worked out once for each combination of key tables of
+     * the parts. Not thread safe.<br>
+     */
+    public static final class Composer {
+        private final Keys.Interner interner = new Keys.Interner();
+        private final Map<List<Keys>, Layout> layouts = new HashMap<>();
+
+        /**
+         * @param parts the parts, referenced by the composed data, not copied.
+         * @return the composed data.
+         */
+        public TestData compose(TestData... parts) {
+            List<Keys> partKeys = new ArrayList<>(parts.length);
+            for (TestData part : parts) {
+                partKeys.add(part.keys);
+            }
+            Layout layout = layouts.get(partKeys);
+            if (layout == null) {
+                layout = new Layout(interner, partKeys);
+                layouts.put(partKeys, layout);
+            }
+            return new TestData(layout, parts.clone());
+        }
+
+        /**
+         * Composed keys and the sources of their values for one combination of key tables.<br>
+         */
+        private static final class Layout {
+            private final Keys keys;
+            private final int[][] sources;
+
+            private Layout(Keys.Interner interner, List<Keys> partKeys) {
+                List<String> names = new ArrayList<>();
+                List<String> attributes = new ArrayList<>();
+                for (Keys part : partKeys) {
+                    for (int slot = 0; slot < part.size(); slot++) {
+                        String key = part.get(slot);
+                        List<String> list = key.startsWith("[@") ? attributes : names;
+                        if (!list.contains(key)) {
+                            list.add(key);
+                        }
+                    }
+                }
+                names.addAll(attributes);
+                keys = interner.intern(names);
+                sources = new int[keys.size()][];
+                for (int slot = 0; slot < sources.length; slot++) {
+                    List<Integer> source = new ArrayList<>(2);
+                    for (int part = 0; part < partKeys.size(); part++) {
+                        int partSlot = partKeys.get(part).slotOf(keys.get(slot));
+                        if (partSlot >= 0) {
+                            source.add(part);
+                            source.add(partSlot);
+                        }
+                    }
+                    sources[slot] = new int[source.size()];
+                    for (int i = 0; i < source.size(); i++) {
+                        sources[slot][i] = source.get(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds single values at keys, without splitting them on the list delimiter.<br>
+     */
+    private static final class TreeBuilder extends HierarchicalConfiguration {
+        private static final long serialVersionUID = 1L;
+
+        private void add(String key, String value) {
+            addPropertyDirect(key, value);
+        }
+    }
+}
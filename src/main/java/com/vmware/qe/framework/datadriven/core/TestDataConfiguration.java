@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+import org.apache.commons.configuration.tree.DefaultExpressionEngine;
+import org.apache.commons.configuration.tree.ExpressionEngine;
+
+/**
+ * HierarchicalConfiguration view of a {@link TestData}, for the components which work with
+ * configurations.<br>
+ * Lookups of plain keys like 'user', 'a.b' or '[@test-id]' are answered from the data directly.
+ * Anything else, including any change, first builds the node tree of the data once, after which
+ * this behaves like a plain HierarchicalConfiguration and the data is no longer used; changes are
+ * never visible to other holders of the same data.<br>
+ * Until then no node is held, and values without variables are returned without going through the
+ * interpolator, which would otherwise be created for each configuration.<br>
+ */
+public class TestDataConfiguration extends HierarchicalConfiguration {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern PLAIN_KEY = Pattern
+            .compile("([\\w\\-]+(\\.[\\w\\-]+)*)?(\\[@[\\w\\-]+\\])?");
+    private final TestData data;
+    private final String rootName;
+    private volatile boolean materialized = false;
+
+    public TestDataConfiguration(TestData data) {
+        this(data, null);
+    }
+
+    /**
+     * @param data the data.
+     * @param rootName name of the root node, when the node tree gets built.
+     */
+    public TestDataConfiguration(TestData data, String rootName) {
+        this.data = data;
+        this.rootName = rootName;
+    }
+
+    /**
+     * @return the data backing this configuration, null once the node tree was built, as the
+     *         configuration may have been changed since.
+     */
+    public TestData getTestData() {
+        return materialized ? null : data;
+    }
+
+    /**
+     * @return name of the root node, when the node tree gets built.
+     */
+    public String getRootName() {
+        return rootName;
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        if (!materialized && key != null && hasDefaultSyntax()) {
+            int slot = data.getKeys().slotOf(key);
+            if (slot >= 0) {
+                return data.getProperty(slot);
+            }
+            if (!key.isEmpty() && PLAIN_KEY.matcher(key).matches()) {
+                return null;
+            }
+        }
+        return super.getProperty(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return getProperty(key) != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return materialized ? super.isEmpty() : data.isEmpty();
+    }
+
+    @Override
+    public Iterator<String> getKeys() {
+        return materialized ? super.getKeys() : data.keyIterator();
+    }
+
+    @Override
+    public Node getRoot() {
+        materialize();
+        return super.getRoot();
+    }
+
+    @Override
+    public ConfigurationNode getRootNode() {
+        materialize();
+        return super.getRootNode();
+    }
+
+    @Override
+    public void setRoot(Node node) {
+        super.setRoot(node);
+        materialized = data != null;
+    }
+
+    @Override
+    public void setRootNode(ConfigurationNode rootNode) {
+        if (data == null) {
+            return; // the empty root set up while the super class is being constructed.
+        }
+        super.setRootNode(rootNode);
+        materialized = true;
+    }
+
+    @Override
+    public void setExpressionEngine(ExpressionEngine expressionEngine) {
+        materialize();
+        super.setExpressionEngine(expressionEngine);
+    }
+
+    @Override
+    public Object clone() {
+        if (materialized) {
+            return super.clone();
+        }
+        TestDataConfiguration copy = new TestDataConfiguration(data, rootName);
+        copy.setDelimiterParsingDisabled(isDelimiterParsingDisabled());
+        copy.setListDelimiter(getListDelimiter());
+        copy.setThrowExceptionOnMissing(isThrowExceptionOnMissing());
+        return copy;
+    }
+
+    @Override
+    protected Object interpolate(Object value) {
+        return hasVariables(value) ? super.interpolate(value) : value;
+    }
+
+    @Override
+    protected String interpolate(String base) {
+        return hasVariables(base) ? super.interpolate(base) : base;
+    }
+
+    private static boolean hasVariables(Object value) {
+        return value instanceof String && ((String) value).contains("${");
+    }
+
+    private boolean hasDefaultSyntax() {
+        ExpressionEngine engine = getExpressionEngine();
+        if (!(engine instanceof DefaultExpressionEngine)) {
+            return false;
+        }
+        DefaultExpressionEngine defaultEngine = (DefaultExpressionEngine) engine;
+        return DefaultExpressionEngine.DEFAULT_PROPERTY_DELIMITER.equals(defaultEngine
+                .getPropertyDelimiter())
+                && DefaultExpressionEngine.DEFAULT_ATTRIBUTE_START.equals(defaultEngine
+                        .getAttributeStart());
+    }
+
+    private void materialize() {
+        if (materialized || data == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!materialized) {
+                super.setRootNode(data.toNode(rootName));
+                materialized = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.vmware.qe.framework.datadriven.core.CompilableDataFilter;
+import com.vmware.qe.framework.datadriven.core.CompilableDataFilter.Predicate;
+import com.vmware.qe.framework.datadriven.core.DataFilter;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.SelectiveDataSupplier;
+
+/**
+ * The filters of a test class compiled for one context, checking each data in a single pass.<br>
+ * {@link CompilableDataFilter}s are compiled once and dropped if they accept all data, other
+ * filters are called as they are. As data is only used when all filters accept it, the filters
+ * are checked in the order of how much data they have rejected so far, most first, so that
+ * rejected data is mostly dropped by the first check. Not thread safe.<br>
+ */
+final class CompiledFilters {
+    /** number of checked data after which the filters are ordered again. */
+    private static final int REORDER_INTERVAL = 256;
+    private static final Comparator<Check> BY_REJECTION_RATE = new Comparator<Check>() {
+        @Override
+        public int compare(Check check1, Check check2) {
+            // rejected1 / checked1 > rejected2 / checked2, without dividing.
+            return Long.compare(check2.rejected * (check1.checked + 1), check1.rejected
+                    * (check2.checked + 1));
+        }
+    };
+    private final Check[] checks;
+    private long checked;
+
+    private CompiledFilters(List<Check> checks) {
+        this.checks = checks.toArray(new Check[checks.size()]);
+    }
+
+    /**
+     * @param filters the filters to compile.
+     * @param className name of the test class.
+     * @param context Context information.
+     * @return the compiled filters.
+     */
+    static CompiledFilters compile(Collection<DataFilter> filters, final String className,
+            final HierarchicalConfiguration context) {
+        List<Check> checks = new ArrayList<>(filters.size());
+        for (final DataFilter filter : filters) {
+            Predicate predicate;
+            if (filter instanceof CompilableDataFilter) {
+                predicate = ((CompilableDataFilter) filter).compile(className, context);
+                if (predicate == null) {
+                    continue;
+                }
+            } else {
+                predicate = new Predicate() {
+                    @Override
+                    public boolean accept(HierarchicalConfiguration data) {
+                        return filter.canRun(className, data, context);
+                    }
+                };
+            }
+            checks.add(new Check(predicate));
+        }
+        return new CompiledFilters(checks);
+    }
+
+    /**
+     * @return the compiled filters which can be handed to a {@link SelectiveDataSupplier}.
+     */
+    List<KeyValuePredicate> getSelection() {
+        List<KeyValuePredicate> selection = new ArrayList<>();
+        for (Check check : checks) {
+            if (check.predicate instanceof KeyValuePredicate) {
+                selection.add((KeyValuePredicate) check.predicate);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * @return number of filters which are checked for each data.
+     */
+    int size() {
+        return checks.length;
+    }
+
+    /**
+     * @param data the data to be filtered.
+     * @return 'true' if all filters accept the data.
+     */
+    boolean canRun(HierarchicalConfiguration data) {
+        if (++checked % REORDER_INTERVAL == 0 && checks.length > 1) {
+            Arrays.sort(checks, BY_REJECTION_RATE);
+        }
+        for (Check check : checks) {
+            check.checked++;
+            if (!check.predicate.accept(data)) {
+                check.rejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Check {
+        private final Predicate predicate;
+        private long checked;
+        private long rejected;
+
+        private Check(Predicate predicate) {
+            this.predicate = predicate;
+        }
+    }
+}
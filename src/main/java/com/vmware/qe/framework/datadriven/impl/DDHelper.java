@@ -20,16 +20,30 @@ import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_AUTOGEN_AT
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_INJECTOR_DEFAULT;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_INJECTOR_TYPE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_FILTER_PUSHDOWN;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_DEFAULT;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_DYNAMIC;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_TYPE;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_DEFAULT;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_LAZY;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_PARALLEL;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_POOL_SIZE;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_TYPE;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_DEFAULT;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TYPE;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
@@ -37,12 +51,17 @@ import org.slf4j.LoggerFactory;
 
 import com.vmware.qe.framework.datadriven.config.DDComponentsConfig;
 import com.vmware.qe.framework.datadriven.config.DDConfig;
+import com.vmware.qe.framework.datadriven.core.DDConstants;
 import com.vmware.qe.framework.datadriven.core.DDException;
-import com.vmware.qe.framework.datadriven.core.DataFilter;
 import com.vmware.qe.framework.datadriven.core.DataGenerator;
 import com.vmware.qe.framework.datadriven.core.DataInjector;
 import com.vmware.qe.framework.datadriven.core.DataSupplier;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.SelectiveDataSupplier;
+import com.vmware.qe.framework.datadriven.core.StreamingDataGenerator;
 import com.vmware.qe.framework.datadriven.core.TestInstanceCreator;
+import com.vmware.qe.framework.datadriven.core.ThreadSafe;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
 
 /**
  * The Main Class which helps to get the relevant data based on given configuration and info.<br>
@@ -54,7 +73,14 @@ public final class DDHelper {
     private DDHelper() {
     }
 
-    private static final List<HierarchicalConfiguration> getData(String className,
+    /**
+     * Gets the data of given test class. Generated data and the data following it are pulled from
+     * the generator and filtered only as the returned iterator is advanced.<br>
+     * The filters are compiled first, and those which are plain key/value conditions are handed
+     * to a {@link SelectiveDataSupplier} unless {@value DDConstants#TAG_FILTER_PUSHDOWN} is
+     * false.<br>
+     */
+    private static final Iterator<HierarchicalConfiguration> getData(String className,
             HierarchicalConfiguration context) throws DDException {
         log.info("Getting data for '{}'", className);
         // selecting supplier and getting data
@@ -78,14 +104,23 @@ public final class DDHelper {
             }
         }
         log.info("Supplier used: {}", supplier.getClass().getName());
+        CompiledFilters filters = CompiledFilters.compile(ddCoreConfig.getDataFilters(),
+                className, context);
+        List<KeyValuePredicate> selection = filters.getSelection();
         final HierarchicalConfiguration testData;
-        testData = supplier.getData(className, context);
+        if (supplier instanceof SelectiveDataSupplier && !selection.isEmpty()
+                && DDUtils.getConfigBoolean(context, TAG_FILTER_PUSHDOWN, true)) {
+            log.info("Selecting data in supplier: {}", selection);
+            testData = ((SelectiveDataSupplier) supplier).getData(className, context, selection);
+        } else {
+            testData = supplier.getData(className, context);
+        }
         if (testData == null) {
             log.warn("no test data found for the given test class = " + className);
             return null;
         }
         // selecting generator and generating dynamic data along with static data.
-        List<HierarchicalConfiguration> datas = null;
+        Iterator<HierarchicalConfiguration> generatedData;
         boolean dynamicGeneration = context.getBoolean(TAG_GENERATOR_DYNAMIC, false);
         dynamicGeneration = dynamicGeneration ? dynamicGeneration : DDConfig.getSingleton()
                 .getData().getBoolean(TAG_GENERATOR_DYNAMIC, false);
@@ -112,38 +147,27 @@ public final class DDHelper {
                 }
             }
             log.info("Generator Used: {}", dataGenerator.getClass().getName());
-            datas = dataGenerator.generate(testData, context);
-            List<HierarchicalConfiguration> staticData = testData.configurationsAt(TAG_DATA);
-            for (HierarchicalConfiguration aStaticData : staticData) {
-                if (!aStaticData.getBoolean(TAG_AUTOGEN_ATTR, false)) {
-                    datas.add(aStaticData);
-                }
+            if (dataGenerator instanceof StreamingDataGenerator) {
+                generatedData = ((StreamingDataGenerator) dataGenerator).iterate(testData, context);
+            } else {
+                generatedData = dataGenerator.generate(testData, context).iterator();
             }
         } else {
             log.info("No Dynamic data generation.");
-            datas = testData.configurationsAt(TAG_DATA);
-        }
-        log.info("Applying filters...");
-        List<HierarchicalConfiguration> filteredData = new ArrayList<>();
-        for (int i = 0; i < datas.size(); i++) {// for each data we create
-            // new test instance.
-            HierarchicalConfiguration aTestData = datas.get(i);
-            boolean canRun = true;
-            for (DataFilter filter : ddCoreConfig.getDataFilters()) {
-                if (!filter.canRun(className, aTestData, context)) {
-                    canRun = false;
-                    break;
-                }
-            }
-            if (canRun) {
-                filteredData.add(aTestData);
-            }
+            generatedData = Collections.<HierarchicalConfiguration> emptyList().iterator();
         }
-        return filteredData;
+        log.info("Applying filters... {} of {} to check", filters.size(), ddCoreConfig
+                .getDataFilters().size());
+        return new FilteredDataIterator(filters, generatedData, testData
+                .configurationsAt(TAG_DATA).iterator(), dynamicGeneration);
     }
 
     /**
      * Method to get the test instances of given test with data.<br>
+     * With {@value DDConstants#TAG_INSTANCE_CREATOR_LAZY} set, the data is injected only when a
+     * test is about to run, see {@link LazyDataInjection}. With
+     * {@value DDConstants#TAG_SHARD_COUNT} set, only the data of this node is used, see
+     * {@link Sharding}.<br>
      * 
      * @param className The test class name.
      * @param context context containing any relevant info.
@@ -152,10 +176,18 @@ public final class DDHelper {
      */
     public static Object[] getTests(String className, HierarchicalConfiguration context)
             throws DDException {
-        List<HierarchicalConfiguration> datas = getData(className, context);
-        if (datas == null || datas.isEmpty()) { // not a DD test
+        Iterator<HierarchicalConfiguration> datas = getData(className, context);
+        if (datas == null || !datas.hasNext()) { // not a DD test
             throw new DDException("No test data found for class = " + className);
         }
+        Sharding sharding = Sharding.of(context);
+        if (sharding != null) {
+            datas = sharding.select(datas);
+            if (!datas.hasNext()) {
+                log.info("No test data of class = {} in {}", className, sharding);
+                return new Object[0];
+            }
+        }
         String instanceCreatorType = context.getString(TAG_INSTANCE_CREATOR_TYPE, null);
         instanceCreatorType = instanceCreatorType == null ? DDConfig.getSingleton().getData()
                 .getString(TAG_INSTANCE_CREATOR_DEFAULT, null) : instanceCreatorType;
@@ -197,13 +229,188 @@ public final class DDHelper {
                 dataInjector = ddCoreConfig.getDataInjectors().iterator().next();
             }
         }
+        final List<Object> tests;
+        if (DDUtils.getConfigBoolean(context, TAG_INSTANCE_CREATOR_LAZY, false)) {
+            tests = createLazyTests(className, datas, instanceCreator, dataInjector, context);
+        } else if (DDUtils.getConfigBoolean(context, TAG_INSTANCE_CREATOR_PARALLEL, false)) {
+            tests = createTestsInParallel(className, datas, instanceCreator, dataInjector, context);
+        } else {
+            tests = createTests(className, datas, instanceCreator, dataInjector, context);
+        }
+        log.info("Number of tests: {}", tests.size());
+        return tests.toArray();
+    }
+
+    private static List<Object> createTests(String className,
+            Iterator<HierarchicalConfiguration> datas, TestInstanceCreator instanceCreator,
+            DataInjector dataInjector, HierarchicalConfiguration context) {
         final List<Object> tests = new ArrayList<Object>();
-        for (HierarchicalConfiguration aTestData : datas) {
+        while (datas.hasNext()) {
+            HierarchicalConfiguration aTestData = datas.next();
             Object testObj = instanceCreator.newInstance(className, aTestData, context);
             dataInjector.inject(testObj, aTestData, context);
             tests.add(testObj);
         }
-        log.info("Number of tests: {}", tests.size());
-        return tests.toArray();
+        return tests;
+    }
+
+    /**
+     * Creates the test instances, leaving the data to be injected by {@link LazyDataInjection}.<br>
+     */
+    private static List<Object> createLazyTests(String className,
+            Iterator<HierarchicalConfiguration> datas, TestInstanceCreator instanceCreator,
+            DataInjector dataInjector, HierarchicalConfiguration context) {
+        final List<Object> tests = new ArrayList<Object>();
+        while (datas.hasNext()) {
+            HierarchicalConfiguration aTestData = datas.next();
+            Object testObj = instanceCreator.newInstance(className, aTestData, context);
+            LazyDataInjection.register(testObj, aTestData, dataInjector, context);
+            tests.add(testObj);
+        }
+        log.info("Data of the tests will be injected by {} when they run",
+                LazyDataInjectionListener.class.getSimpleName());
+        return tests;
+    }
+
+    /**
+     * Creates and injects the test instances on a pool of threads shared by all test classes. The
+     * data is still pulled on the calling thread and the tests are returned in the order of the
+     * data. At most {@value DDConstants#TAG_INSTANCE_CREATOR_POOL_SIZE} tests of the class are
+     * created at the same time.<br>
+     * Falls back to {@link #createTests} unless both the instance creator and the data injector
+     * are marked {@link ThreadSafe}.<br>
+     */
+    private static List<Object> createTestsInParallel(final String className,
+            Iterator<HierarchicalConfiguration> datas, final TestInstanceCreator instanceCreator,
+            final DataInjector dataInjector, final HierarchicalConfiguration context) {
+        if (!instanceCreator.getClass().isAnnotationPresent(ThreadSafe.class)
+                || !dataInjector.getClass().isAnnotationPresent(ThreadSafe.class)) {
+            log.warn("{} or {} is not thread safe. Creating tests serially",
+                    instanceCreator.getClass().getName(), dataInjector.getClass().getName());
+            return createTests(className, datas, instanceCreator, dataInjector, context);
+        }
+        int poolSize = DDUtils.getConfigInt(context, TAG_INSTANCE_CREATOR_POOL_SIZE,
+                Runtime.getRuntime().availableProcessors());
+        if (poolSize < 1) {
+            throw new DDException("Invalid pool size given for " + TAG_INSTANCE_CREATOR_POOL_SIZE
+                    + ": " + poolSize);
+        }
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            final List<Object> tests = new ArrayList<Object>();
+            while (datas.hasNext()) {
+                final HierarchicalConfiguration aTestData = datas.next();
+                futures.add(PoolHolder.POOL.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        Object testObj = instanceCreator.newInstance(className, aTestData, context);
+                        dataInjector.inject(testObj, aTestData, context);
+                        return testObj;
+                    }
+                }));
+                if (futures.size() - tests.size() >= poolSize) {
+                    tests.add(futures.get(tests.size()).get());
+                }
+            }
+            while (tests.size() < futures.size()) {
+                tests.add(futures.get(tests.size()).get());
+            }
+            return tests;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DDException("Interrupted while creating tests for class = " + className, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DDException("Failed to create tests for class = " + className, cause);
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(true); // no effect on the tests already created.
+            }
+        }
+    }
+
+    /**
+     * Pool for creating tests in parallel, created on first use. Idle threads end after a
+     * minute.<br>
+     */
+    private static final class PoolHolder {
+        private static final ExecutorService POOL = Executors.newCachedThreadPool(
+                new DaemonThreadFactory());
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "dd-instance-creator-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Pulls the generated data followed by the static data, dropping the data rejected by any of
+     * the filters. When data is generated, static data marked as auto-gen is dropped as well.<br>
+     */
+    private static final class FilteredDataIterator implements
+            Iterator<HierarchicalConfiguration> {
+        private final CompiledFilters filters;
+        private final Iterator<HierarchicalConfiguration> generatedData;
+        private final Iterator<HierarchicalConfiguration> staticData;
+        private final boolean skipAutoGenerated;
+        private HierarchicalConfiguration next;
+
+        private FilteredDataIterator(CompiledFilters filters,
+                Iterator<HierarchicalConfiguration> generatedData,
+                Iterator<HierarchicalConfiguration> staticData, boolean skipAutoGenerated) {
+            this.filters = filters;
+            this.generatedData = generatedData;
+            this.staticData = staticData;
+            this.skipAutoGenerated = skipAutoGenerated;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                HierarchicalConfiguration aTestData;
+                if (generatedData.hasNext()) {
+                    aTestData = generatedData.next();
+                } else if (staticData.hasNext()) {
+                    aTestData = staticData.next();
+                    if (skipAutoGenerated && aTestData.getBoolean(TAG_AUTOGEN_ATTR, false)) {
+                        continue;
+                    }
+                } else {
+                    return false;
+                }
+                if (filters.canRun(aTestData)) {
+                    next = aTestData;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public HierarchicalConfiguration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            HierarchicalConfiguration aTestData = next;
+            next = null;
+            return aTestData;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.vmware.qe.framework.datadriven.core.DataInjector;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+
+/**
+ * Test instances whose data is injected only when they are about to run.<br>
+ * Until then the data is held as the supplier handed it out, keeping rows in their compact
+ * {@link TestData} form, instead of in the fields of the tests. {@link LazyDataInjectionListener}
+ * injects the data before the first configuration or test method of an instance is invoked. It is
+ * not registered by default, add it to the suites using lazy tests through {@code @Listeners} or
+ * the listeners of testng.xml. Code running tests without TestNG can call {@link #inject(Object)}
+ * itself.<br>
+ * The tests are held weakly, so the data of tests which never run is dropped with the tests.<br>
+ * TestNG needs instances of the test class, so the instances are still created up front, and
+ * names given through {@link org.testng.ITest} are asked for before the data is injected.<br>
+ */
+public final class LazyDataInjection {
+    /** test instance vs it's data which is still to be injected, guarded by itself. */
+    private static final Map<TestKey, Pending> pending = new HashMap<>();
+    /** keys of the tests which are garbage collected, guarded by {@link #pending}. */
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private LazyDataInjection() {
+    }
+
+    /**
+     * Holds the data of given test until it is injected.<br>
+     */
+    static void register(Object test, HierarchicalConfiguration data, DataInjector dataInjector,
+            HierarchicalConfiguration context) {
+        Pending entry = new Pending(data, dataInjector, context);
+        synchronized (pending) {
+            expungeCollected();
+            pending.put(new TestKey(test, collected), entry);
+        }
+    }
+
+    /**
+     * Injects the data of given test if it was not injected yet. Concurrent callers for the same
+     * test wait for a single injection.<br>
+     *
+     * @param test the test instance.
+     * @return 'true' if the data was injected by this call.
+     */
+    public static boolean inject(Object test) {
+        TestKey key = new TestKey(test, null);
+        Pending entry;
+        synchronized (pending) {
+            entry = pending.get(key);
+        }
+        if (entry == null || !entry.inject(test)) {
+            return false;
+        }
+        synchronized (pending) {
+            pending.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of test instances whose data is not injected yet.
+     */
+    public static int getPendingCount() {
+        synchronized (pending) {
+            expungeCollected();
+            return pending.size();
+        }
+    }
+
+    private static void expungeCollected() {
+        for (Reference<?> key = collected.poll(); key != null; key = collected.poll()) {
+            pending.remove(key);
+        }
+    }
+
+    /**
+     * Weak key of a test instance, equal only to keys of the same instance.<br>
+     */
+    private static final class TestKey extends WeakReference<Object> {
+        private final int hash;
+
+        private TestKey(Object test, ReferenceQueue<Object> queue) {
+            super(test, queue);
+            this.hash = System.identityHashCode(test);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TestKey)) {
+                return false;
+            }
+            Object test = get();
+            return test != null && test == ((TestKey) obj).get();
+        }
+    }
+
+    private static final class Pending {
+        private final DataInjector dataInjector;
+        private final HierarchicalConfiguration context;
+        /** the data as a row if it can be held as one, else as it is. */
+        private TestData row;
+        private String rowRootName;
+        private HierarchicalConfiguration data;
+        private boolean injected = false;
+
+        private Pending(HierarchicalConfiguration data, DataInjector dataInjector,
+                HierarchicalConfiguration context) {
+            this.dataInjector = dataInjector;
+            this.context = context;
+            TestData testData = data != null && data.getClass() == TestDataConfiguration.class
+                    ? ((TestDataConfiguration) data).getTestData() : null;
+            if (testData != null) {
+                this.row = testData;
+                this.rowRootName = ((TestDataConfiguration) data).getRootName();
+            } else {
+                this.data = data;
+            }
+        }
+
+        private synchronized boolean inject(Object test) {
+            if (injected) {
+                return false;
+            }
+            HierarchicalConfiguration testData = row != null ? new TestDataConfiguration(row,
+                    rowRootName) : data;
+            dataInjector.inject(test, testData, context);
+            injected = true;
+            row = null;
+            data = null;
+            return true;
+        }
+    }
+}
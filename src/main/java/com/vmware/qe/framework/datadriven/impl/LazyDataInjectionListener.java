@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestResult;
+
+/**
+ * Injects the data of lazily created tests before TestNG invokes their first method, see
+ * {@link LazyDataInjection}.<br>
+ * Not registered by default, so other suites do not pay for it. Add it where
+ * {@value com.vmware.qe.framework.datadriven.core.DDConstants#TAG_INSTANCE_CREATOR_LAZY} is set:
+ * 
+ * <pre>
+ * &#064;Listeners(LazyDataInjectionListener.class)
+ * </pre>
+ * 
+ * or in testng.xml:
+ * 
+ * <pre>
+ * &lt;listeners&gt;
+ *     &lt;listener
+ *         class-name="com.vmware.qe.framework.datadriven.impl.LazyDataInjectionListener"/&gt;
+ * &lt;/listeners&gt;
+ * </pre>
+ */
+public class LazyDataInjectionListener implements IInvokedMethodListener {
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        Object test = testResult.getInstance();
+        if (test != null) {
+            LazyDataInjection.inject(test);
+        }
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+    }
+}
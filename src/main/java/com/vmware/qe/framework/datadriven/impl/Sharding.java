@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_COST_FILE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_COUNT;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_INDEX;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_MODE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDConstants;
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Selects the share of the data of one node when the tests are split over many nodes.<br>
+ * Each node is given the same {@value DDConstants#TAG_SHARD_COUNT} and its own
+ * {@value DDConstants#TAG_SHARD_INDEX}, and each data lands on exactly one node as long as all
+ * nodes see the same data. The data is shared after filtering, in one of the modes of
+ * {@value DDConstants#TAG_SHARD_MODE}:
+ * <ul>
+ * <li>hash: by a hash of the test-id, so a data stays on its node when other data is added or
+ * removed. Data without test-id is shared round-robin.</li>
+ * <li>round-robin: by position, giving all nodes the same number of data.</li>
+ * <li>cost: by the durations given per test-id in the properties file
+ * {@value DDConstants#TAG_SHARD_COST_FILE}, the longest data first to
+ * the node with the least total duration so far. Data without duration counts as the average.
+ * All data is pulled before the first one is handed out.</li>
+ * </ul>
+ */
+final class Sharding {
+    private static final Logger log = LoggerFactory.getLogger(Sharding.class);
+    private final int index;
+    private final int count;
+    private final Mode mode;
+    private final Map<String, Double> costs;
+
+    private Sharding(int index, int count, Mode mode, Map<String, Double> costs) {
+        this.index = index;
+        this.count = count;
+        this.mode = mode;
+        this.costs = costs;
+    }
+
+    /**
+     * Modes of sharing data between the nodes.<br>
+     */
+    enum Mode {
+        HASH, ROUND_ROBIN, COST;
+
+        private static Mode of(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().replace('_', '-').equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new DDException("Unknown shard mode: " + name);
+        }
+    }
+
+    /**
+     * @param context context containing any relevant info.
+     * @return the sharding of the context, null if the tests are not split.
+     */
+    static Sharding of(HierarchicalConfiguration context) {
+        int count = DDUtils.getConfigInt(context, TAG_SHARD_COUNT, 1);
+        if (count < 1) {
+            throw new DDException("Invalid shard count given for " + TAG_SHARD_COUNT + ": "
+                    + count);
+        }
+        if (count == 1) {
+            return null;
+        }
+        int index = DDUtils.getConfigInt(context, TAG_SHARD_INDEX, -1);
+        if (index < 0 || index >= count) {
+            throw new DDException("Invalid shard index given for " + TAG_SHARD_INDEX + ": "
+                    + index + ", expected 0 to " + (count - 1));
+        }
+        Mode mode = Mode.of(DDUtils.getConfigString(context, TAG_SHARD_MODE, "hash"));
+        Map<String, Double> costs = null;
+        if (mode == Mode.COST) {
+            String costFile = DDUtils.getConfigString(context, TAG_SHARD_COST_FILE, null);
+            if (costFile == null) {
+                throw new DDException("No cost file given in " + TAG_SHARD_COST_FILE);
+            }
+            costs = readCosts(new File(costFile));
+        }
+        return new Sharding(index, count, mode, costs);
+    }
+
+    /**
+     * @param datas the data after filtering.
+     * @return the data of this node, in the given order.
+     */
+    Iterator<HierarchicalConfiguration> select(Iterator<HierarchicalConfiguration> datas) {
+        log.info("Selecting shard {} of {} by {}", index, count, mode);
+        if (mode == Mode.COST) {
+            return selectByCost(datas);
+        }
+        return new ShardIterator(datas);
+    }
+
+    @Override
+    public String toString() {
+        return "Sharding[" + index + "/" + count + ", " + mode + "]";
+    }
+
+    private Iterator<HierarchicalConfiguration> selectByCost(
+            Iterator<HierarchicalConfiguration> datas) {
+        final List<HierarchicalConfiguration> all = new ArrayList<>();
+        final List<Double> dataCosts = new ArrayList<>();
+        double knownTotal = 0;
+        int knownCount = 0;
+        while (datas.hasNext()) {
+            HierarchicalConfiguration data = datas.next();
+            String testId = data.getString(TAG_TESTID_ATTR, null);
+            Double cost = testId == null ? null : costs.get(testId);
+            if (cost != null) {
+                knownTotal += cost;
+                knownCount++;
+            }
+            all.add(data);
+            dataCosts.add(cost);
+        }
+        double defaultCost = knownCount == 0 ? 1 : knownTotal / knownCount;
+        Integer[] order = new Integer[all.size()];
+        final double[] cost = new double[all.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            cost[i] = dataCosts.get(i) == null ? defaultCost : dataCosts.get(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer data1, Integer data2) {
+                int result = Double.compare(cost[data2], cost[data1]);
+                return result != 0 ? result : data1.compareTo(data2);
+            }
+        });
+        double[] load = new double[count];
+        boolean[] selected = new boolean[all.size()];
+        for (int data : order) {
+            int shard = 0;
+            for (int i = 1; i < count; i++) {
+                if (load[i] < load[shard]) {
+                    shard = i;
+                }
+            }
+            load[shard] += cost[data];
+            selected[data] = shard == index;
+        }
+        List<HierarchicalConfiguration> mine = new ArrayList<>();
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                mine.add(all.get(i));
+            }
+        }
+        log.info("Shard {} has {} of {} data, cost {} of {}", index, mine.size(), all.size(),
+                load[index], sum(load));
+        return Collections.unmodifiableList(mine).iterator();
+    }
+
+    /**
+     * @return shard of given test-id, spreading similar test-ids over all shards.
+     */
+    private int shardOf(String testId) {
+        int hash = testId.hashCode(); // as specified by String, so the same on all nodes.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % count;
+    }
+
+    private static Map<String, Double> readCosts(File costFile) {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(costFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new DDException("Could not read cost file " + costFile, e);
+        }
+        Map<String, Double> costs = new HashMap<>();
+        for (String testId : properties.stringPropertyNames()) {
+            String value = properties.getProperty(testId).trim();
+            try {
+                double cost = Double.parseDouble(value);
+                if (cost < 0 || Double.isNaN(cost) || Double.isInfinite(cost)) {
+                    throw new NumberFormatException();
+                }
+                costs.put(testId, cost);
+            } catch (NumberFormatException e) {
+                throw new DDException("Invalid cost '" + value + "' given for test-id '"
+                        + testId + "' in " + costFile, e);
+            }
+        }
+        log.debug("Read {} costs from {}", costs.size(), costFile);
+        return costs;
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Pulls the data of this node by hash or by position.<br>
+     */
+    private final class ShardIterator implements Iterator<HierarchicalConfiguration> {
+        private final Iterator<HierarchicalConfiguration> datas;
+        /** position of the next data, counting only data without test-id in hash mode. */
+        private long position = 0;
+        private HierarchicalConfiguration next;
+
+        private ShardIterator(Iterator<HierarchicalConfiguration> datas) {
+            this.datas = datas;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && datas.hasNext()) {
+                HierarchicalConfiguration data = datas.next();
+                String testId = mode == Mode.HASH ? data.getString(TAG_TESTID_ATTR, null) : null;
+                int shard;
+                if (testId != null && !testId.isEmpty()) {
+                    shard = shardOf(testId);
+                } else {
+                    shard = (int) (position++ % count);
+                }
+                if (shard == index) {
+                    next = data;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public HierarchicalConfiguration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            HierarchicalConfiguration data = next;
+            next = null;
+            return data;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -17,25 +17,20 @@ package com.vmware.qe.framework.datadriven.impl.creator;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 
-import com.vmware.qe.framework.datadriven.core.DDException;
 import com.vmware.qe.framework.datadriven.core.TestInstanceCreator;
+import com.vmware.qe.framework.datadriven.core.ThreadSafe;
+import com.vmware.qe.framework.datadriven.utils.ClassMetadata;
 
 /**
  * Creates instance of given class by calling default constructor.<br>
+ * The class and it's constructor are looked up once, see {@link ClassMetadata}.<br>
+ * Holds no state, so instances can be created from many threads at the same time.<br>
  */
+@ThreadSafe
 public class SimpleTestInstanceCreator implements TestInstanceCreator {
     @Override
     public Object newInstance(String className, HierarchicalConfiguration testData,
             HierarchicalConfiguration context) {
-        Class<?> testClass;
-        Object testInstance = null;
-        try {
-            testClass = Class.forName(className);
-            testInstance = testClass.newInstance();
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-            throw new DDException(
-                    "Error in creating test instance. Test class name = " + className, e);
-        }
-        return testInstance;
+        return ClassMetadata.forName(className).newInstance();
     }
 }
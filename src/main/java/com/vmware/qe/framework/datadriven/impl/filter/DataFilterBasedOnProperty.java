@@ -15,31 +15,35 @@
  */
 package com.vmware.qe.framework.datadriven.impl.filter;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.commons.configuration.HierarchicalConfiguration;
 
 import com.vmware.qe.framework.datadriven.config.DDConfig;
-import com.vmware.qe.framework.datadriven.core.DataFilter;
+import com.vmware.qe.framework.datadriven.core.CompilableDataFilter;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
 
-public class DataFilterBasedOnProperty implements DataFilter {
+/**
+ * Filters the data based on the filter key/value pairs of the context or of the DD
+ * configuration.<br>
+ * The pairs are read once when compiled, in to the set of accepted values of each key.<br>
+ */
+public class DataFilterBasedOnProperty implements CompilableDataFilter {
     public static final String ARG_FILTER_KEY = "filter.filterkey";
     public static final String ARG_FILTER_VALUE = "filter.filtervalue";
 
     @Override
     public boolean canRun(String className, HierarchicalConfiguration dataToFilter,
             HierarchicalConfiguration context) {
-        return checkAgainstFilterProperties(dataToFilter, context);
+        Predicate predicate = compile(className, context);
+        return predicate == null || predicate.accept(dataToFilter);
     }
 
-    /**
-     * filters test based on given filterKey/filterValue. If the any of the filter key/value pairs
-     * found from data object, then returns true.
-     * 
-     * @param data test data
-     * @return true if test is selected after applying filter, false otherwise
-     */
-    private boolean checkAgainstFilterProperties(HierarchicalConfiguration data,
-            HierarchicalConfiguration context) {
-        boolean included = true;
+    @Override
+    public Predicate compile(String className, HierarchicalConfiguration context) {
         String filterKeys[] = null;
         String filterValues[] = null;
         if (context.containsKey(ARG_FILTER_KEY)
@@ -51,23 +55,20 @@ public class DataFilterBasedOnProperty implements DataFilter {
             filterKeys = DDConfig.getSingleton().getData().getStringArray(ARG_FILTER_KEY);
             filterValues = DDConfig.getSingleton().getData().getStringArray(ARG_FILTER_VALUE);
         }
-        if (filterKeys != null && filterValues != null) {
-            included = false;
-            for (int index = 0; index < filterKeys.length; index++) {
-                String filterKey = filterKeys[index];
-                String filterValue = null;
-                if (index >= filterValues.length) {
-                    filterValue = "";
-                } else {
-                    filterValue = filterValues[index];
-                }
-                if (data.containsKey(filterKey)
-                        && data.getString(filterKey, "").equals(filterValue)) {
-                    included = true;
-                    break;
-                }
+        if (filterKeys == null || filterValues == null) {
+            return null;
+        }
+        Map<String, Set<String>> filter = new LinkedHashMap<>();
+        for (int index = 0; index < filterKeys.length; index++) {
+            String filterValue = index >= filterValues.length ? "" : filterValues[index];
+            Set<String> values = filter.get(filterKeys[index]);
+            if (values == null) {
+                values = new HashSet<>();
+                filter.put(filterKeys[index], values);
             }
+            values.add(filterValue);
         }
-        return included;
+        // If the any of the filter key/value pairs found from data object, then it is selected.
+        return new KeyValuePredicate(filter);
     }
 }
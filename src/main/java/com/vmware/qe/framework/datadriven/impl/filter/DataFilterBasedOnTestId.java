@@ -18,40 +18,56 @@ package com.vmware.qe.framework.datadriven.impl.filter;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
 
 import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.vmware.qe.framework.datadriven.config.DDConfig;
-import com.vmware.qe.framework.datadriven.core.DataFilter;
+import com.vmware.qe.framework.datadriven.core.CompilableDataFilter;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
 
 /**
  * Filters the data based on test-id.<br>
+ * The selected test-ids of the class are read once when compiled and looked up in a set, by a
+ * {@link KeyValuePredicate} unless data without test-id is selected as well.<br>
  */
-public class DataFilterBasedOnTestId implements DataFilter {
+public class DataFilterBasedOnTestId implements CompilableDataFilter {
     private static final Logger log = LoggerFactory.getLogger(DataFilterBasedOnTestId.class);
 
     @Override
     public boolean canRun(String className, HierarchicalConfiguration dataToFilter,
             HierarchicalConfiguration context) {
+        Predicate predicate = compile(className, context);
+        return predicate == null || predicate.accept(dataToFilter);
+    }
+
+    @Override
+    public Predicate compile(String className, HierarchicalConfiguration context) {
         String testIdKey = className + "-testids";
         String testIdArray[];
         testIdArray = context.getStringArray(testIdKey);
         testIdArray = testIdArray == null ? DDConfig.getSingleton().getData()
                 .getStringArray(testIdKey) : testIdArray;
-        List<String> testIds = Arrays.asList(testIdArray);
-        if (testIds.isEmpty()) {
-            return true;
+        if (testIdArray.length == 0) {
+            return null;
         }
-        String testId = dataToFilter.getString(TAG_TESTID_ATTR, "");
-        boolean canRun = false;
         // Ignoring testIds if they are not in the selected test-ids to run
-        if (testIds != null && !testIds.isEmpty()) {
-            canRun = testIds.contains(testId);
+        final Set<String> testIds = new HashSet<>(Arrays.asList(testIdArray));
+        if (!testIds.contains("")) {
+            return new KeyValuePredicate(Collections.singletonMap(TAG_TESTID_ATTR, testIds));
         }
-        log.debug("CanRun: {}", canRun);
-        return canRun;
+        // data without test-id has to be selected as well.
+        return new Predicate() {
+            @Override
+            public boolean accept(HierarchicalConfiguration data) {
+                boolean canRun = testIds.contains(data.getString(TAG_TESTID_ATTR, ""));
+                log.debug("CanRun: {}", canRun);
+                return canRun;
+            }
+        };
     }
 }
@@ -15,38 +15,197 @@
  */
 package com.vmware.qe.framework.datadriven.impl.generator;
 
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+import org.apache.commons.configuration.AbstractConfiguration;
 import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.PropertyConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.vmware.qe.framework.datadriven.core.DataGenerator;
+import com.vmware.qe.framework.datadriven.core.DDConstants;
+import com.vmware.qe.framework.datadriven.core.StreamingDataGenerator;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
 
 /**
  * This class helps to convert the standard HC format data in to index based data sets so that one
  * can apply any data generation techniques based on indexes rather than working with raw data.<br>
+ * Combinations are turned in to HierarchicalConfiguration only as they are pulled from
+ * {@link #iterate(HierarchicalConfiguration, HierarchicalConfiguration)}, as {@link TestData}
+ * composed of the test-id and the chosen elements. The elements are read once per data-combination
+ * and shared by all the combinations which use them. Generators which can enumerate the index
+ * combinations lazily should override {@link #iterateCombinations(List)}.<br>
+ * The constraints of a data-combination are compiled in to {@link CombinationConstraints} and
+ * handed to the generator, which by default drops the combinations they reject.<br>
+ * Generators whose combinations only depend on the data-combination and settings they can name
+ * return a key from {@link #getCacheKey(HierarchicalConfiguration)}, so that the combinations can
+ * be kept on disk with {@value DDConstants#TAG_GENERATOR_CACHE}.<br>
  * 
  * @see ExhaustiveGenerator
  * @see PairwiseDataGenerator
  */
-public abstract class AbstractDataGenerator implements DataGenerator {
+public abstract class AbstractDataGenerator implements StreamingDataGenerator {
     private static final Logger log = LoggerFactory.getLogger(AbstractDataGenerator.class);
+    private static final TestData.Keys TEST_ID_KEYS = TestData.Keys.of(Collections
+            .singletonList(TAG_TESTID_ATTR));
 
     @Override
     public List<HierarchicalConfiguration> generate(HierarchicalConfiguration data,
             HierarchicalConfiguration context) {
         List<HierarchicalConfiguration> combConfig = new ArrayList<>();
-        List<HierarchicalConfiguration> dataCombs = data.configurationsAt("data-combination");
-        for (HierarchicalConfiguration dataComb : dataCombs) {
+        Iterator<HierarchicalConfiguration> combinations = iterate(data, context);
+        while (combinations.hasNext()) {
+            combConfig.add(combinations.next());
+        }
+        log.debug("Combinations: " + combConfig.size());
+        return combConfig;
+    }
+
+    @Override
+    public Iterator<HierarchicalConfiguration> iterate(HierarchicalConfiguration data,
+            HierarchicalConfiguration context) {
+        return new CombinationIterator(data.configurationsAt("data-combination").iterator(),
+                context);
+    }
+
+    /**
+     * This method exposes a easy way to generate combinations based on indexes.<br>
+     * @param indexData 
+     * @return
+     */
+    public abstract List<List<Integer>> generateCombinations(List<List<Integer>> indexData);
+
+    /**
+     * Enumerates the combinations based on indexes lazily. By default all combinations are
+     * generated with {@link #generateCombinations(List)} up front.<br>
+     * Implementations may hand out the same list on every call to next(), so callers must not
+     * keep a combination after moving on.<br>
+     * 
+     * @param indexData indexes of the elements of each set.
+     * @return Iterator over the combinations, one index per set.
+     */
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData) {
+        return generateCombinations(indexData).iterator();
+    }
+
+    /**
+     * Enumerates the combinations based on indexes lazily, for generators which need the context.
+     * By default the context is ignored.<br>
+     * 
+     * @param indexData indexes of the elements of each set.
+     * @param context Context containing the configuration info.
+     * @return Iterator over the combinations, one index per set.
+     * @see #iterateCombinations(List)
+     */
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData,
+            HierarchicalConfiguration context) {
+        return iterateCombinations(indexData);
+    }
+
+    /**
+     * Enumerates the combinations allowed by the constraints of the data-combination. By default
+     * the combinations are enumerated with
+     * {@link #iterateCombinations(List, HierarchicalConfiguration)} and the rejected ones are
+     * skipped. Generators which can avoid generating rejected combinations in the first place
+     * should override this.<br>
+     * 
+     * @param indexData indexes of the elements of each set.
+     * @param context Context containing the configuration info.
+     * @param constraints constraints over the element indexes of each set.
+     * @return Iterator over the allowed combinations, one index per set.
+     */
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData,
+            HierarchicalConfiguration context, CombinationConstraints constraints) {
+        Iterator<List<Integer>> combinations = iterateCombinations(indexData, context);
+        return constraints.isEmpty() ? combinations : new AllowedIterator(combinations,
+                constraints);
+    }
+
+    /**
+     * Names the generator and everything other than the data-combination which its combinations
+     * depend on, for the cache of generated combinations. Must change whenever the combinations
+     * generated for the same data-combination change. By default nothing is cached.<br>
+     * 
+     * @param context Context containing the configuration info.
+     * @return the cache key, null if the combinations must not be cached.
+     */
+    protected String getCacheKey(HierarchicalConfiguration context) {
+        return null;
+    }
+
+    /**
+     * Turns the index combinations of each data-combination in to data, one at a time.<br>
+     */
+    private final class CombinationIterator implements Iterator<HierarchicalConfiguration> {
+        private final NumberFormat format = new DecimalFormat("###000");
+        private final TestData.Keys.Interner keysInterner = new TestData.Keys.Interner();
+        private final TestData.Composer composer = new TestData.Composer();
+        private final Iterator<HierarchicalConfiguration> dataCombs;
+        private final HierarchicalConfiguration context;
+        private List<List<HierarchicalConfiguration>> combData;
+        /** the elements of each set, shared by all combinations of the data-combination. */
+        private List<List<TestData>> combElements;
+        private Iterator<List<Integer>> combinations = Collections.<List<Integer>> emptyList()
+                .iterator();
+        private int id;
+
+        private CombinationIterator(Iterator<HierarchicalConfiguration> dataCombs,
+                HierarchicalConfiguration context) {
+            this.dataCombs = dataCombs;
+            this.context = context;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!combinations.hasNext()) {
+                if (!dataCombs.hasNext()) {
+                    return false;
+                }
+                nextDataCombination(dataCombs.next());
+            }
+            return true;
+        }
+
+        @Override
+        public HierarchicalConfiguration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Integer> comb = combinations.next();
+            TestData[] parts = new TestData[comb.size() + 1];
+            parts[0] = new TestData.Builder(TEST_ID_KEYS).add(0, format.format(id++)).build();
+            for (int i = 0; i < comb.size(); i++) {
+                parts[i + 1] = combElements.get(i).get(comb.get(i));
+            }
+            return new TestDataConfiguration(composer.compose(parts));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void nextDataCombination(HierarchicalConfiguration dataComb) {
             List<HierarchicalConfiguration> sets = dataComb.configurationsAt("set");
-            List<List<HierarchicalConfiguration>> combData = new ArrayList<List<HierarchicalConfiguration>>();
+            combData = new ArrayList<List<HierarchicalConfiguration>>();
+            combElements = new ArrayList<List<TestData>>();
             for (HierarchicalConfiguration set : sets) {
                 List<HierarchicalConfiguration> elements = set.configurationsAt("element");
                 combData.add(elements);
+                List<TestData> elementData = new ArrayList<>(elements.size());
+                for (HierarchicalConfiguration element : elements) {
+                    elementData.add(toTestData(element, keysInterner));
+                }
+                combElements.add(elementData);
             }
             List<List<Integer>> setIndexData = new ArrayList<>();
             for (List<HierarchicalConfiguration> set : combData) {
@@ -56,26 +215,78 @@ public abstract class AbstractDataGenerator implements DataGenerator {
                 }
                 setIndexData.add(elements);
             }
-            int id = 1;
-            List<List<Integer>> combinations = generateCombinations(setIndexData);
-            final NumberFormat format = new DecimalFormat("###000");
-            for (List<Integer> comb : combinations) {
-                HierarchicalConfiguration combination = new HierarchicalConfiguration();
-                combination.addProperty("[@test-id]", format.format(id++));
-                for (int i = 0; i < comb.size(); i++) {
-                    HierarchicalConfiguration element = combData.get(i).get(comb.get(i));
-                    combination.append(element);
+            CombinationConstraints constraints = CombinationConstraints.compile(dataComb, combData);
+            id = 1;
+            CombinationCache cache = CombinationCache.of(getCacheKey(context), dataComb, context);
+            combinations = cache == null ? null : cache.read(setIndexData.size());
+            if (combinations == null) {
+                combinations = iterateCombinations(setIndexData, context, constraints);
+                if (cache != null) {
+                    combinations = cache.record(combinations, setIndexData.size());
                 }
-                combConfig.add(combination);
             }
         }
-        log.debug("Combinations: " + combConfig.size());
-        return combConfig;
     }
+
     /**
-     * This method exposes a easy way to generate combinations based on indexes.<br>
-     * @param indexData 
-     * @return
+     * Reads the values of an element, split on the list delimiter the same way as appending the
+     * element to a new configuration does.<br>
      */
-    public abstract List<List<Integer>> generateCombinations(List<List<Integer>> indexData);
+    private static TestData toTestData(HierarchicalConfiguration element,
+            TestData.Keys.Interner interner) {
+        List<String> keys = new ArrayList<>();
+        for (Iterator<String> it = element.getKeys(); it.hasNext();) {
+            keys.add(it.next());
+        }
+        TestData.Builder builder = new TestData.Builder(interner.intern(keys));
+        for (int slot = 0; slot < keys.size(); slot++) {
+            Iterator<?> values = PropertyConverter.toIterator(element.getProperty(keys.get(slot)),
+                    AbstractConfiguration.getDefaultListDelimiter());
+            while (values.hasNext()) {
+                builder.add(slot, String.valueOf(values.next()));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Skips the combinations rejected by the constraints.<br>
+     */
+    private static final class AllowedIterator implements Iterator<List<Integer>> {
+        private final Iterator<List<Integer>> combinations;
+        private final CombinationConstraints constraints;
+        private List<Integer> next;
+
+        private AllowedIterator(Iterator<List<Integer>> combinations,
+                CombinationConstraints constraints) {
+            this.combinations = combinations;
+            this.constraints = constraints;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && combinations.hasNext()) {
+                List<Integer> comb = combinations.next();
+                if (constraints.isAllowed(comb)) {
+                    next = comb;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Integer> comb = next;
+            next = null;
+            return comb;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
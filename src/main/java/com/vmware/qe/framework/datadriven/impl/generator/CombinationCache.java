@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_CACHE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_CACHE_DIR;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDConstants;
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Keeps the combinations generated for a data-combination on local disk, so that later runs with
+ * the same data-combination and generator read them instead of generating them again.<br>
+ * Enabled by {@value DDConstants#TAG_GENERATOR_CACHE}, the files are kept in
+ * {@value DDConstants#TAG_GENERATOR_CACHE_DIR} or a directory under java.io.tmpdir. A file is
+ * named by a hash of the data-combination subtree, with attributes in name order, and of the
+ * cache key of the generator, so any change to either makes a new file. The file holds the
+ * allowed index combinations, each index in 1, 2 or 4 bytes as the largest set needs. Files are
+ * written through a temporary file once all combinations have been pulled, failures are only
+ * logged.<br>
+ */
+final class CombinationCache {
+    private static final Logger log = LoggerFactory.getLogger(CombinationCache.class);
+    private static final int MAGIC = 0x44444743; // "DDGC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".comb";
+    private final File file;
+
+    private CombinationCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param generatorKey cache key of the generator, null if its combinations are not cached.
+     * @param dataComb the data-combination.
+     * @param context Context containing the configuration info.
+     * @return the cache of the combinations of the data-combination, null if not cached.
+     */
+    static CombinationCache of(String generatorKey, HierarchicalConfiguration dataComb,
+            HierarchicalConfiguration context) {
+        if (generatorKey == null
+                || !DDUtils.getConfigBoolean(context, TAG_GENERATOR_CACHE, false)) {
+            return null;
+        }
+        String dir = DDUtils.getConfigString(context, TAG_GENERATOR_CACHE_DIR, null);
+        File cacheDir = dir != null ? new File(dir) : new File(System
+                .getProperty("java.io.tmpdir"), "dd-generator-cache");
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new DDException("MD5 is not supported", e);
+        }
+        update(digest, String.valueOf(VERSION));
+        update(digest, generatorKey);
+        update(digest, dataComb.getRootNode());
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+                    Character.forDigit(b & 0xf, 16));
+        }
+        return new CombinationCache(new File(cacheDir, name + SUFFIX));
+    }
+
+    /**
+     * @param width number of sets of the data-combination.
+     * @return the cached combinations, null if there are none.
+     */
+    Iterator<List<Integer>> read(int width) {
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer in;
+        try {
+            in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            log.warn("Could not read generated combinations {}", file, e);
+            return null;
+        }
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != width) {
+                log.info("Generated combinations {} are not usable, generating again", file);
+                return null;
+            }
+            int count = in.getInt();
+            int bytes = in.get();
+            if (in.remaining() != (long) count * width * bytes) {
+                log.info("Generated combinations {} are incomplete, generating again", file);
+                return null;
+            }
+            log.debug("Read {} generated combinations from {}", count, file);
+            return new CachedIterator(in.slice(), count, width, bytes);
+        } catch (BufferUnderflowException e) {
+            log.info("Generated combinations {} are incomplete, generating again", file);
+            return null;
+        }
+    }
+
+    /**
+     * @param combinations the generated combinations.
+     * @param width number of sets of the data-combination.
+     * @return the same combinations, written to the cache once all have been pulled.
+     */
+    Iterator<List<Integer>> record(Iterator<List<Integer>> combinations, int width) {
+        return new RecordingIterator(combinations, width);
+    }
+
+    private void write(int[] values, int count, int width) {
+        int max = 0;
+        for (int i = 0; i < count * width; i++) {
+            max = Math.max(max, values[i]);
+        }
+        int bytes = max <= 0xff ? 1 : max <= 0xffff ? 2 : 4;
+        File temp = null;
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(width);
+                out.writeInt(count);
+                out.writeByte(bytes);
+                for (int i = 0; i < count * width; i++) {
+                    if (bytes == 1) {
+                        out.writeByte(values[i]);
+                    } else if (bytes == 2) {
+                        out.writeShort(values[i]);
+                    } else {
+                        out.writeInt(values[i]);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            log.debug("Wrote {} generated combinations to {}", count, file);
+        } catch (IOException e) {
+            log.warn("Could not write generated combinations {}", file, e);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Adds the node, its attributes in name order and its children in order to the digest.<br>
+     */
+    private static void update(MessageDigest digest, ConfigurationNode node) {
+        update(digest, node.getName());
+        update(digest, node.getValue() == null ? null : String.valueOf(node.getValue()));
+        List<ConfigurationNode> attributes = new ArrayList<>(node.getAttributes());
+        Collections.sort(attributes, new Comparator<ConfigurationNode>() {
+            @Override
+            public int compare(ConfigurationNode attribute1, ConfigurationNode attribute2) {
+                return attribute1.getName().compareTo(attribute2.getName());
+            }
+        });
+        update(digest, String.valueOf(attributes.size()));
+        for (ConfigurationNode attribute : attributes) {
+            update(digest, attribute);
+        }
+        List<ConfigurationNode> children = node.getChildren();
+        update(digest, String.valueOf(children.size()));
+        for (ConfigurationNode child : children) {
+            update(digest, child);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Hands out the cached combinations, reusing the same list.<br>
+     */
+    private static final class CachedIterator extends AbstractList<Integer> implements
+            Iterator<List<Integer>>, RandomAccess {
+        private final ByteBuffer values;
+        private final int count;
+        private final int width;
+        private final int bytes;
+        private int next = 0;
+        private int offset = -1;
+
+        private CachedIterator(ByteBuffer values, int count, int width, int bytes) {
+            this.values = values;
+            this.count = count;
+            this.width = width;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public List<Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            offset = next++ * width;
+            return this;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= width) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            int position = (offset + index) * bytes;
+            if (bytes == 1) {
+                return values.get(position) & 0xff;
+            } else if (bytes == 2) {
+                return values.getShort(position) & 0xffff;
+            }
+            return values.getInt(position);
+        }
+
+        @Override
+        public int size() {
+            return width;
+        }
+    }
+
+    /**
+     * Copies the combinations as they are pulled and writes them when there are no more.<br>
+     */
+    private final class RecordingIterator implements Iterator<List<Integer>> {
+        private final Iterator<List<Integer>> combinations;
+        private final int width;
+        private int[] values = new int[64];
+        private int count = 0;
+        private boolean written = false;
+
+        private RecordingIterator(Iterator<List<Integer>> combinations, int width) {
+            this.combinations = combinations;
+            this.width = width;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (combinations.hasNext()) {
+                return true;
+            }
+            if (!written) {
+                written = true;
+                write(values, count, width);
+                values = null;
+            }
+            return false;
+        }
+
+        @Override
+        public List<Integer> next() {
+            List<Integer> comb = combinations.next();
+            if ((long) (count + 1) * width > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, (count + 1) * width));
+            }
+            for (int i = 0; i < width; i++) {
+                values[count * width + i] = comb.get(i);
+            }
+            count++;
+            return comb;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
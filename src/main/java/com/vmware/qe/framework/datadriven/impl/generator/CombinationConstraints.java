@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Constraints of a data-combination, compiled against the elements of it's sets.<br>
+ * A constraint is given as
+ *
+ * <pre>
+ * &lt;constraint type="forbid|implies"&gt;
+ *     &lt;if key="service" value="ftp"/&gt;
+ *     &lt;then key="user" value="root" negate="true"/&gt;
+ * &lt;/constraint&gt;
+ * </pre>
+ *
+ * A 'forbid' constraint rejects every combination for which all 'if' conditions hold. An
+ * 'implies' constraint rejects every combination for which all 'if' conditions hold but any of the
+ * 'then' conditions does not. A condition holds for an element when the element has a value for
+ * the key which equals one of the given values, or matches the given pattern, or simply exists
+ * when neither is given; negate inverts the condition. A condition applies to the first set having
+ * an element with the key.<br>
+ * Every condition is compiled up front in to the set it applies to and the elements it holds for,
+ * so combinations, even partial ones, are checked without looking at the data.<br>
+ */
+public final class CombinationConstraints {
+    public static final String TAG_CONSTRAINT = "constraint";
+    public static final String TAG_IF = "if";
+    public static final String TAG_THEN = "then";
+    public static final String TYPE_FORBID = "forbid";
+    public static final String TYPE_IMPLIES = "implies";
+    /** position of a set which is not decided yet. */
+    public static final int UNDECIDED = -1;
+    private static final CombinationConstraints NONE = new CombinationConstraints(0,
+            new Constraint[0]);
+    private final Constraint[] constraints;
+    /** constraints by the last set they depend on. */
+    private final Constraint[][] bySet;
+
+    private CombinationConstraints(int setCount, Constraint[] constraints) {
+        this.constraints = constraints;
+        List<List<Constraint>> grouped = new ArrayList<>();
+        for (int i = 0; i < setCount; i++) {
+            grouped.add(new ArrayList<Constraint>());
+        }
+        for (Constraint constraint : constraints) {
+            grouped.get(constraint.lastSet).add(constraint);
+        }
+        this.bySet = new Constraint[setCount][];
+        for (int i = 0; i < setCount; i++) {
+            bySet[i] = grouped.get(i).toArray(new Constraint[grouped.get(i).size()]);
+        }
+    }
+
+    /**
+     * @return constraints which allow every combination.
+     */
+    public static CombinationConstraints none() {
+        return NONE;
+    }
+
+    /**
+     * Compiles the constraints of a data-combination.<br>
+     *
+     * @param dataComb the data-combination.
+     * @param combData elements of each set of the data-combination.
+     * @return the constraints, over the element indexes of each set.
+     */
+    public static CombinationConstraints compile(HierarchicalConfiguration dataComb,
+            List<List<HierarchicalConfiguration>> combData) {
+        List<HierarchicalConfiguration> configs = dataComb.configurationsAt(TAG_CONSTRAINT);
+        if (configs.isEmpty()) {
+            return NONE;
+        }
+        Constraint[] constraints = new Constraint[configs.size()];
+        for (int i = 0; i < constraints.length; i++) {
+            HierarchicalConfiguration config = configs.get(i);
+            String type = config.getString("[@type]", TYPE_FORBID);
+            Literal[] whens = compile(config.configurationsAt(TAG_IF), combData);
+            Literal[] thens = compile(config.configurationsAt(TAG_THEN), combData);
+            if (TYPE_FORBID.equals(type)) {
+                if (thens.length > 0) {
+                    throw new DDException("A forbid constraint can not have 'then' conditions");
+                }
+            } else if (TYPE_IMPLIES.equals(type)) {
+                if (thens.length == 0) {
+                    throw new DDException("An implies constraint needs 'then' conditions");
+                }
+            } else {
+                throw new DDException("Unknown constraint type: " + type);
+            }
+            if (whens.length == 0) {
+                throw new DDException("A constraint needs 'if' conditions");
+            }
+            constraints[i] = new Constraint(whens, thens);
+        }
+        return new CombinationConstraints(combData.size(), constraints);
+    }
+
+    private static Literal[] compile(List<HierarchicalConfiguration> conditions,
+            List<List<HierarchicalConfiguration>> combData) {
+        Literal[] literals = new Literal[conditions.size()];
+        for (int i = 0; i < literals.length; i++) {
+            HierarchicalConfiguration condition = conditions.get(i);
+            String key = condition.getString("[@key]", null);
+            if (key == null) {
+                throw new DDException("Constraint condition without key");
+            }
+            List<String> values = Arrays.asList(condition.getStringArray("[@value]"));
+            // the pattern may have been split on the list delimiter.
+            StringBuilder regex = new StringBuilder();
+            for (String part : condition.getStringArray("[@pattern]")) {
+                regex.append(regex.length() == 0 ? "" : ",").append(part);
+            }
+            Pattern pattern;
+            try {
+                pattern = regex.length() == 0 ? null : Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException e) {
+                throw new DDException("Invalid pattern in constraint on " + key, e);
+            }
+            boolean negate = condition.getBoolean("[@negate]", false);
+            int set = -1;
+            for (int s = 0; s < combData.size() && set < 0; s++) {
+                for (HierarchicalConfiguration element : combData.get(s)) {
+                    if (element.containsKey(key)) {
+                        set = s;
+                        break;
+                    }
+                }
+            }
+            if (set < 0) {
+                throw new DDException("No set has an element with key '" + key
+                        + "' given in constraint");
+            }
+            List<HierarchicalConfiguration> elements = combData.get(set);
+            BitSet holds = new BitSet(elements.size());
+            for (int e = 0; e < elements.size(); e++) {
+                boolean match = false;
+                for (String value : elements.get(e).getStringArray(key)) {
+                    if (values.isEmpty() && pattern == null) {
+                        match = true;
+                    } else if (values.contains(value)) {
+                        match = true;
+                    } else if (pattern != null && pattern.matcher(value).matches()) {
+                        match = true;
+                    }
+                }
+                if (match != negate) {
+                    holds.set(e);
+                }
+            }
+            literals[i] = new Literal(set, holds);
+        }
+        return literals;
+    }
+
+    /**
+     * @return true if there are no constraints.
+     */
+    public boolean isEmpty() {
+        return constraints.length == 0;
+    }
+
+    /**
+     * @param combination element index of each set.
+     * @return true if no constraint rejects the combination.
+     */
+    public boolean isAllowed(List<Integer> combination) {
+        int[] positions = new int[combination.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = combination.get(i);
+        }
+        return !isViolated(positions);
+    }
+
+    /**
+     * Checks a combination which may be partial. A constraint is violated only if the decided
+     * positions are enough to reject the combination, whatever the undecided positions become.<br>
+     *
+     * @param positions element index of each set, {@link #UNDECIDED} for the undecided sets.
+     * @return true if any constraint is violated.
+     */
+    public boolean isViolated(int[] positions) {
+        for (Constraint constraint : constraints) {
+            if (constraint.isViolated(positions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks only the constraints which are decided as soon as the given set is, those whose last
+     * set is the given one. Used when the sets are decided in order, for pruning as early as
+     * possible.<br>
+     *
+     * @param set index of the set decided last.
+     * @param positions element index of each set, decided at least up to the given set.
+     * @return true if any of those constraints is violated.
+     */
+    public boolean isViolatedAt(int set, int[] positions) {
+        for (Constraint constraint : bySet[set]) {
+            if (constraint.isViolated(positions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates the constraints to positions in to reordered index data, as used by the
+     * generators.<br>
+     *
+     * @param order index of the original set at each new set.
+     * @param indexData element indexes of each original set, in the order of the positions.
+     * @return the constraints over positions in to the reordered sets.
+     */
+    public CombinationConstraints forPositions(int[] order, List<List<Integer>> indexData) {
+        if (isEmpty()) {
+            return this;
+        }
+        int[] newIndex = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            newIndex[order[i]] = i;
+        }
+        Constraint[] translated = new Constraint[constraints.length];
+        for (int i = 0; i < constraints.length; i++) {
+            translated[i] = new Constraint(translate(constraints[i].whens, newIndex, indexData),
+                    translate(constraints[i].thens, newIndex, indexData));
+        }
+        return new CombinationConstraints(order.length, translated);
+    }
+
+    private static Literal[] translate(Literal[] literals, int[] newIndex,
+            List<List<Integer>> indexData) {
+        Literal[] translated = new Literal[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            List<Integer> elements = indexData.get(literals[i].set);
+            BitSet holds = new BitSet(elements.size());
+            for (int position = 0; position < elements.size(); position++) {
+                if (literals[i].holds.get(elements.get(position))) {
+                    holds.set(position);
+                }
+            }
+            translated[i] = new Literal(newIndex[literals[i].set], holds);
+        }
+        return translated;
+    }
+
+    private static final class Constraint {
+        private final Literal[] whens;
+        private final Literal[] thens;
+        private final int lastSet;
+
+        private Constraint(Literal[] whens, Literal[] thens) {
+            this.whens = whens;
+            this.thens = thens;
+            int last = 0;
+            for (Literal literal : whens) {
+                last = Math.max(last, literal.set);
+            }
+            for (Literal literal : thens) {
+                last = Math.max(last, literal.set);
+            }
+            this.lastSet = last;
+        }
+
+        private boolean isViolated(int[] positions) {
+            for (Literal literal : whens) {
+                int position = positions[literal.set];
+                if (position == UNDECIDED || !literal.holds.get(position)) {
+                    return false;
+                }
+            }
+            if (thens.length == 0) {
+                return true;
+            }
+            for (Literal literal : thens) {
+                int position = positions[literal.set];
+                if (position != UNDECIDED && !literal.holds.get(position)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A condition compiled in to the set it applies to and the elements of that set it holds
+     * for.<br>
+     */
+    private static final class Literal {
+        private final int set;
+        private final BitSet holds;
+
+        private Literal(int set, BitSet holds) {
+            this.set = set;
+            this.holds = holds;
+        }
+    }
+}
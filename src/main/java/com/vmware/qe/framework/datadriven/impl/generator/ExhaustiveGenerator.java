@@ -15,14 +15,22 @@
  */
 package com.vmware.qe.framework.datadriven.impl.generator;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Generates all possible data combinations for given data sets.<br>
+ * Combinations are enumerated lazily by a {@link MixedRadixCounter}, the last set varying
+ * fastest. Combinations rejected by the constraints of the data-combination are pruned while
+ * enumerating.<br>
  */
 public class ExhaustiveGenerator extends AbstractDataGenerator {
     private static final Logger log = LoggerFactory.getLogger(ExhaustiveGenerator.class);
@@ -31,32 +39,121 @@ public class ExhaustiveGenerator extends AbstractDataGenerator {
      * Generate Exhaustively.<br>
      */
     public List<List<Integer>> generateCombinations(List<List<Integer>> props) {
-        return generatePairs(props, 0);
+        List<List<Integer>> combinations = new ArrayList<>();
+        Iterator<List<Integer>> iterator = iterateCombinations(props);
+        while (iterator.hasNext()) {
+            combinations.add(new ArrayList<>(iterator.next()));
+        }
+        log.debug("Generated:" + combinations);
+        return combinations;
     }
 
-    private List<List<Integer>> generatePairs(List<List<Integer>> props, int index) {
-        if (index == props.size() - 1) {
-            List<Integer> prop = props.get(index);
-            List<List<Integer>> combinations = new ArrayList<>();
-            for (Integer value : prop) {
-                List<Integer> comb = new ArrayList<>();
-                comb.add(value);
-                combinations.add(comb);
+    /**
+     * Enumerates all combinations. The same list is handed out on every call to next(), it's
+     * values change as the iterator moves on.<br>
+     */
+    @Override
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> props) {
+        return new ExhaustiveIterator(props, CombinationConstraints.none());
+    }
+
+    /**
+     * Enumerates the allowed combinations. Every time a set is decided, the constraints depending
+     * on it and the sets before it are checked, and when one is violated all the combinations
+     * sharing that prefix are skipped at once.<br>
+     */
+    @Override
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> props,
+            HierarchicalConfiguration context, CombinationConstraints constraints) {
+        int[] order = new int[props.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return new ExhaustiveIterator(props, constraints.forPositions(order, props));
+    }
+
+    private static MixedRadixCounter newCounter(List<List<Integer>> props) {
+        int[] radices = new int[props.size()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = props.get(i).size();
+        }
+        return new MixedRadixCounter(radices);
+    }
+
+    /**
+     * Iterator stepping a counter over the positions in each set. The combination is a view of
+     * the positions, so nothing is allocated per combination. The counter is kept one allowed
+     * combination ahead of the view.<br>
+     */
+    private static final class ExhaustiveIterator extends AbstractList<Integer> implements
+            Iterator<List<Integer>>, RandomAccess {
+        private final List<List<Integer>> props;
+        private final MixedRadixCounter counter;
+        private final CombinationConstraints constraints;
+        private final int[] current;
+        private boolean hasNext;
+
+        private ExhaustiveIterator(List<List<Integer>> props, CombinationConstraints constraints) {
+            this.props = props;
+            this.counter = newCounter(props);
+            this.constraints = constraints;
+            this.current = new int[counter.length()];
+            this.hasNext = counter.size() > 0 && findAllowed(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public List<Integer> next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
             }
-            return combinations;
+            System.arraycopy(counter.digits(), 0, current, 0, current.length);
+            int changed = counter.skip(current.length - 1);
+            hasNext = changed >= 0 && findAllowed(changed);
+            return this;
         }
-        List<List<Integer>> tempCombinations = generatePairs(props, index + 1);
-        List<List<Integer>> combinations = new ArrayList<>();
-        List<Integer> prop = props.get(index);
-        for (Integer value : prop) {
-            for (List<Integer> comb : tempCombinations) {
-                List<Integer> newComb = new ArrayList<>();
-                newComb.add(value);
-                newComb.addAll(comb);
-                combinations.add(newComb);
+
+        /**
+         * Moves the counter to the first allowed combination from the current one.<br>
+         *
+         * @param from lowest set whose position changed since the last check.
+         * @return false if there is none.
+         */
+        private boolean findAllowed(int from) {
+            if (constraints.isEmpty()) {
+                return true;
+            }
+            int set = from;
+            while (set < current.length) {
+                if (constraints.isViolatedAt(set, counter.digits())) {
+                    set = counter.skip(set);
+                    if (set < 0) {
+                        return false;
+                    }
+                } else {
+                    set++;
+                }
             }
+            return true;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer get(int index) {
+            return props.get(index).get(current[index]);
+        }
+
+        @Override
+        public int size() {
+            return current.length;
         }
-        log.debug("Generated:" + combinations);
-        return combinations;
     }
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_STRENGTH;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Generates a covering array of given strength t for the data sets using the IPOG strategy: every
+ * combination of elements from any t sets appears in at least one of the generated combinations,
+ * using far fewer combinations than the exhaustive generator.<br>
+ * The sets are processed largest first. The combinations of the first t sets are generated
+ * exhaustively, then the array is grown one set at a time: horizontally, by picking for each
+ * existing combination the element covering the most uncovered t-way combinations, and vertically,
+ * by adding combinations for the t-way combinations still uncovered. Uncovered t-way combinations
+ * are tracked in one BitSet per group of t-1 earlier sets.<br>
+ * The strength is read from 'generator.strength' and defaults to 2 (pairwise). Constraints of the
+ * data-combination are honoured while building the array: a row is only ever given elements with
+ * which it can still be completed to an allowed combination, so no row is dropped at the end and
+ * every t-way combination which is part of some allowed combination is covered.<br>
+ */
+public class IPOGDataGenerator extends AbstractDataGenerator {
+    private static final Logger log = LoggerFactory.getLogger(IPOGDataGenerator.class);
+    public static final int DEFAULT_STRENGTH = 2;
+    public static final int MIN_STRENGTH = 2;
+    public static final int MAX_STRENGTH = 4;
+    /** value of a position which is not decided yet. */
+    private static final int DONT_CARE = -1;
+
+    @Override
+    public List<List<Integer>> generateCombinations(List<List<Integer>> indexData) {
+        return generateCombinations(indexData, DEFAULT_STRENGTH);
+    }
+
+    /**
+     * The combinations depend on the data-combination and the strength.<br>
+     */
+    @Override
+    protected String getCacheKey(HierarchicalConfiguration context) {
+        return getClass().getName() + ":2:strength="
+                + DDUtils.getConfigInt(context, TAG_GENERATOR_STRENGTH, DEFAULT_STRENGTH);
+    }
+
+    @Override
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData,
+            HierarchicalConfiguration context) {
+        return iterateCombinations(indexData, context, CombinationConstraints.none());
+    }
+
+    @Override
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData,
+            HierarchicalConfiguration context, CombinationConstraints constraints) {
+        int strength = DDUtils.getConfigInt(context, TAG_GENERATOR_STRENGTH, DEFAULT_STRENGTH);
+        return generateCombinations(indexData, strength, constraints).iterator();
+    }
+
+    /**
+     * Generates a covering array of given strength.<br>
+     *
+     * @param indexData indexes of the elements of each set.
+     * @param strength number of sets whose element combinations must all be covered, 2 to 4.
+     * @return the combinations, one index per set.
+     */
+    public List<List<Integer>> generateCombinations(List<List<Integer>> indexData, int strength) {
+        return generateCombinations(indexData, strength, CombinationConstraints.none());
+    }
+
+    /**
+     * Generates a covering array of given strength, made of combinations allowed by the
+     * constraints only. Every t-way combination which appears in any allowed combination is
+     * covered, the others can not be.<br>
+     *
+     * @param indexData indexes of the elements of each set.
+     * @param strength number of sets whose element combinations must all be covered, 2 to 4.
+     * @param constraints constraints over the element indexes of each set.
+     * @return the combinations, one index per set.
+     */
+    public List<List<Integer>> generateCombinations(List<List<Integer>> indexData, int strength,
+            CombinationConstraints constraints) {
+        if (strength < MIN_STRENGTH || strength > MAX_STRENGTH) {
+            throw new DDException("Strength must be between " + MIN_STRENGTH + " and "
+                    + MAX_STRENGTH + ", given: " + strength);
+        }
+        final int[] sizes = new int[indexData.size()];
+        Integer[] order = new Integer[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = indexData.get(i).size();
+            order[i] = i;
+            if (sizes[i] == 0) {
+                return new ArrayList<>();
+            }
+        }
+        // largest sets first, keeping the given order among sets of the same size.
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return sizes[o2] - sizes[o1];
+            }
+        });
+        int[] sortedSizes = new int[sizes.length];
+        int[] sortedOrder = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sortedSizes[i] = sizes[order[i]];
+            sortedOrder[i] = order[i];
+        }
+        List<int[]> rows = new Builder(sortedSizes, Math.min(strength, sizes.length),
+                constraints.forPositions(sortedOrder, indexData)).build();
+        List<List<Integer>> combinations = new ArrayList<>(rows.size());
+        for (int[] row : rows) {
+            Integer[] comb = new Integer[row.length];
+            for (int i = 0; i < row.length; i++) {
+                comb[order[i]] = indexData.get(order[i]).get(row[i]);
+            }
+            combinations.add(Arrays.asList(comb));
+        }
+        log.info("Combinations generated: '{}' of strength {}", combinations.size(), strength);
+        return combinations;
+    }
+
+    /**
+     * Builds the covering array over positions 0 to size - 1 of each set.<br>
+     */
+    private static final class Builder {
+        private final int[] sizes;
+        private final int strength;
+        private final CombinationConstraints constraints;
+        private final List<int[]> rows = new ArrayList<>();
+
+        private Builder(int[] sizes, int strength, CombinationConstraints constraints) {
+            this.sizes = sizes;
+            this.strength = strength;
+            this.constraints = constraints;
+        }
+
+        private List<int[]> build() {
+            if (sizes.length == 0) {
+                return rows;
+            }
+            int[] initial = Arrays.copyOf(sizes, strength);
+            MixedRadixCounter counter = new MixedRadixCounter(initial);
+            do {
+                int[] row = new int[sizes.length];
+                Arrays.fill(row, DONT_CARE);
+                for (int i = 0; i < strength; i++) {
+                    row[i] = counter.get(i);
+                }
+                if (isCompletable(row)) {
+                    rows.add(row);
+                }
+            } while (counter.next());
+            for (int column = strength; column < sizes.length; column++) {
+                extend(column);
+            }
+            complete();
+            return rows;
+        }
+
+        /**
+         * Decides the positions still undecided, taking the first elements allowed by the
+         * constraints. Every row can be completed, as no row is ever given an element with which
+         * it can not.<br>
+         */
+        private void complete() {
+            for (int[] row : rows) {
+                if (!complete(row, 0)) {
+                    throw new DDException("Combination can not be completed: "
+                            + Arrays.toString(row));
+                }
+            }
+        }
+
+        /**
+         * @return true if the undecided positions of the row can be decided so that the
+         *         constraints allow the row. The row is left unchanged.
+         */
+        private boolean isCompletable(int[] row) {
+            if (constraints.isEmpty()) {
+                return true;
+            }
+            return !constraints.isViolated(row) && complete(row.clone(), 0);
+        }
+
+        private boolean complete(int[] row, int column) {
+            if (column == row.length) {
+                return true;
+            }
+            if (row[column] != DONT_CARE) {
+                return complete(row, column + 1);
+            }
+            for (int value = 0; value < sizes[column]; value++) {
+                row[column] = value;
+                if (!constraints.isViolated(row) && complete(row, column + 1)) {
+                    return true;
+                }
+            }
+            row[column] = DONT_CARE;
+            return false;
+        }
+
+        /**
+         * Adds given set to the array, covering all of it's t-way combinations with the sets
+         * before it.<br>
+         */
+        private void extend(int column) {
+            int[][] groups = groups(column, strength - 1);
+            BitSet[] uncovered = new BitSet[groups.length];
+            for (int g = 0; g < groups.length; g++) {
+                int count = sizes[column];
+                for (int member : groups[g]) {
+                    count *= sizes[member];
+                }
+                uncovered[g] = new BitSet(count);
+                uncovered[g].set(0, count);
+                if (!constraints.isEmpty()) {
+                    excludeViolated(groups[g], column, uncovered[g]);
+                }
+            }
+            // horizontal growth, some element always keeps the row completable.
+            for (int[] row : rows) {
+                int bestValue = DONT_CARE;
+                int bestGain = -1;
+                for (int value = 0; value < sizes[column]; value++) {
+                    row[column] = value;
+                    if (!isCompletable(row)) {
+                        continue;
+                    }
+                    int gain = 0;
+                    for (int g = 0; g < groups.length; g++) {
+                        int rank = rank(row, groups[g], column);
+                        if (rank >= 0 && uncovered[g].get(rank)) {
+                            gain++;
+                        }
+                    }
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestValue = value;
+                    }
+                }
+                row[column] = bestValue;
+                markCovered(row, groups, column, uncovered);
+            }
+            // vertical growth, filling the undecided positions of existing rows where possible.
+            List<int[]> openRows = new ArrayList<>();
+            for (int[] row : rows) {
+                if (!isDecided(row, column)) {
+                    openRows.add(row);
+                }
+            }
+            int[] values = new int[strength];
+            for (int g = 0; g < groups.length; g++) {
+                int[] group = groups[g];
+                for (int rank = uncovered[g].nextSetBit(0); rank >= 0; rank = uncovered[g]
+                        .nextSetBit(rank + 1)) {
+                    unrank(rank, group, column, values);
+                    int index = findCompatible(openRows, group, column, values);
+                    int[] row;
+                    if (index < 0) {
+                        row = new int[sizes.length];
+                        Arrays.fill(row, DONT_CARE);
+                        rows.add(row);
+                        openRows.add(row);
+                        index = openRows.size() - 1;
+                    } else {
+                        row = openRows.get(index);
+                    }
+                    for (int i = 0; i < group.length; i++) {
+                        row[group[i]] = values[i];
+                    }
+                    row[column] = values[group.length];
+                    markCovered(row, groups, column, uncovered);
+                    if (isDecided(row, column)) {
+                        openRows.remove(index);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds a row which can take the given values in place of it's undecided positions.<br>
+         *
+         * @return index of the row in given rows, -1 if there is none.
+         */
+        private int findCompatible(List<int[]> openRows, int[] group, int column, int[] values) {
+            for (int r = 0; r < openRows.size(); r++) {
+                int[] row = openRows.get(r);
+                boolean compatible = row[column] == DONT_CARE
+                        || row[column] == values[group.length];
+                for (int i = 0; compatible && i < group.length; i++) {
+                    compatible = row[group[i]] == DONT_CARE || row[group[i]] == values[i];
+                }
+                if (compatible && !constraints.isEmpty()) {
+                    compatible = isCompletable(row, group, column, values);
+                }
+                if (compatible) {
+                    return r;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return true if the row with the given values filled in can still be completed. The row
+         *         is left unchanged.
+         */
+        private boolean isCompletable(int[] row, int[] group, int column, int[] values) {
+            int[] filled = row.clone();
+            for (int i = 0; i < group.length; i++) {
+                filled[group[i]] = values[i];
+            }
+            filled[column] = values[group.length];
+            return isCompletable(filled);
+        }
+
+        /**
+         * Marks the t-way combinations which are not part of any allowed combination as covered,
+         * as no allowed row can cover them. This includes those rejected only together with
+         * elements of other sets.<br>
+         */
+        private void excludeViolated(int[] group, int column, BitSet uncovered) {
+            int[] row = new int[sizes.length];
+            Arrays.fill(row, DONT_CARE);
+            int[] values = new int[strength];
+            for (int rank = uncovered.nextSetBit(0); rank >= 0; rank = uncovered
+                    .nextSetBit(rank + 1)) {
+                unrank(rank, group, column, values);
+                for (int i = 0; i < group.length; i++) {
+                    row[group[i]] = values[i];
+                }
+                row[column] = values[group.length];
+                if (!isCompletable(row)) {
+                    uncovered.clear(rank);
+                }
+            }
+        }
+
+        /**
+         * @return true if none of the positions up to the given column is undecided.
+         */
+        private static boolean isDecided(int[] row, int column) {
+            for (int i = 0; i <= column; i++) {
+                if (row[i] == DONT_CARE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void markCovered(int[] row, int[][] groups, int column, BitSet[] uncovered) {
+            for (int g = 0; g < groups.length; g++) {
+                int rank = rank(row, groups[g], column);
+                if (rank >= 0) {
+                    uncovered[g].clear(rank);
+                }
+            }
+        }
+
+        /**
+         * @return rank of the values of the row in the group and column, -1 if any of them is not
+         *         decided.
+         */
+        private int rank(int[] row, int[] group, int column) {
+            int rank = 0;
+            for (int member : group) {
+                if (row[member] == DONT_CARE) {
+                    return -1;
+                }
+                rank = rank * sizes[member] + row[member];
+            }
+            if (row[column] == DONT_CARE) {
+                return -1;
+            }
+            return rank * sizes[column] + row[column];
+        }
+
+        private void unrank(int rank, int[] group, int column, int[] values) {
+            values[group.length] = rank % sizes[column];
+            rank /= sizes[column];
+            for (int i = group.length - 1; i >= 0; i--) {
+                values[i] = rank % sizes[group[i]];
+                rank /= sizes[group[i]];
+            }
+        }
+
+        /**
+         * @return all groups of given size from the columns before given column, in lexicographic
+         *         order.
+         */
+        private static int[][] groups(int column, int size) {
+            List<int[]> groups = new ArrayList<>();
+            int[] group = new int[size];
+            for (int i = 0; i < size; i++) {
+                group[i] = i;
+            }
+            while (true) {
+                groups.add(group.clone());
+                int i = size - 1;
+                while (i >= 0 && group[i] == column - size + i) {
+                    i--;
+                }
+                if (i < 0) {
+                    break;
+                }
+                group[i]++;
+                for (int j = i + 1; j < size; j++) {
+                    group[j] = group[j - 1] + 1;
+                }
+            }
+            return groups.toArray(new int[groups.size()][]);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import java.util.Arrays;
+
+/**
+ * Odometer over a mixed radix number, the first digit being the most significant.<br>
+ * Digit i runs from 0 to radix i - 1, so the values of the counter are all the combinations of
+ * one position per set, in the order the exhaustive generator produces them. The counter steps in
+ * place without allocating, keeping the rank of the current combination as it goes.<br>
+ */
+public final class MixedRadixCounter {
+    private final int[] radices;
+    private final int[] digits;
+    /** number of combinations sharing the digits up to each one. */
+    private final long[] strides;
+    private final long size;
+    private long rank;
+
+    /**
+     * @param radices number of values of each digit.
+     * @throws IllegalArgumentException if a radix is negative or the number of combinations does
+     *         not fit in a long.
+     */
+    public MixedRadixCounter(int... radices) {
+        this.radices = radices.clone();
+        this.digits = new int[radices.length];
+        long count = radices.length == 0 ? 0 : 1;
+        for (int radix : radices) {
+            if (radix < 0) {
+                throw new IllegalArgumentException("Negative radix: " + Arrays.toString(radices));
+            }
+            if (radix != 0 && count > Long.MAX_VALUE / radix) {
+                throw new IllegalArgumentException("Too many combinations: "
+                        + Arrays.toString(radices));
+            }
+            count *= radix;
+        }
+        this.size = count;
+        this.strides = new long[radices.length];
+        if (count > 0) {
+            long stride = 1;
+            for (int i = radices.length - 1; i >= 0; i--) {
+                strides[i] = stride;
+                stride *= radices[i];
+            }
+        }
+    }
+
+    /**
+     * @return number of combinations, 0 if there are no digits or any radix is 0.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return rank of the current combination.
+     */
+    public long rank() {
+        return rank;
+    }
+
+    /**
+     * @return number of digits.
+     */
+    public int length() {
+        return digits.length;
+    }
+
+    /**
+     * @param index index of the digit.
+     * @return value of the digit in the current combination.
+     */
+    public int get(int index) {
+        return digits[index];
+    }
+
+    /**
+     * Moves to the next combination.<br>
+     *
+     * @return false if the current combination was the last one, the counter is then left at rank
+     *         0.
+     */
+    public boolean next() {
+        int i = digits.length - 1;
+        while (i >= 0 && ++digits[i] == radices[i]) {
+            digits[i--] = 0;
+        }
+        rank = i < 0 ? 0 : rank + 1;
+        return i >= 0;
+    }
+
+    /**
+     * Moves to the first combination after all those sharing the digits up to the given one,
+     * skipping every combination which only differs in the later digits.<br>
+     *
+     * @param index index of the digit to step.
+     * @return index of the lowest digit changed, -1 if there was no such combination, the
+     *         counter is then left at rank 0.
+     */
+    public int skip(int index) {
+        long newRank = rank + strides[index];
+        for (int j = index + 1; j < digits.length; j++) {
+            newRank -= digits[j] * strides[j];
+            digits[j] = 0;
+        }
+        int i = index;
+        while (i >= 0 && ++digits[i] == radices[i]) {
+            digits[i--] = 0;
+        }
+        rank = i < 0 ? 0 : newRank;
+        return i;
+    }
+
+    /**
+     * @return the digits of the current combination, not to be modified.
+     */
+    int[] digits() {
+        return digits;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(digits) + " of " + Arrays.toString(radices);
+    }
+}
@@ -16,14 +16,44 @@
 package com.vmware.qe.framework.datadriven.impl.generator;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Generates combinations covering every pair of elements from any two sets.<br>
+ * Data-combinations with constraints are generated by {@link IPOGDataGenerator} with strength 2,
+ * which covers every pair that is part of some allowed combination.<br>
+ */
 public class PairwiseDataGenerator extends AbstractDataGenerator {
     final Logger log = LoggerFactory.getLogger(PairwiseDataGenerator.class);
 
+    /**
+     * The combinations only depend on the data-combination.<br>
+     */
+    @Override
+    protected String getCacheKey(HierarchicalConfiguration context) {
+        return getClass().getName() + ":2";
+    }
+
+    /**
+     * Generates the pairs allowed by the constraints while building the combinations, rather than
+     * dropping rejected combinations afterwards together with the allowed pairs only they
+     * cover.<br>
+     */
+    @Override
+    protected Iterator<List<Integer>> iterateCombinations(List<List<Integer>> indexData,
+            HierarchicalConfiguration context, CombinationConstraints constraints) {
+        if (constraints.isEmpty()) {
+            return iterateCombinations(indexData, context);
+        }
+        return new IPOGDataGenerator().generateCombinations(indexData, 2, constraints)
+                .iterator();
+    }
+
     @Override
     public List<List<Integer>> generateCombinations(List<List<Integer>> prop) {
         List<List<Integer>> data = generateCombinations(null, prop.get(0), null);
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.injector;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.PropertyConverter;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+import com.vmware.qe.framework.datadriven.utils.ClassMetadata;
+
+/**
+ * Injector specialized for one test class, compiled on first use from the {@link Data} fields of
+ * the class and it's super classes.<br>
+ * Each field is bound once to a setter handle, a pre-resolved key and a conversion to the declared
+ * type of the field, with the {@link DataConverter} of the field created up front, so injecting a
+ * row only looks up the values, converts them and assigns them. Plain keys and attribute keys are
+ * looked up directly in the {@link TestData} or on the root node of the data, other keys go through
+ * the expression engine of the configuration.<br>
+ */
+final class CompiledDataInjector {
+    private static final Pattern PLAIN_KEY = Pattern.compile("[\\w\\-]+");
+    private static final Pattern ATTRIBUTE_KEY = Pattern.compile("\\[@([\\w\\-]+)\\]");
+    private static final ClassValue<CompiledDataInjector> injectors =
+            new ClassValue<CompiledDataInjector>() {
+                @Override
+                protected CompiledDataInjector computeValue(Class<?> type) {
+                    return new CompiledDataInjector(type);
+                }
+            };
+    private final FieldBinding[] bindings;
+
+    private CompiledDataInjector(Class<?> type) {
+        List<FieldBinding> fieldBindings = new ArrayList<>();
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                Data dataAnnotation = field.getAnnotation(Data.class);
+                if (dataAnnotation != null) {
+                    fieldBindings.add(bind(field, dataAnnotation));
+                }
+            }
+        }
+        this.bindings = fieldBindings.toArray(new FieldBinding[fieldBindings.size()]);
+    }
+
+    /**
+     * @param type the test class.
+     * @return the injector of given class, compiled on the first call.
+     */
+    static CompiledDataInjector forClass(Class<?> type) {
+        return injectors.get(type);
+    }
+
+    /**
+     * Assigns every {@link Data} field of the test from given data.<br>
+     */
+    void inject(Object test, HierarchicalConfiguration data) {
+        for (FieldBinding binding : bindings) {
+            binding.inject(test, data);
+        }
+    }
+
+    private static FieldBinding bind(Field field, Data dataAnnotation) {
+        String name = field.getDeclaringClass().getName() + "." + field.getName();
+        String key = dataAnnotation.name();
+        Class<?> type = field.getType();
+        Conversion conversion;
+        if (key.isEmpty()) {
+            if (!type.isAssignableFrom(HierarchicalConfiguration.class)) {
+                throw new DDException("@Data without name needs a field which can hold "
+                        + "HierarchicalConfiguration. Field: " + name);
+            }
+            conversion = null;
+        } else if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            conversion = new ArrayConversion(componentType, getConverter(name, dataAnnotation,
+                    componentType));
+        } else if (type == List.class || type == Collection.class || type == Iterable.class
+                || type == Set.class) {
+            conversion = new CollectionConversion(type == Set.class, getConverter(name,
+                    dataAnnotation, getElementType(name, field)));
+        } else {
+            conversion = new ScalarConversion(getConverter(name, dataAnnotation, type));
+        }
+        return new FieldBinding(name, key, ClassMetadata.toSetter(field), conversion,
+                type.isPrimitive());
+    }
+
+    private static DataConverter<?> getConverter(String name, Data dataAnnotation,
+            Class<?> type) {
+        if (dataAnnotation.converter() != DataConverter.class) {
+            return (DataConverter<?>) ClassMetadata.of(dataAnnotation.converter()).newInstance();
+        }
+        DataConverter<?> converter = DataConverters.forType(type);
+        if (converter == null) {
+            throw new DDException("Type " + type.getName() + " of @Data field " + name
+                    + " is not supported. Give a converter for it.");
+        }
+        return converter;
+    }
+
+    private static Class<?> getElementType(String name, Field field) {
+        Type genericType = field.getGenericType();
+        if (!(genericType instanceof ParameterizedType)) {
+            return Object.class; // raw collection, holds the values as they are.
+        }
+        Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        if (elementType instanceof Class) {
+            return (Class<?>) elementType;
+        }
+        if (elementType instanceof WildcardType) {
+            Type[] upperBounds = ((WildcardType) elementType).getUpperBounds();
+            if (upperBounds.length == 1 && upperBounds[0] instanceof Class) {
+                return (Class<?>) upperBounds[0];
+            }
+        }
+        throw new DDException("Element type " + elementType + " of @Data field " + name
+                + " is not supported");
+    }
+
+    /**
+     * Binding of a field to the key it is injected from.<br>
+     */
+    private static final class FieldBinding {
+        private final String name;
+        private final String key;
+        /** name of the child or attribute of the root node, null if the key is an expression. */
+        private final String nodeName;
+        private final boolean attribute;
+        private final MethodHandle setter;
+        /** conversion of the values, null if the whole data is injected. */
+        private final Conversion conversion;
+        /** whether the field keeps it's value when the key is missing. */
+        private final boolean keepIfMissing;
+
+        private FieldBinding(String name, String key, MethodHandle setter, Conversion conversion,
+                boolean keepIfMissing) {
+            this.name = name;
+            this.key = key;
+            this.setter = setter;
+            this.conversion = conversion;
+            this.keepIfMissing = keepIfMissing;
+            if (PLAIN_KEY.matcher(key).matches()) {
+                nodeName = key;
+                attribute = false;
+            } else if (ATTRIBUTE_KEY.matcher(key).matches()) {
+                nodeName = key.substring(2, key.length() - 1);
+                attribute = true;
+            } else {
+                nodeName = null;
+                attribute = false;
+            }
+        }
+
+        private void inject(Object test, HierarchicalConfiguration data) {
+            Object value;
+            if (conversion == null) {
+                value = data;
+            } else {
+                List<Object> values = lookup(data);
+                if (values.isEmpty() && keepIfMissing) {
+                    return;
+                }
+                try {
+                    value = conversion.convert(values);
+                } catch (ConversionException | IllegalArgumentException e) {
+                    throw new DDException("Error in injecting data to field with name = " + name
+                            + ". Value of '" + key + "': " + values, e);
+                }
+            }
+            ClassMetadata.set(setter, test, name, value);
+        }
+
+        private List<Object> lookup(HierarchicalConfiguration data) {
+            if (nodeName == null) {
+                return data.getList(key);
+            }
+            if (data instanceof TestDataConfiguration) {
+                TestData testData = ((TestDataConfiguration) data).getTestData();
+                if (testData != null) {
+                    List<Object> values = new ArrayList<Object>(testData.getList(key));
+                    for (int i = 0; i < values.size(); i++) {
+                        values.set(i, interpolate(values.get(i), data));
+                    }
+                    return values;
+                }
+            }
+            ConfigurationNode root = data.getRootNode();
+            List<ConfigurationNode> nodes = attribute ? root.getAttributes(nodeName) : root
+                    .getChildren(nodeName);
+            if (nodes.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Object> values = new ArrayList<>(nodes.size());
+            for (ConfigurationNode node : nodes) {
+                Object value = interpolate(node.getValue(), data);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+
+        private static Object interpolate(Object value, HierarchicalConfiguration data) {
+            if (value instanceof String && ((String) value).contains("${")) {
+                return PropertyConverter.interpolate(value, data);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Conversion of the values found for a key to the type of a field.<br>
+     */
+    private interface Conversion {
+        Object convert(List<Object> values);
+    }
+
+    /**
+     * Converts the first value, null when there is none.<br>
+     */
+    private static final class ScalarConversion implements Conversion {
+        private final DataConverter<?> converter;
+
+        private ScalarConversion(DataConverter<?> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public Object convert(List<Object> values) {
+            return values.isEmpty() ? null : converter.convert(String.valueOf(values.get(0)));
+        }
+    }
+
+    /**
+     * Converts every value in to an element of an array, which may be of a primitive type.<br>
+     */
+    private static final class ArrayConversion implements Conversion {
+        private final Class<?> componentType;
+        private final DataConverter<?> converter;
+
+        private ArrayConversion(Class<?> componentType, DataConverter<?> converter) {
+            this.componentType = componentType;
+            this.converter = converter;
+        }
+
+        @Override
+        public Object convert(List<Object> values) {
+            Object array = Array.newInstance(componentType, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Array.set(array, i, converter.convert(String.valueOf(values.get(i))));
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Converts every value in to an element of a list, or of a set keeping the order of the
+     * values.<br>
+     */
+    private static final class CollectionConversion implements Conversion {
+        private final boolean set;
+        private final DataConverter<?> converter;
+
+        private CollectionConversion(boolean set, DataConverter<?> converter) {
+            this.set = set;
+            this.converter = converter;
+        }
+
+        @Override
+        public Object convert(List<Object> values) {
+            Collection<Object> collection = set ? new LinkedHashSet<Object>(values.size() * 2)
+                    : new ArrayList<Object>(values.size());
+            for (Object value : values) {
+                collection.add(converter.convert(String.valueOf(value)));
+            }
+            return collection;
+        }
+    }
+}
@@ -22,8 +22,24 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a field to be injected by {@link DataInjectorUsingAnnotations}.<br>
+ * The values of the key are converted to the declared type of the field: String, primitives and
+ * their wrappers, enums, arrays of those and List, Set or Collection of those. An empty name
+ * injects the whole data.<br>
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(value = { FIELD })
 public @interface Data {
+	/**
+	 * @return key of the value in the test data, empty for the whole data.
+	 */
 	String name();
+
+	/**
+	 * @return converter for the values of the field, or of it's elements for array and collection
+	 *         fields. {@link DataConverter} itself means the built-in conversion of the type.
+	 */
+	@SuppressWarnings("rawtypes")
+	Class<? extends DataConverter> converter() default DataConverter.class;
 }
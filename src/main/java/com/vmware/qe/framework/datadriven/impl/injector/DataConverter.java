@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.injector;
+
+/**
+ * Converts a value of the test data to the type of a {@link Data} field.<br>
+ * Given through {@link Data#converter()}, a converter is created once per field and shared by all
+ * instances of the test, so it has to be thread safe. Array and collection fields are converted
+ * element by element.<br>
+ * 
+ * @param <T> the type converted to.
+ */
+public interface DataConverter<T> {
+    /**
+     * @param value a value of the test data, never null.
+     * @return the converted value.
+     * @throws IllegalArgumentException if the value can not be converted.
+     */
+    T convert(String value);
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.injector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.PropertyConverter;
+
+/**
+ * The built-in {@link DataConverter}s, by the type they convert to.<br>
+ * Numbers and booleans are parsed like commons-configuration does, so a field gets the same value
+ * as the matching getter of the configuration would return.<br>
+ */
+final class DataConverters {
+    private static final Map<Class<?>, DataConverter<?>> converters = new HashMap<>();
+    static {
+        DataConverter<String> string = new DataConverter<String>() {
+            @Override
+            public String convert(String value) {
+                return value;
+            }
+        };
+        register(string, String.class, Object.class, CharSequence.class);
+        register(new DataConverter<Integer>() {
+            @Override
+            public Integer convert(String value) {
+                return PropertyConverter.toInteger(value);
+            }
+        }, int.class, Integer.class);
+        register(new DataConverter<Long>() {
+            @Override
+            public Long convert(String value) {
+                return PropertyConverter.toLong(value);
+            }
+        }, long.class, Long.class);
+        register(new DataConverter<Short>() {
+            @Override
+            public Short convert(String value) {
+                return PropertyConverter.toShort(value);
+            }
+        }, short.class, Short.class);
+        register(new DataConverter<Byte>() {
+            @Override
+            public Byte convert(String value) {
+                return PropertyConverter.toByte(value);
+            }
+        }, byte.class, Byte.class);
+        register(new DataConverter<Double>() {
+            @Override
+            public Double convert(String value) {
+                return PropertyConverter.toDouble(value);
+            }
+        }, double.class, Double.class);
+        register(new DataConverter<Float>() {
+            @Override
+            public Float convert(String value) {
+                return PropertyConverter.toFloat(value);
+            }
+        }, float.class, Float.class);
+        register(new DataConverter<Boolean>() {
+            @Override
+            public Boolean convert(String value) {
+                return PropertyConverter.toBoolean(value);
+            }
+        }, boolean.class, Boolean.class);
+        register(new DataConverter<Character>() {
+            @Override
+            public Character convert(String value) {
+                if (value.length() != 1) {
+                    throw new IllegalArgumentException("Not a single character: " + value);
+                }
+                return value.charAt(0);
+            }
+        }, char.class, Character.class);
+    }
+
+    private DataConverters() {
+    }
+
+    private static void register(DataConverter<?> converter, Class<?>... types) {
+        for (Class<?> type : types) {
+            converters.put(type, converter);
+        }
+    }
+
+    /**
+     * @param type the type to convert to.
+     * @return the built-in converter for given type, null if there is none.
+     */
+    static DataConverter<?> forType(Class<?> type) {
+        if (type.isEnum()) {
+            return new EnumConverter(type.asSubclass(Enum.class));
+        }
+        return converters.get(type);
+    }
+
+    /**
+     * Converts to a constant of an enum by it's name, ignoring case if there is no exact match.<br>
+     */
+    private static final class EnumConverter implements DataConverter<Enum<?>> {
+        private final Class<?> type;
+        private final Map<String, Enum<?>> constants = new HashMap<>();
+
+        @SuppressWarnings("rawtypes")
+        private EnumConverter(Class<? extends Enum> type) {
+            this.type = type;
+            for (Enum<?> constant : type.getEnumConstants()) {
+                constants.put(constant.name(), constant);
+            }
+            for (Enum<?> constant : type.getEnumConstants()) {
+                String lowerCase = constant.name().toLowerCase();
+                if (!constants.containsKey(lowerCase)) {
+                    constants.put(lowerCase, constant);
+                }
+            }
+        }
+
+        @Override
+        public Enum<?> convert(String value) {
+            String name = value.trim();
+            Enum<?> constant = constants.get(name);
+            if (constant == null) {
+                constant = constants.get(name.toLowerCase());
+            }
+            if (constant == null) {
+                throw new IllegalArgumentException("No constant '" + name + "' in "
+                        + type.getName());
+            }
+            return constant;
+        }
+    }
+}
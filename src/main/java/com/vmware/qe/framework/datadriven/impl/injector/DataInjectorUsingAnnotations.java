@@ -15,37 +15,21 @@
  */
 package com.vmware.qe.framework.datadriven.impl.injector;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-
 import org.apache.commons.configuration.HierarchicalConfiguration;
 
-import com.vmware.qe.framework.datadriven.core.DDException;
 import com.vmware.qe.framework.datadriven.core.DataInjector;
+import com.vmware.qe.framework.datadriven.core.ThreadSafe;
 
+/**
+ * Injects the values of the data in to the fields annotated with {@link Data}, converted to the
+ * declared type of each field. A field with an empty name gets the whole data.<br>
+ * The fields of a class are resolved once, see {@link CompiledDataInjector}.<br>
+ */
+@ThreadSafe
 public class DataInjectorUsingAnnotations implements DataInjector {
     @Override
     public void inject(Object test, HierarchicalConfiguration data,
             HierarchicalConfiguration context) {
-        Class<? extends Object> testClass = test.getClass();
-        for (Field field : testClass.getDeclaredFields()) {
-            for (Annotation annotation : field.getAnnotations()) {
-                if (annotation.annotationType().isAssignableFrom(Data.class)) {
-                }
-                Data dataAnnotation = (Data) annotation;
-                field.setAccessible(true);
-                try {
-                    if (dataAnnotation.name().equals("")) {
-                        field.set(test, data);
-                    } else {
-                        String value = data.getString(dataAnnotation.name());
-                        field.set(test, value);
-                    }
-                } catch (IllegalArgumentException | IllegalAccessException e) {
-                    throw new DDException("Error in injecting data to field with name = "
-                            + field.getName(), e);
-                }
-            }
-        }
+        CompiledDataInjector.forClass(test.getClass()).inject(test, data);
     }
 }
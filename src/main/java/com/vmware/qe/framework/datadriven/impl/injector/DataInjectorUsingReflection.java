@@ -18,14 +18,14 @@ package com.vmware.qe.framework.datadriven.impl.injector;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.DATA_INJECTOR_DEFAULT_PROPERTY_NAME;
 import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_INJECTOR_PROPERTY;
 
-import java.lang.reflect.Field;
-
 import org.apache.commons.configuration.HierarchicalConfiguration;
 
 import com.vmware.qe.framework.datadriven.config.DDConfig;
-import com.vmware.qe.framework.datadriven.core.DDException;
 import com.vmware.qe.framework.datadriven.core.DataInjector;
+import com.vmware.qe.framework.datadriven.core.ThreadSafe;
+import com.vmware.qe.framework.datadriven.utils.ClassMetadata;
 
+@ThreadSafe
 public class DataInjectorUsingReflection implements DataInjector {
     @Override
     public void inject(Object test, HierarchicalConfiguration data,
@@ -34,30 +34,6 @@ public class DataInjectorUsingReflection implements DataInjector {
         propertyName = propertyName == null ? DDConfig.getSingleton().getData()
                 .getString(TAG_DATA_INJECTOR_PROPERTY, DATA_INJECTOR_DEFAULT_PROPERTY_NAME)
                 : propertyName;
-        Class<? extends Object> testClass = test.getClass();
-        Field field;
-        try {
-            field = getField(testClass, propertyName);
-            field.setAccessible(true);
-            field.set(test, data);
-        } catch (SecurityException | IllegalArgumentException | IllegalAccessException e) {
-            throw new DDException("Failed to inject data to property with name =" + propertyName, e);
-        }
-    }
-
-    private static Field getField(Class<?> clazz, String fieldName) {
-        Class<?> tmpClass = clazz;
-        do {
-            for (Field field : tmpClass.getDeclaredFields()) {
-                String candidateName = field.getName();
-                if (!candidateName.equals(fieldName)) {
-                    continue;
-                }
-                field.setAccessible(true);
-                return field;
-            }
-            tmpClass = tmpClass.getSuperclass();
-        } while (clazz != null);
-        throw new RuntimeException("Field '" + fieldName + "' not found on class " + clazz);
+        ClassMetadata.of(test.getClass()).set(test, propertyName, data);
     }
 }
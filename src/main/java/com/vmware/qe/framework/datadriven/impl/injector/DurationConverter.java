@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.injector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts a duration like "1h30m", "45s" or "250ms" to milliseconds. The units are d, h, m, s and
+ * ms; a number without unit is taken as milliseconds.<br>
+ * 
+ * <pre>
+ * &#064;Data(name = "timeout", converter = DurationConverter.class)
+ * long timeoutMillis;
+ * </pre>
+ */
+public class DurationConverter implements DataConverter<Long> {
+    private static final Pattern PART = Pattern.compile("(\\d+)\\s*(ms|d|h|m|s)?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    @Override
+    public Long convert(String value) {
+        String duration = value.trim();
+        Matcher matcher = PART.matcher(duration);
+        long millis = 0;
+        int end = 0;
+        while (end < duration.length() && matcher.find(end) && matcher.start() == end) {
+            millis += toUnit(matcher.group(2)).toMillis(Long.parseLong(matcher.group(1)));
+            end = matcher.end();
+        }
+        if (end == 0 || end < duration.length()) {
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+        return millis;
+    }
+
+    private static TimeUnit toUnit(String unit) {
+        if (unit == null || unit.equalsIgnoreCase("ms")) {
+            return TimeUnit.MILLISECONDS;
+        } else if (unit.equalsIgnoreCase("s")) {
+            return TimeUnit.SECONDS;
+        } else if (unit.equalsIgnoreCase("m")) {
+            return TimeUnit.MINUTES;
+        } else if (unit.equalsIgnoreCase("h")) {
+            return TimeUnit.HOURS;
+        }
+        return TimeUnit.DAYS;
+    }
+}
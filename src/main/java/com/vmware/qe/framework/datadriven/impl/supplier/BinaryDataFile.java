@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.HierarchicalConfiguration.Node;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Precompiled data file, holding the data of the namespaces of an XML or CSV data file so that it
+ * can be loaded without parsing or validating text, see {@link DataFileCompiler}.<br>
+ * The file starts with a table of all strings, each stored once, and a table of the key sets of
+ * the rows, followed by one entry per namespace pointing to its nodes without the &lt;data&gt;
+ * rows and to its row table. Nodes and rows refer to strings and key sets by their index, written
+ * like all counts in as few bytes as the value needs. The row
+ * table holds the test-id and the position of each row, so rows of test-ids which are not selected
+ * are skipped without being read. Rows which only have values directly under them are stored as
+ * {@link TestData} and loaded as such, the others as nodes. The data of a CSV file is stored as a
+ * namespace which is used by any class.<br>
+ * Files on local disk are memory mapped and kept open while they are unchanged.<br>
+ */
+public final class BinaryDataFile {
+    private static final Logger log = LoggerFactory.getLogger(BinaryDataFile.class);
+    /** suffix added to the name of the data file it is compiled from. */
+    public static final String SUFFIX = ".ddb";
+    private static final int MAGIC = 0x44444246; // "DDBF"
+    private static final int VERSION = 1;
+    /** class name of a namespace used by any class. */
+    private static final int ANY_CLASS = -1;
+    private static final int NONE = -1;
+    private static final byte ROW_DATA = 0;
+    private static final byte ROW_NODE = 1;
+    private static final Map<String, BinaryDataFile> files = new ConcurrentHashMap<>();
+    private final ByteBuffer buffer;
+    private final int[] stringOffsets;
+    private final String[] strings;
+    private final TestData.Keys[] keys;
+    private final Map<String, Integer> namespaces = new HashMap<>();
+    private final int anyNamespace;
+    private final int[] treeOffsets;
+    private final int[] rowCounts;
+    private final int[] rowTableOffsets;
+    /** position of the nodes and rows, which are placed relative to it. */
+    private final int body;
+    private final long length;
+    private final long lastModified;
+
+    private BinaryDataFile(ByteBuffer buffer, long length, long lastModified) {
+        this.buffer = buffer;
+        this.length = length;
+        this.lastModified = lastModified;
+        ByteBuffer in = buffer.duplicate();
+        if (in.getInt() != MAGIC) {
+            throw new DDException("Not a compiled data file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new DDException("Compiled data file has version " + version + ", expected "
+                    + VERSION + ", compile it again");
+        }
+        stringOffsets = new int[in.getInt()];
+        strings = new String[stringOffsets.length];
+        for (int i = 0; i < stringOffsets.length; i++) {
+            stringOffsets[i] = in.position();
+            in.position(in.position() + 4 + in.getInt(in.position()));
+        }
+        keys = new TestData.Keys[in.getInt()];
+        for (int i = 0; i < keys.length; i++) {
+            List<String> names = new ArrayList<>();
+            for (int j = in.getInt(); j > 0; j--) {
+                names.add(getString(in.getInt()));
+            }
+            keys[i] = TestData.Keys.of(names);
+        }
+        int namespaceCount = in.getInt();
+        treeOffsets = new int[namespaceCount];
+        rowCounts = new int[namespaceCount];
+        rowTableOffsets = new int[namespaceCount];
+        int any = NONE;
+        int[] classNames = new int[namespaceCount];
+        for (int i = 0; i < namespaceCount; i++) {
+            classNames[i] = in.getInt();
+            treeOffsets[i] = in.getInt();
+            rowCounts[i] = in.getInt();
+            rowTableOffsets[i] = in.getInt();
+        }
+        body = in.position();
+        for (int i = 0; i < namespaceCount; i++) {
+            treeOffsets[i] += body;
+            rowTableOffsets[i] += body;
+            if (classNames[i] == ANY_CLASS) {
+                any = i;
+            } else {
+                namespaces.put(getString(classNames[i]), i);
+            }
+        }
+        anyNamespace = any;
+    }
+
+    /**
+     * Opens the compiled data file. Files on local disk are kept open and opened again only when
+     * they change.<br>
+     *
+     * @param dataFileURL URL of the compiled data file.
+     * @return the compiled data.
+     * @throws IOException if the file can't be read.
+     */
+    public static BinaryDataFile open(URL dataFileURL) throws IOException {
+        File file = DDUtils.toFile(dataFileURL);
+        boolean local = "file".equals(dataFileURL.getProtocol()) && file != null;
+        String key = dataFileURL.toExternalForm();
+        BinaryDataFile dataFile = files.get(key);
+        if (dataFile != null
+                && (!local || dataFile.length == file.length()
+                        && dataFile.lastModified == file.lastModified())) {
+            return dataFile;
+        }
+        try {
+            if (local) {
+                try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                    dataFile = new BinaryDataFile(in.getChannel().map(
+                            FileChannel.MapMode.READ_ONLY, 0, in.length()), file.length(),
+                            file.lastModified());
+                }
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (InputStream in = dataFileURL.openStream()) {
+                    byte[] chunk = new byte[64 * 1024];
+                    for (int n; (n = in.read(chunk)) != -1;) {
+                        bytes.write(chunk, 0, n);
+                    }
+                }
+                dataFile = new BinaryDataFile(ByteBuffer.wrap(bytes.toByteArray()), -1, -1);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new DDException("Compiled data file " + dataFileURL + " is incomplete", e);
+        }
+        log.debug("Opened compiled data file {}", dataFileURL);
+        files.put(key, dataFile);
+        return dataFile;
+    }
+
+    /**
+     * Loads the data of given class.<br>
+     *
+     * @param className name of the test class.
+     * @param selection predicates the rows must be accepted by, can be null.
+     * @return the data of the class, null if the file has none for the class.
+     */
+    public HierarchicalConfiguration getData(String className, List<KeyValuePredicate> selection) {
+        Integer namespace = namespaces.get(className);
+        if (namespace == null) {
+            if (anyNamespace == NONE) {
+                return null;
+            }
+            namespace = anyNamespace;
+        }
+        boolean select = selection != null && !selection.isEmpty();
+        Set<String> testIds = select ? TestIdIndex.getTestIds(selection) : null;
+        ByteBuffer in = buffer.duplicate();
+        in.position(treeOffsets[namespace]);
+        Node root = readNode(in);
+        List<Object> rows = new ArrayList<>(select ? 16 : rowCounts[namespace]);
+        for (int i = 0; i < rowCounts[namespace]; i++) {
+            int entry = rowTableOffsets[namespace] + i * 8;
+            int testId = buffer.getInt(entry);
+            if (testIds != null && testId != NONE && !testIds.contains(getString(testId))) {
+                continue;
+            }
+            in.position(body + buffer.getInt(entry + 4));
+            Object row = in.get() == ROW_DATA ? readTestData(in) : readNode(in);
+            if (!select || isAccepted(row, selection)) {
+                rows.add(row);
+            }
+        }
+        return new XMLNamespaceData(root, rows);
+    }
+
+    /**
+     * Writes the compiled form of given namespace data through a temporary file.<br>
+     *
+     * @param target the compiled data file.
+     * @param dataMap data of each class, the data under a null class is used by any class.
+     * @throws IOException if the file can't be written.
+     */
+    public static void write(File target, Map<String, HierarchicalConfiguration> dataMap)
+            throws IOException {
+        File temp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile()
+                .getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                new Writer().write(out, dataMap);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * @param file a compiled data file.
+     * @return 'true' if the file is a compiled data file of the current version.
+     */
+    static boolean isCurrent(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isAccepted(Object row, List<KeyValuePredicate> selection) {
+        HierarchicalConfiguration config;
+        if (row instanceof TestData) {
+            config = new TestDataConfiguration((TestData) row, TAG_DATA);
+        } else {
+            config = new HierarchicalConfiguration();
+            config.setRoot((Node) row);
+        }
+        for (KeyValuePredicate predicate : selection) {
+            if (!predicate.accept(config)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getString(int index) {
+        if (index == NONE) {
+            return null;
+        }
+        String value = strings[index];
+        if (value == null) {
+            int offset = stringOffsets[index];
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset + 4);
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[index] = value; // racing threads decode the same string.
+        }
+        return value;
+    }
+
+    private Node readNode(ByteBuffer in) {
+        Node node = new Node(readString(in), readString(in));
+        for (int i = readCount(in); i > 0; i--) {
+            node.addAttribute(new Node(readString(in), readString(in)));
+        }
+        for (int i = readCount(in); i > 0; i--) {
+            node.addChild(readNode(in));
+        }
+        return node;
+    }
+
+    private TestData readTestData(ByteBuffer in) {
+        TestData.Keys rowKeys = keys[readCount(in)];
+        TestData.Builder builder = new TestData.Builder(rowKeys);
+        for (int slot = 0; slot < rowKeys.size(); slot++) {
+            for (int i = readCount(in); i > 0; i--) {
+                builder.add(slot, readString(in));
+            }
+        }
+        return builder.build();
+    }
+
+    private String readString(ByteBuffer in) {
+        return getString(readCount(in) - 1);
+    }
+
+    /**
+     * Reads a count written by {@link Writer#writeCount(int)}.<br>
+     */
+    private static int readCount(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Lays out the compiled form, collecting the strings while the namespaces are written.<br>
+     */
+    private static final class Writer {
+        private final Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+        private final Map<List<String>, Integer> keysIndexes = new LinkedHashMap<>();
+        private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        private final DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        private void write(OutputStream target, Map<String, HierarchicalConfiguration> dataMap)
+                throws IOException {
+            List<int[]> entries = new ArrayList<>();
+            for (Map.Entry<String, HierarchicalConfiguration> namespace : dataMap.entrySet()) {
+                entries.add(writeNamespace(namespace.getKey(), namespace.getValue()));
+            }
+            DataOutputStream out = new DataOutputStream(target);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stringIndexes.size());
+            for (String value : stringIndexes.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(keysIndexes.size());
+            for (List<String> names : keysIndexes.keySet()) {
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeInt(stringIndexes.get(name));
+                }
+            }
+            out.writeInt(entries.size());
+            for (int[] entry : entries) {
+                for (int value : entry) {
+                    out.writeInt(value);
+                }
+            }
+            bodyBytes.writeTo(out);
+            out.flush();
+        }
+
+        /**
+         * Writes the nodes, rows and row table of the namespace to the body.<br>
+         *
+         * @return the namespace entry: class name, tree offset, row count and row table offset,
+         *         the offsets relative to the body.
+         */
+        private int[] writeNamespace(String className, HierarchicalConfiguration data)
+                throws IOException {
+            ConfigurationNode tree;
+            List<Object> rows;
+            if (data instanceof XMLNamespaceData
+                    && ((XMLNamespaceData) data).getRows() != null) {
+                tree = ((XMLNamespaceData) data).getNodesWithoutRows();
+                rows = ((XMLNamespaceData) data).getRows();
+            } else if (data instanceof CSVDataConfiguration) {
+                tree = new Node();
+                rows = new ArrayList<>();
+                for (HierarchicalConfiguration row : data.configurationsAt(TAG_DATA)) {
+                    rows.add(toRow(row));
+                }
+            } else {
+                Node root = data.getRoot();
+                tree = new Node(root.getName(), root.getValue());
+                rows = new ArrayList<>();
+                for (ConfigurationNode attribute : root.getAttributes()) {
+                    tree.addAttribute(attribute);
+                }
+                for (ConfigurationNode child : root.getChildren()) {
+                    if (TAG_DATA.equals(child.getName())) {
+                        TestData row = TestData.fromNode(child, new TestData.Keys.Interner());
+                        rows.add(row != null ? row : child);
+                    } else {
+                        tree.addChild(child);
+                    }
+                }
+            }
+            int treeOffset = body.size();
+            writeNode(tree);
+            int[] rowOffsets = new int[rows.size()];
+            int[] testIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                rowOffsets[i] = body.size();
+                Object row = rows.get(i);
+                if (row instanceof TestData) {
+                    testIds[i] = index(((TestData) row).getTestId());
+                    body.writeByte(ROW_DATA);
+                    writeTestData((TestData) row);
+                } else {
+                    ConfigurationNode node = (ConfigurationNode) row;
+                    List<ConfigurationNode> ids = node.getAttributes("test-id");
+                    testIds[i] = ids.isEmpty() ? NONE : index(String.valueOf(ids.get(0)
+                            .getValue()));
+                    body.writeByte(ROW_NODE);
+                    writeNode(node);
+                }
+            }
+            int rowTableOffset = body.size();
+            for (int i = 0; i < rows.size(); i++) {
+                body.writeInt(testIds[i]);
+                body.writeInt(rowOffsets[i]);
+            }
+            return new int[] {className == null ? ANY_CLASS : index(className), treeOffset,
+                    rows.size(), rowTableOffset};
+        }
+
+        private void writeNode(ConfigurationNode node) throws IOException {
+            writeString(node.getName());
+            writeString(node.getValue() == null ? null : String.valueOf(node.getValue()));
+            List<ConfigurationNode> attributes = node.getAttributes();
+            writeCount(attributes.size());
+            for (ConfigurationNode attribute : attributes) {
+                writeString(attribute.getName());
+                writeString(attribute.getValue() == null ? null : String.valueOf(attribute
+                        .getValue()));
+            }
+            List<ConfigurationNode> children = node.getChildren();
+            writeCount(children.size());
+            for (ConfigurationNode child : children) {
+                writeNode(child);
+            }
+        }
+
+        private void writeTestData(TestData data) throws IOException {
+            TestData.Keys rowKeys = data.getKeys();
+            List<String> names = new ArrayList<>(rowKeys.size());
+            for (int slot = 0; slot < rowKeys.size(); slot++) {
+                names.add(rowKeys.get(slot));
+            }
+            Integer keysIndex = keysIndexes.get(names);
+            if (keysIndex == null) {
+                for (String name : names) {
+                    index(name);
+                }
+                keysIndex = keysIndexes.size();
+                keysIndexes.put(names, keysIndex);
+            }
+            writeCount(keysIndex);
+            for (int slot = 0; slot < rowKeys.size(); slot++) {
+                String[] values = data.getValues(slot);
+                writeCount(values.length);
+                for (String value : values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            writeCount(index(value) + 1);
+        }
+
+        /**
+         * Writes a count or index of at least 0, 7 bits per byte, lowest bits first.<br>
+         */
+        private void writeCount(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                body.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            body.writeByte(value);
+        }
+
+        private static Object toRow(HierarchicalConfiguration row) {
+            if (row instanceof TestDataConfiguration
+                    && ((TestDataConfiguration) row).getTestData() != null) {
+                return ((TestDataConfiguration) row).getTestData();
+            }
+            return row.getRoot();
+        }
+
+        private int index(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = stringIndexes.size();
+                stringIndexes.put(value, index);
+            }
+            return index;
+        }
+    }
+}
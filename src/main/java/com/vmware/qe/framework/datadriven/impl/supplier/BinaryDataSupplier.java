@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import java.net.URL;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.SelectiveDataSupplier;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Supplies data from data files compiled by {@link DataFileCompiler}, so that no XML or CSV is
+ * parsed or validated when the tests start.<br>
+ * The compiled file of the XML data file of the class is used if there is one, else that of the
+ * CSV data file, each looked up by class name and then by package name like the other suppliers
+ * do. A compiled file can also be given in 'supplier.dataFile'.<br>
+ */
+public class BinaryDataSupplier implements SelectiveDataSupplier {
+    private static final Logger log = LoggerFactory.getLogger(BinaryDataSupplier.class);
+
+    public HierarchicalConfiguration getData(final String className,
+            HierarchicalConfiguration context) {
+        return getData(className, context, null);
+    }
+
+    /**
+     * Gets the data of the class, leaving out the rows rejected by the selection. Rows of test-ids
+     * which are not selected are not read at all.<br>
+     */
+    @Override
+    public HierarchicalConfiguration getData(final String className,
+            HierarchicalConfiguration context, List<KeyValuePredicate> selection) {
+        HierarchicalConfiguration dataForTestCase = null;
+        try {
+            Class<?> clazz = Class.forName(className);
+            String dataFilePath = null;
+            String dataFileName = context.getString("supplier.dataFile", null);
+            log.debug("Checking the data file in argument...");
+            if (dataFileName == null || dataFileName.equals("")) {
+                log.debug("Data file not given in argument..Using DataFileFinder..");
+                dataFilePath = DDUtils.findDataFile(className, ".xml" + BinaryDataFile.SUFFIX,
+                        context);
+                if (dataFilePath == null) {
+                    dataFilePath = DDUtils.findDataFile(className, ".csv"
+                            + BinaryDataFile.SUFFIX, context);
+                }
+            } else {
+                log.debug("Got data file in argument");
+                dataFilePath = dataFileName;
+            }
+            log.debug("Data file path: " + dataFilePath);
+            if (dataFilePath == null) {
+                return null;// No data found, hence it's a normal test case.
+            }
+            URL dataFileURL = clazz.getResource(dataFilePath);
+            if (dataFileURL == null) {
+                throw new DDException("Compiled data file not found: " + dataFilePath);
+            }
+            dataForTestCase = BinaryDataFile.open(dataFileURL).getData(clazz.getName(),
+                    selection);
+            if ((dataForTestCase == null) || dataForTestCase.isEmpty()) {
+                log.info("Data for '{}' is not available!", className);
+                return null;
+            }
+        } catch (Exception ex) {
+            throw new DDException("Error in loading the data file", ex);
+        }
+        return dataForTestCase;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * RFC 4180 tokenizer working on the raw bytes of a UTF-8 CSV file.<br>
+ * Records are reported as the byte offsets of their fields in to the buffer, nothing is copied or
+ * decoded while tokenizing. Empty lines are skipped and a CR, LF or CRLF ends a record, like
+ * super-csv does. A field is null when it is empty, even if it is quoted, also like super-csv.<br>
+ */
+final class CSVByteTokenizer {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte QUOTE = '"';
+    private static final byte DELIMITER = ',';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int lineNumber = 1;
+    private int recordLineNumber = 0;
+    /** start offset of each field of the current record. */
+    private int[] starts = new int[16];
+    /** end offset (exclusive) of each field of the current record. */
+    private int[] ends = new int[16];
+    /** whether each field of the current record has quotes in it. */
+    private boolean[] quoted = new boolean[16];
+    private int fieldCount = 0;
+
+    CSVByteTokenizer(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+        if (limit >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB
+                && (buffer.get(2) & 0xFF) == 0xBF) {
+            position = 3; // UTF-8 byte order mark.
+        }
+    }
+
+    /**
+     * Creates a tokenizer for the records in given byte range, which must start on a record
+     * boundary.<br>
+     */
+    CSVByteTokenizer(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+    }
+
+    /**
+     * Moves to the next record.<br>
+     *
+     * @return false if there are no more records.
+     */
+    boolean next() {
+        while (position < limit && isLineEnd(buffer.get(position))) {
+            skipLineEnd();
+        }
+        if (position >= limit) {
+            return false;
+        }
+        recordLineNumber = lineNumber;
+        fieldCount = 0;
+        int start = position;
+        boolean inQuotes = false;
+        boolean hasQuotes = false;
+        while (true) {
+            if (position >= limit) {
+                if (inQuotes) {
+                    throw new DDException("Unexpected end of file in quoted field starting on "
+                            + "line " + recordLineNumber);
+                }
+                addField(start, position, hasQuotes);
+                return true;
+            }
+            byte b = buffer.get(position);
+            if (inQuotes) {
+                if (b == QUOTE) {
+                    if (position + 1 < limit && buffer.get(position + 1) == QUOTE) {
+                        position++; // escaped quote.
+                    } else {
+                        inQuotes = false;
+                    }
+                } else if (b == LF || (b == CR && !(position + 1 < limit && buffer.get(
+                        position + 1) == LF))) {
+                    lineNumber++;
+                }
+                position++;
+            } else if (b == QUOTE) {
+                inQuotes = true;
+                hasQuotes = true;
+                position++;
+            } else if (b == DELIMITER) {
+                addField(start, position, hasQuotes);
+                position++;
+                start = position;
+                hasQuotes = false;
+            } else if (isLineEnd(b)) {
+                addField(start, position, hasQuotes);
+                skipLineEnd();
+                return true;
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * @return number of fields in the current record.
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    int getStart(int field) {
+        return starts[field];
+    }
+
+    int getEnd(int field) {
+        return ends[field];
+    }
+
+    boolean isQuoted(int field) {
+        return quoted[field];
+    }
+
+    /**
+     * @return offset at which the next record starts.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return line on which the current record starts.
+     */
+    int getLineNumber() {
+        return recordLineNumber;
+    }
+
+    /**
+     * Decodes the field of the current record.<br>
+     */
+    String decode(int field) {
+        return decode(buffer, starts[field], ends[field], quoted[field]);
+    }
+
+    /**
+     * Decodes a field from it's offsets.<br>
+     *
+     * @param buffer the buffer holding the CSV content.
+     * @param start start offset of the field.
+     * @param end end offset of the field, exclusive.
+     * @param quoted whether the field has quotes which need to be removed.
+     * @return value of the field, null if it is empty.
+     */
+    static String decode(ByteBuffer buffer, int start, int end, boolean quoted) {
+        if (!quoted) {
+            if (start == end) {
+                return null;
+            }
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(end - start);
+        boolean inQuotes = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == QUOTE) {
+                if (inQuotes && i + 1 < end && buffer.get(i + 1) == QUOTE) {
+                    out.write(QUOTE);
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (inQuotes && b == CR) {
+                out.write(LF); // quoted line breaks are read back as LF, like super-csv does.
+                if (i + 1 < end && buffer.get(i + 1) == LF) {
+                    i++;
+                }
+            } else {
+                out.write(b);
+            }
+        }
+        return out.size() == 0 ? null : new String(out.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Counts the quote characters in given byte range. Escaped quotes come in pairs, so whether
+     * an offset is inside a quoted field is given by the parity of the quotes before it.<br>
+     */
+    static int countQuotes(ByteBuffer buffer, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == QUOTE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the first record boundary at or after given offset.<br>
+     *
+     * @param buffer the buffer holding the CSV content.
+     * @param from offset to start looking from.
+     * @param inQuotes whether the offset is inside a quoted field.
+     * @return offset just after the first line end which is not inside a quoted field, or the
+     *         limit of the buffer if there is none.
+     */
+    static int nextRecordStart(ByteBuffer buffer, int from, boolean inQuotes) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes && isLineEnd(b)) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private void addField(int start, int end, boolean hasQuotes) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            quoted = Arrays.copyOf(quoted, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        quoted[fieldCount] = hasQuotes;
+        fieldCount++;
+    }
+
+    private void skipLineEnd() {
+        if (buffer.get(position) == CR && position + 1 < limit && buffer.get(position + 1) == LF) {
+            position++;
+        }
+        position++;
+        lineNumber++;
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == CR || b == LF;
+    }
+}
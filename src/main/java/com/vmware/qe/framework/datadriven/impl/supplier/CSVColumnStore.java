@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.HierarchicalConfiguration.Node;
+import org.apache.commons.configuration.PropertyConverter;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+import org.apache.commons.configuration.tree.DefaultExpressionEngine;
+import org.apache.commons.configuration.tree.NodeAddData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestData.Keys;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Column oriented, read only store of the rows of a CSV data file.<br>
+ * Every column is kept as an array of primitive codes in to a per column dictionary of distinct
+ * values, or as a plain long array when the column holds mostly distinct whole numbers. Header
+ * names are interned. Rows are turned in to {@link TestData} only when they are asked for, all rows
+ * sharing the same keys. A header is a key like the one given to
+ * HierarchicalConfiguration.addProperty, so a dotted header like 'vm.name' nests the values.<br>
+ * A store can also be memory mapped from a local UTF-8 file, in which case the columns hold only
+ * the byte offsets of the cells and a cell is decoded each time it is read. Large files are
+ * tokenized in parallel.<br>
+ * Rows can be selected while reading, see {@link CSVRowSelection}.<br>
+ */
+public final class CSVColumnStore {
+    private static final Logger log = LoggerFactory.getLogger(CSVColumnStore.class);
+    public static final String COLUMN_TEST_ID = "test-id";
+    private static final char LIST_DELIMITER = ',';
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+    /** smallest chunk worth handing to another thread when tokenizing in parallel. */
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    /** headers which are plain dotted keys, the values of which can be looked up by the header. */
+    private static final Pattern PLAIN_HEADER = Pattern
+            .compile("[^.\\[\\]()]+(\\.[^.\\[\\]()]+)*");
+    private static final DefaultExpressionEngine EXPRESSION_ENGINE =
+            new DefaultExpressionEngine();
+    private final String[] header;
+    private final Column[] columns;
+    private final int rowCount;
+    private final int testIdColumn;
+    /** keys of the rows, null if a header can not be given as a key. */
+    private final Keys rowKeys;
+    /** slot in to the row keys of each column. */
+    private final int[] columnSlots;
+
+    private CSVColumnStore(String[] header, Column[] columns, int rowCount) {
+        this.header = header;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.testIdColumn = Arrays.asList(header).indexOf(COLUMN_TEST_ID);
+        List<String> names = new ArrayList<>();
+        int[] slots = new int[header.length];
+        for (int i = 0; i < header.length && slots != null; i++) {
+            String key = i == testIdColumn ? TAG_TESTID_ATTR : columnKey(header[i]);
+            if (key == null) {
+                slots = null;
+            } else {
+                if (!names.contains(key)) {
+                    names.add(key);
+                }
+                slots[i] = names.indexOf(key);
+            }
+        }
+        this.rowKeys = slots == null ? null : Keys.of(names);
+        this.columnSlots = slots;
+    }
+
+    /**
+     * Reads the CSV content row by row in to a new store. The first row is the header, a leading
+     * byte order mark is dropped.<br>
+     *
+     * @param reader reader of the CSV content, not closed by this method.
+     * @return the store.
+     * @throws IOException on any issues when reading.
+     */
+    public static CSVColumnStore read(Reader reader) throws IOException {
+        return read(reader, null);
+    }
+
+    /**
+     * Reads the CSV content row by row in to a new store, leaving out the rows rejected by any of
+     * the given predicates. The first row is the header.<br>
+     *
+     * @param reader reader of the CSV content, not closed by this method.
+     * @param selection predicates the stored rows must be accepted by, can be null.
+     * @return the store.
+     * @throws IOException on any issues when reading.
+     */
+    public static CSVColumnStore read(Reader reader, List<KeyValuePredicate> selection)
+            throws IOException {
+        CsvListReader csvReader = new CsvListReader(reader, CsvPreference.STANDARD_PREFERENCE);
+        String[] header = csvReader.getHeader(true);
+        if (header == null) {
+            return new CSVColumnStore(new String[0], new Column[0], 0);
+        }
+        if (header.length > 0 && header[0] != null && header[0].startsWith(BYTE_ORDER_MARK)) {
+            header[0] = header[0].substring(1); // skipped like the mapped files do.
+        }
+        ColumnBuilder[] builders = new ColumnBuilder[header.length];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = header[i] == null ? null : header[i].intern();
+            builders[i] = new ColumnBuilder();
+        }
+        CSVRowSelection rowSelection = CSVRowSelection.of(header, selection);
+        List<String> row;
+        int rowCount = 0;
+        while ((row = csvReader.read()) != null) {
+            if (row.size() != header.length) {
+                throw new DDException("Number of columns in line " + csvReader.getLineNumber()
+                        + " is " + row.size() + ", expected " + header.length);
+            }
+            if (rowSelection != null && !rowSelection.accept(new ListRow(row))) {
+                continue;
+            }
+            for (int i = 0; i < header.length; i++) {
+                builders[i].add(row.get(i));
+            }
+            rowCount++;
+        }
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columns[i] = builders[i].build(rowCount);
+        }
+        return new CSVColumnStore(header, columns, rowCount);
+    }
+
+    /**
+     * Memory maps the CSV file behind given URL and tokenizes it in to a new store, without
+     * decoding any of the data cells.<br>
+     *
+     * @param dataFileURL URL of the CSV file, expected to be UTF-8.
+     * @return the store, or null if the URL is not a local file which can be mapped.
+     * @throws IOException on any issues when mapping the file.
+     */
+    public static CSVColumnStore map(URL dataFileURL) throws IOException {
+        return map(dataFileURL, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Memory maps the CSV file behind given URL and tokenizes it in to a new store, without
+     * decoding any of the data cells. Files of at least the given size are split in to chunks at
+     * record boundaries and the chunks are tokenized in parallel. Rows keep the order of the
+     * file.<br>
+     *
+     * @param dataFileURL URL of the CSV file, expected to be UTF-8.
+     * @param parallelThreshold size in bytes from which the file is tokenized in parallel.
+     * @return the store, or null if the URL is not a local file which can be mapped.
+     * @throws IOException on any issues when mapping the file.
+     */
+    public static CSVColumnStore map(URL dataFileURL, long parallelThreshold) throws IOException {
+        return map(dataFileURL, parallelThreshold, null);
+    }
+
+    /**
+     * Memory maps the CSV file behind given URL and tokenizes it in to a new store like
+     * {@link #map(URL, long)} does, leaving out the rows rejected by any of the given predicates.
+     * Only the cells of the columns the predicates look at are decoded.<br>
+     *
+     * @param dataFileURL URL of the CSV file, expected to be UTF-8.
+     * @param parallelThreshold size in bytes from which the file is tokenized in parallel.
+     * @param selection predicates the stored rows must be accepted by, can be null.
+     * @return the store, or null if the URL is not a local file which can be mapped.
+     * @throws IOException on any issues when mapping the file.
+     */
+    public static CSVColumnStore map(URL dataFileURL, long parallelThreshold,
+            List<KeyValuePredicate> selection) throws IOException {
+        File file = "file".equals(dataFileURL.getProtocol()) ? DDUtils.toFile(dataFileURL) : null;
+        if (file == null || !file.isFile() || file.length() > Integer.MAX_VALUE) {
+            log.debug("Data file can not be memory mapped: {}", dataFileURL);
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CSVByteTokenizer tokenizer = new CSVByteTokenizer(buffer);
+        if (!tokenizer.next()) {
+            return new CSVColumnStore(new String[0], new Column[0], 0);
+        }
+        String[] header = new String[tokenizer.getFieldCount()];
+        for (int i = 0; i < header.length; i++) {
+            String name = tokenizer.decode(i);
+            header[i] = name == null ? null : name.intern();
+        }
+        CSVRowSelection rowSelection = CSVRowSelection.of(header, selection);
+        MappedColumnBuilder[] builders = null;
+        if (buffer.limit() >= parallelThreshold) {
+            builders = tokenizeInParallel(buffer, tokenizer.getPosition(), header.length,
+                    rowSelection);
+        }
+        if (builders == null) {
+            builders = tokenize(tokenizer, header.length, rowSelection);
+        }
+        int rowCount = builders.length == 0 ? 0 : builders[0].size;
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columns[i] = builders[i].build(buffer, rowCount);
+        }
+        return new CSVColumnStore(header, columns, rowCount);
+    }
+
+    /**
+     * Tokenizes the remaining records of given tokenizer, keeping the records accepted by the
+     * selection if any.<br>
+     */
+    private static MappedColumnBuilder[] tokenize(final CSVByteTokenizer tokenizer,
+            int columnCount, CSVRowSelection rowSelection) {
+        MappedColumnBuilder[] builders = new MappedColumnBuilder[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            builders[i] = new MappedColumnBuilder();
+        }
+        CSVRowSelection.Row row = new CSVRowSelection.Row() {
+            @Override
+            public String get(int column) {
+                return tokenizer.decode(column);
+            }
+        };
+        while (tokenizer.next()) {
+            if (tokenizer.getFieldCount() != columnCount) {
+                throw new DDException("Number of columns in line " + tokenizer.getLineNumber()
+                        + " is " + tokenizer.getFieldCount() + ", expected " + columnCount);
+            }
+            if (rowSelection != null && !rowSelection.accept(row)) {
+                continue;
+            }
+            for (int i = 0; i < columnCount; i++) {
+                builders[i].add(tokenizer.getStart(i), tokenizer.getEnd(i),
+                        tokenizer.isQuoted(i));
+            }
+        }
+        return builders;
+    }
+
+    /**
+     * Tokenizes the records from given offset on the shared fork join pool.<br>
+     * The range is first cut in to equal parts and the quotes of every part are counted in
+     * parallel, which tells whether each cut falls inside a quoted field. Every cut is then
+     * moved to the next record boundary and the chunks in between are tokenized in parallel.<br>
+     *
+     * @return builders holding the rows of all chunks in order, or null if any chunk is malformed
+     *         so that the file is tokenized again sequentially to report the right line.
+     */
+    private static MappedColumnBuilder[] tokenizeInParallel(final ByteBuffer buffer, int start,
+            final int columnCount, final CSVRowSelection rowSelection) {
+        ForkJoinPool pool = PoolHolder.POOL;
+        int length = buffer.limit() - start;
+        int chunkCount = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, length
+                / MIN_CHUNK_SIZE));
+        final int[] cuts = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            cuts[i] = start + (int) ((long) length * i / chunkCount);
+        }
+        List<Callable<Integer>> counters = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            final int chunk = i;
+            counters.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return CSVByteTokenizer.countQuotes(buffer, cuts[chunk], cuts[chunk + 1]);
+                }
+            });
+        }
+        List<Integer> quoteCounts = invokeAll(pool, counters);
+        final int[] bounds = new int[chunkCount + 1];
+        bounds[0] = start;
+        bounds[chunkCount] = buffer.limit();
+        int quotes = 0;
+        for (int i = 1; i < chunkCount; i++) {
+            quotes += quoteCounts.get(i - 1);
+            int bound = CSVByteTokenizer.nextRecordStart(buffer, cuts[i], quotes % 2 == 1);
+            bounds[i] = Math.max(bound, bounds[i - 1]);
+        }
+        List<Callable<MappedColumnBuilder[]>> tokenizers = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            final int chunk = i;
+            tokenizers.add(new Callable<MappedColumnBuilder[]>() {
+                @Override
+                public MappedColumnBuilder[] call() {
+                    return tokenize(new CSVByteTokenizer(buffer, bounds[chunk],
+                            bounds[chunk + 1]), columnCount, rowSelection);
+                }
+            });
+        }
+        List<MappedColumnBuilder[]> chunks;
+        try {
+            chunks = invokeAll(pool, tokenizers);
+        } catch (DDException e) {
+            log.debug("Malformed chunk, tokenizing sequentially: {}", e.getMessage());
+            return null;
+        }
+        log.debug("Tokenized {} bytes in {} chunks", length, chunkCount);
+        MappedColumnBuilder[] builders = chunks.get(0);
+        for (int i = 1; i < chunks.size(); i++) {
+            for (int column = 0; column < columnCount; column++) {
+                builders[column].addAll(chunks.get(i)[column]);
+            }
+        }
+        return builders;
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DDException("Interrupted while parsing data file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof DDException) {
+                    throw (DDException) e.getCause();
+                }
+                throw new DDException("Error in parsing data file", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param header a header of the file.
+     * @return key of the values of the column in the row data, null if the header is an
+     *         expression rather than a plain key.
+     */
+    static String columnKey(String header) {
+        return header != null && PLAIN_HEADER.matcher(header).matches() ? header : null;
+    }
+
+    /**
+     * @return number of data rows, not counting the header.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return copy of the header.
+     */
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * @param row index of the row.
+     * @param column index of the column.
+     * @return value of the cell, null for an empty cell.
+     */
+    public String getValue(int row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rowCount);
+        }
+        return columns[column].get(row);
+    }
+
+    /**
+     * Builds the data node of given row, the same way the rows used to be added to the test data:
+     * the test-id column becomes an attribute and every other non empty cell, split on the list
+     * delimiter, is added under the header as HierarchicalConfiguration.addProperty does.<br>
+     *
+     * @param row index of the row.
+     * @return new node named 'data'.
+     */
+    public Node getRowNode(int row) {
+        Node node = new Node(TAG_DATA);
+        for (int i = 0; i < header.length; i++) {
+            String value = getValue(row, i);
+            if (value == null) {
+                continue;
+            }
+            for (String aValue : PropertyConverter.split(value, LIST_DELIMITER, true)) {
+                if (i == testIdColumn) {
+                    node.addAttribute(new Node(COLUMN_TEST_ID, aValue));
+                } else {
+                    addValue(node, header[i], aValue);
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Adds the value under the given key, creating the nodes on the path the way
+     * HierarchicalConfiguration.addProperty does.<br>
+     */
+    private static void addValue(Node node, String key, String value) {
+        if (key == null || key.isEmpty()
+                || key.indexOf('.') < 0 && key.indexOf('[') < 0 && key.indexOf('(') < 0) {
+            node.addChild(new Node(key, value));
+            return;
+        }
+        NodeAddData addData;
+        try {
+            addData = EXPRESSION_ENGINE.prepareAdd(node, key);
+        } catch (IllegalArgumentException e) {
+            throw new DDException("Invalid header: " + key, e);
+        }
+        ConfigurationNode parent = addData.getParent();
+        for (String name : addData.getPathNodes()) {
+            Node child = new Node(name);
+            parent.addChild(child);
+            parent = child;
+        }
+        Node added = new Node(addData.getNewNodeName(), value);
+        if (addData.isAttribute()) {
+            parent.addAttribute(added);
+        } else {
+            parent.addChild(added);
+        }
+    }
+
+    /**
+     * @param row index of the row.
+     * @return new configuration holding the data of given row, backed by {@link TestData} unless
+     *         a header can not be given as a key.
+     */
+    public HierarchicalConfiguration getRow(int row) {
+        if (rowKeys == null) {
+            HierarchicalConfiguration data = new HierarchicalConfiguration();
+            data.setRoot(getRowNode(row));
+            return data;
+        }
+        TestData.Builder builder = new TestData.Builder(rowKeys);
+        for (int i = 0; i < header.length; i++) {
+            String value = getValue(row, i);
+            if (value != null) {
+                for (String aValue : PropertyConverter.split(value, LIST_DELIMITER, true)) {
+                    builder.add(columnSlots[i], aValue);
+                }
+            }
+        }
+        return new TestDataConfiguration(builder.build(), TAG_DATA);
+    }
+
+    /**
+     * @return list view of the rows, every access to an element builds a new configuration.
+     */
+    public List<HierarchicalConfiguration> getRows() {
+        return new RowList();
+    }
+
+    private final class RowList extends AbstractList<HierarchicalConfiguration> implements
+            RandomAccess {
+        @Override
+        public HierarchicalConfiguration get(int index) {
+            return getRow(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    /**
+     * Cells of a row read as strings.<br>
+     */
+    private static final class ListRow implements CSVRowSelection.Row {
+        private final List<String> cells;
+
+        private ListRow(List<String> cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public String get(int column) {
+            return cells.get(column);
+        }
+    }
+
+    /**
+     * Pool for tokenizing large files, created on first use.<br>
+     */
+    private static final class PoolHolder {
+        private static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private static abstract class Column {
+        abstract String get(int row);
+    }
+
+    /**
+     * Column of codes in to the distinct values of the column. Code 0 is an empty cell.<br>
+     */
+    private static final class DictionaryColumn extends Column {
+        private final String[] values;
+        private final int[] codes;
+
+        private DictionaryColumn(String[] values, int[] codes) {
+            this.values = values;
+            this.codes = codes;
+        }
+
+        @Override
+        String get(int row) {
+            return values[codes[row]];
+        }
+    }
+
+    /**
+     * Column of whole numbers, used when most of the values are distinct.<br>
+     */
+    private static final class LongColumn extends Column {
+        private final long[] values;
+        private final BitSet empty;
+
+        private LongColumn(long[] values, BitSet empty) {
+            this.values = values;
+            this.empty = empty;
+        }
+
+        @Override
+        String get(int row) {
+            return empty.get(row) ? null : Long.toString(values[row]);
+        }
+    }
+
+    /**
+     * Column of byte offsets in to a memory mapped file, decoded on every access.<br>
+     */
+    private static final class MappedColumn extends Column {
+        private final ByteBuffer buffer;
+        private final int[] starts;
+        private final int[] ends;
+        private final BitSet quoted;
+
+        private MappedColumn(ByteBuffer buffer, int[] starts, int[] ends, BitSet quoted) {
+            this.buffer = buffer;
+            this.starts = starts;
+            this.ends = ends;
+            this.quoted = quoted;
+        }
+
+        @Override
+        String get(int row) {
+            return CSVByteTokenizer.decode(buffer, starts[row], ends[row], quoted.get(row));
+        }
+    }
+
+    private static final class MappedColumnBuilder {
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private final BitSet quoted = new BitSet();
+        private int size = 0;
+
+        private void add(int start, int end, boolean isQuoted) {
+            ensureCapacity(size + 1);
+            starts[size] = start;
+            ends[size] = end;
+            if (isQuoted) {
+                quoted.set(size);
+            }
+            size++;
+        }
+
+        private void addAll(MappedColumnBuilder other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.starts, 0, starts, size, other.size);
+            System.arraycopy(other.ends, 0, ends, size, other.size);
+            for (int i = other.quoted.nextSetBit(0); i >= 0; i = other.quoted.nextSetBit(i + 1)) {
+                quoted.set(size + i);
+            }
+            size += other.size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > starts.length) {
+                int newLength = Math.max(capacity, starts.length * 2);
+                starts = Arrays.copyOf(starts, newLength);
+                ends = Arrays.copyOf(ends, newLength);
+            }
+        }
+
+        private Column build(ByteBuffer buffer, int rowCount) {
+            return new MappedColumn(buffer, Arrays.copyOf(starts, rowCount), Arrays.copyOf(ends,
+                    rowCount), quoted);
+        }
+    }
+
+    private static final class ColumnBuilder {
+        private final Map<String, Integer> codeMap = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] codes = new int[64];
+        private int size = 0;
+        private boolean numeric = true;
+
+        private ColumnBuilder() {
+            values.add(null); // code 0 is an empty cell.
+        }
+
+        private void add(String value) {
+            Integer code = 0;
+            if (value != null) {
+                code = codeMap.get(value);
+                if (code == null) {
+                    code = values.size();
+                    codeMap.put(value, code);
+                    values.add(value);
+                    numeric = numeric && isLong(value);
+                }
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = code;
+        }
+
+        private Column build(int rowCount) {
+            if (numeric && values.size() > 1 && values.size() * 2 > rowCount) {
+                long[] longs = new long[rowCount];
+                BitSet empty = new BitSet(rowCount);
+                for (int i = 0; i < rowCount; i++) {
+                    if (codes[i] == 0) {
+                        empty.set(i);
+                    } else {
+                        longs[i] = Long.parseLong(values.get(codes[i]));
+                    }
+                }
+                return new LongColumn(longs, empty);
+            }
+            return new DictionaryColumn(values.toArray(new String[values.size()]),
+                    Arrays.copyOf(codes, rowCount));
+        }
+
+        /**
+         * @return true if the value reads back the same after going through a long.
+         */
+        private static boolean isLong(String value) {
+            try {
+                return Long.toString(Long.parseLong(value)).equals(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
+
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+
+/**
+ * Test data of a CSV data file backed by a {@link CSVColumnStore}.<br>
+ * {@link #configurationsAt(String)} for 'data' hands out the rows one at a time without building
+ * the whole node tree. Any other access builds the tree of all rows once, after which this
+ * behaves like a plain HierarchicalConfiguration.<br>
+ */
+public class CSVDataConfiguration extends HierarchicalConfiguration {
+    private static final long serialVersionUID = 1L;
+    private final transient CSVColumnStore store;
+    private volatile boolean materialized = false;
+
+    public CSVDataConfiguration(CSVColumnStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return the store backing this data.
+     */
+    public CSVColumnStore getStore() {
+        return store;
+    }
+
+    @Override
+    public List<HierarchicalConfiguration> configurationsAt(String key) {
+        if (!materialized && TAG_DATA.equals(key)) {
+            return store.getRows();
+        }
+        return super.configurationsAt(key);
+    }
+
+    @Override
+    public Node getRoot() {
+        materialize();
+        return super.getRoot();
+    }
+
+    @Override
+    public ConfigurationNode getRootNode() {
+        materialize();
+        return super.getRootNode();
+    }
+
+    private void materialize() {
+        if (materialized || store == null) {
+            return; // store is null while the super class is being constructed.
+        }
+        synchronized (this) {
+            if (!materialized) {
+                Node root = super.getRoot();
+                for (int i = 0; i < store.getRowCount(); i++) {
+                    root.addChild(store.getRowNode(i));
+                }
+                materialized = true;
+            }
+        }
+    }
+}
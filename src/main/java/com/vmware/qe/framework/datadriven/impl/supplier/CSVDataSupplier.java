@@ -15,26 +15,50 @@
  */
 package com.vmware.qe.framework.datadriven.impl.supplier;
 
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_MMAP;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_PARALLEL;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_PARALLEL_THRESHOLD;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX_DIR;
+
+import java.io.File;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.supercsv.io.CsvMapReader;
-import org.supercsv.prefs.CsvPreference;
 
+import com.vmware.qe.framework.datadriven.core.DDConstants;
 import com.vmware.qe.framework.datadriven.core.DDException;
-import com.vmware.qe.framework.datadriven.core.DataSupplier;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.SelectiveDataSupplier;
 import com.vmware.qe.framework.datadriven.utils.DDUtils;
 
-public class CSVDataSupplier implements DataSupplier {
+public class CSVDataSupplier implements SelectiveDataSupplier {
     private static final Logger log = LoggerFactory.getLogger(CSVDataSupplier.class);
+    /** files smaller than this are tokenized sequentially even in parallel mode. */
+    private static final long DEFAULT_PARALLEL_THRESHOLD = 16 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     public HierarchicalConfiguration getData(final String className,
             HierarchicalConfiguration context) {
+        return getData(className, context, null);
+    }
+
+    /**
+     * Gets the data of the class, leaving out the rows rejected by the selection while the file
+     * is read.<br>
+     * With {@value DDConstants#TAG_SUPPLIER_TESTID_INDEX} set and the selection having test-ids,
+     * only the rows of those test-ids are read from the file, see {@link TestIdIndex}.<br>
+     */
+    @Override
+    public HierarchicalConfiguration getData(final String className,
+            HierarchicalConfiguration context, List<KeyValuePredicate> selection) {
         HierarchicalConfiguration testData = null;
         try {
             Class<?> clazz = Class.forName(className);
@@ -54,31 +78,40 @@ public class CSVDataSupplier implements DataSupplier {
                 return null;// No data found, hence it's a normal test case.
             }
             dataFileURL = clazz.getResource(dataFilePath);
-            CsvMapReader reader = new CsvMapReader(new InputStreamReader(dataFileURL.openStream()),
-                    CsvPreference.STANDARD_PREFERENCE);
-            String list[] = reader.getHeader(true);
-            Map<String, String> map = null;
-            testData = new HierarchicalConfiguration();
-            int i = 0;
-            while ((map = reader.read(list)) != null) {
-                String testId = null;
-                HierarchicalConfiguration newData = new HierarchicalConfiguration();
-                Set<Map.Entry<String, String>> entrySet = map.entrySet();
-                for (Map.Entry<String, String> entry : entrySet) {
-                    if (entry.getKey().equals("test-id")) {
-                        newData.addProperty("[@test-id]", entry.getValue());
-                        testId = entry.getValue();
-                        continue;
-                    }
-                    newData.addProperty(entry.getKey(), entry.getValue());
+            CSVColumnStore store = null;
+            Set<String> testIds = TestIdIndex.getTestIds(selection);
+            TestIdIndex testIdIndex = null;
+            if (testIds != null
+                    && DDUtils.getConfigBoolean(context, TAG_SUPPLIER_TESTID_INDEX, false)) {
+                String indexDir = DDUtils.getConfigString(context, TAG_SUPPLIER_TESTID_INDEX_DIR,
+                        null);
+                testIdIndex = TestIdIndex.get(dataFileURL, TestIdIndex.Format.CSV,
+                        indexDir == null ? null : new File(indexDir));
+            }
+            if (testIdIndex != null) {
+                log.debug("Loading the rows of test-ids {}", testIds);
+                Reader reader = new InputStreamReader(testIdIndex.open(testIds), UTF_8);
+                try {
+                    store = CSVColumnStore.read(reader, selection);
+                } finally {
+                    reader.close();
                 }
-                testData.addNodes("data(" + i + ")", newData.getRootNode().getChildren());
-                if (testId != null) {
-                    testData.addProperty("data(" + i + ")[@test-id]", testId);
+            } else if (DDUtils.getConfigBoolean(context, TAG_SUPPLIER_CSV_PARALLEL, false)) {
+                long threshold = DDUtils.getConfigLong(context,
+                        TAG_SUPPLIER_CSV_PARALLEL_THRESHOLD, DEFAULT_PARALLEL_THRESHOLD);
+                store = CSVColumnStore.map(dataFileURL, threshold, selection);
+            } else if (DDUtils.getConfigBoolean(context, TAG_SUPPLIER_CSV_MMAP, false)) {
+                store = CSVColumnStore.map(dataFileURL, Long.MAX_VALUE, selection);
+            }
+            if (store == null) {
+                Reader reader = new InputStreamReader(dataFileURL.openStream(), UTF_8);
+                try {
+                    store = CSVColumnStore.read(reader, selection);
+                } finally {
+                    reader.close();
                 }
-                i++;
             }
-            reader.close();
+            testData = new CSVDataConfiguration(store);
         } catch (Exception ex) {
             throw new DDException("Error in loading data file", ex);
         }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.PropertyConverter;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Rows of a CSV data file selected by {@link KeyValuePredicate}s, checked on the cells of a row
+ * while the file is read so that rejected rows are never stored.<br>
+ * The first value of a key is worked out the same way the row data gets it: the first non empty
+ * cell of the columns of the key, split on the list delimiter. A predicate is only checked if each
+ * of it's keys is either the key of a column or a plain key no column has, and rows whose cell
+ * needs interpolation are always kept.<br>
+ */
+final class CSVRowSelection {
+    private static final char LIST_DELIMITER = ',';
+    /** keys which name a child or an attribute of the row, so no column means no value. */
+    private static final Pattern PLAIN_KEY = Pattern.compile("[\\w\\-]+|\\[@[\\w\\-]+\\]");
+    private final Condition[] conditions;
+
+    private CSVRowSelection(List<Condition> conditions) {
+        this.conditions = conditions.toArray(new Condition[conditions.size()]);
+    }
+
+    /**
+     * @param header the header of the file.
+     * @param selection the predicates.
+     * @return the selection, null if none of the predicates can be checked on the cells.
+     */
+    static CSVRowSelection of(String[] header, List<KeyValuePredicate> selection) {
+        if (selection == null || selection.isEmpty()) {
+            return null;
+        }
+        int testIdColumn = -1;
+        for (int i = 0; i < header.length; i++) {
+            if (CSVColumnStore.COLUMN_TEST_ID.equals(header[i])) {
+                testIdColumn = i;
+                break;
+            }
+        }
+        String[] columnKeys = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columnKeys[i] = i == testIdColumn ? TAG_TESTID_ATTR
+                    : CSVColumnStore.columnKey(header[i]);
+            if (columnKeys[i] == null) {
+                return null; // rows are built as nodes, keys are not worked out.
+            }
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (KeyValuePredicate predicate : selection) {
+            Condition condition = Condition.of(columnKeys, predicate);
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+        return conditions.isEmpty() ? null : new CSVRowSelection(conditions);
+    }
+
+    /**
+     * @param row cells of the row.
+     * @return true if the row is accepted by all of the predicates.
+     */
+    boolean accept(Row row) {
+        for (Condition condition : conditions) {
+            if (!condition.accept(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cells of a row being read, null for an empty cell.<br>
+     */
+    interface Row {
+        String get(int column);
+    }
+
+    /**
+     * A predicate over the columns of it's keys.<br>
+     */
+    private static final class Condition {
+        /** columns of each key, in order. */
+        private final int[][] columns;
+        private final List<Set<String>> acceptedValues;
+
+        private Condition(int[][] columns, List<Set<String>> acceptedValues) {
+            this.columns = columns;
+            this.acceptedValues = acceptedValues;
+        }
+
+        private static Condition of(String[] columnKeys, KeyValuePredicate predicate) {
+            Map<String, Set<String>> accepted = predicate.getAcceptedValues();
+            int[][] columns = new int[accepted.size()][];
+            List<Set<String>> acceptedValues = new ArrayList<>();
+            int key = 0;
+            for (Map.Entry<String, Set<String>> entry : accepted.entrySet()) {
+                List<Integer> keyColumns = new ArrayList<>();
+                for (int i = 0; i < columnKeys.length; i++) {
+                    if (columnKeys[i].equals(entry.getKey())) {
+                        keyColumns.add(i);
+                    }
+                }
+                if (keyColumns.isEmpty() && !PLAIN_KEY.matcher(entry.getKey()).matches()) {
+                    return null; // an expression, which may select something else.
+                }
+                columns[key] = new int[keyColumns.size()];
+                for (int i = 0; i < columns[key].length; i++) {
+                    columns[key][i] = keyColumns.get(i);
+                }
+                acceptedValues.add(entry.getValue());
+                key++;
+            }
+            return new Condition(columns, acceptedValues);
+        }
+
+        private boolean accept(Row row) {
+            for (int key = 0; key < columns.length; key++) {
+                for (int column : columns[key]) {
+                    String cell = row.get(column);
+                    if (cell == null) {
+                        continue;
+                    }
+                    if (cell.contains("${")) {
+                        return true;
+                    }
+                    String value = cell.indexOf(LIST_DELIMITER) < 0 && cell.indexOf('\\') < 0 ? cell
+                            .trim() : PropertyConverter.split(cell, LIST_DELIMITER, true).get(0);
+                    if (acceptedValues.get(key).contains(value)) {
+                        return true;
+                    }
+                    break; // only the first value of the key is checked.
+                }
+            }
+            return false;
+        }
+    }
+}
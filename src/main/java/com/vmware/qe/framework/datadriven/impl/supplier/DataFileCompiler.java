@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Compiles XML and CSV data files in to {@link BinaryDataFile}s, to be loaded by
+ * {@link BinaryDataSupplier}.<br>
+ * Each file is compiled in to a file of the same name with {@value BinaryDataFile#SUFFIX} added,
+ * next to it. XML files are validated against {@value XMLDataParser#XSD_FILE_NAME} while being
+ * compiled, XML files which are not test data are left alone. Files whose compiled file is newer
+ * and of the current format are not compiled again.<br>
+ * Run from the build with the 'compile-test-data' profile, which compiles the data files of the
+ * test classes after they have been copied, or as:
+ *
+ * <pre>
+ * java com.vmware.qe.framework.datadriven.impl.supplier.DataFileCompiler &lt;dir or file&gt;...
+ * </pre>
+ */
+public final class DataFileCompiler {
+    private static final Logger log = LoggerFactory.getLogger(DataFileCompiler.class);
+    private static final String ROOT_ELEMENT = "test-data";
+
+    private DataFileCompiler() {
+    }
+
+    /**
+     * @param args data files or directories to search for data files.
+     * @throws DDException if a data file is not valid.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            throw new DDException("Usage: DataFileCompiler <dir or file>...");
+        }
+        int compiled = 0;
+        for (String arg : args) {
+            compiled += compileAll(new File(arg));
+        }
+        log.info("Compiled {} data files", compiled);
+    }
+
+    /**
+     * Compiles the data files in given directory and its sub directories.<br>
+     *
+     * @param file a data file or a directory.
+     * @return number of files compiled.
+     */
+    public static int compileAll(File file) {
+        if (file.isDirectory()) {
+            int compiled = 0;
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    compiled += compileAll(child);
+                }
+            }
+            return compiled;
+        }
+        File target = new File(file.getPath() + BinaryDataFile.SUFFIX);
+        if (!file.isFile() || target.lastModified() > file.lastModified()
+                && BinaryDataFile.isCurrent(target)) {
+            return 0;
+        }
+        return compile(file, target) ? 1 : 0;
+    }
+
+    /**
+     * Compiles the XML or CSV data file.<br>
+     *
+     * @param file the data file.
+     * @param target the compiled data file.
+     * @return 'true' if the file was compiled, 'false' if it is not a data file.
+     * @throws DDException if the data file is not valid.
+     */
+    public static boolean compile(File file, File target) {
+        String name = file.getName().toLowerCase();
+        try {
+            Map<String, HierarchicalConfiguration> dataMap;
+            if (name.endsWith(".xml")) {
+                if (!isTestData(file)) {
+                    return false;
+                }
+                try (InputStream in = new FileInputStream(file)) {
+                    dataMap = XMLDataParser.parse(in, file.toURI().toString(), true);
+                }
+            } else if (name.endsWith(".csv")) {
+                CSVColumnStore store;
+                try (Reader reader = new InputStreamReader(new FileInputStream(file),
+                        StandardCharsets.UTF_8)) {
+                    store = CSVColumnStore.read(reader);
+                }
+                dataMap = Collections.<String, HierarchicalConfiguration> singletonMap(null,
+                        new CSVDataConfiguration(store));
+            } else {
+                return false;
+            }
+            BinaryDataFile.write(target, new HashMap<>(dataMap));
+            log.debug("Compiled {} in to {}", file, target);
+            return true;
+        } catch (Exception e) {
+            throw new DDException("Could not compile data file " + file, e);
+        }
+    }
+
+    private static boolean isTestData(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                reader.nextTag();
+                return ROOT_ELEMENT.equals(reader.getLocalName());
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return false;
+        }
+    }
+}
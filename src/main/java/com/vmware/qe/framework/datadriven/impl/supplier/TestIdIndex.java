@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Index of the data rows of a data file on local disk by their test-id, persisted in a sidecar
+ * file so that later runs can read the rows of a few test-ids without going through the whole
+ * file.<br>
+ * The index holds the byte range and test-id of each row together with the size, modification
+ * time and checksum of the data file. The sidecar is written next to the data file as
+ * '&lt;file&gt;.tidx', or in to a given directory, and is built again whenever the data file no
+ * longer matches it. {@link #open(Set)} hands out the content of the file without the rows of
+ * other test-ids, which is then parsed as usual. Rows whose test-id can't be told from the raw
+ * bytes (entities, variables, lists) are always kept, so filters must still be applied to the
+ * parsed rows.<br>
+ */
+public final class TestIdIndex {
+    private static final Logger log = LoggerFactory.getLogger(TestIdIndex.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x54494458; // "TIDX"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".tidx";
+    /** sidecar path vs the index last read or built from it. */
+    private static final ConcurrentMap<String, TestIdIndex> indexes = new ConcurrentHashMap<>();
+    private final URL dataFileURL;
+    private final File dataFile;
+    private final long length;
+    private final long lastModified;
+    private final String checksum;
+    private final Rows rows;
+
+    private TestIdIndex(URL dataFileURL, File dataFile, long length, long lastModified,
+            String checksum, Rows rows) {
+        this.dataFileURL = dataFileURL;
+        this.dataFile = dataFile;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+        this.rows = rows;
+    }
+
+    /**
+     * Format of a data file, telling how it's rows are found.<br>
+     */
+    public enum Format {
+        XML, CSV
+    }
+
+    /**
+     * Gets the index of given data file, reading it from the sidecar if that matches the file and
+     * building and writing it otherwise. The checksum of the file is only worked out when it's
+     * modification time differs from the one in the sidecar, so that a file which was only
+     * touched keeps it's index. The index is kept in memory until the size or modification time
+     * of the file changes.<br>
+     *
+     * @param dataFileURL URL of the data file.
+     * @param format format of the data file.
+     * @param indexDir directory holding the sidecar files, null for the directory of the file.
+     * @return the index or null if the file is not on local disk or can't be indexed.
+     * @throws IOException if the file can't be read.
+     */
+    public static TestIdIndex get(URL dataFileURL, Format format, File indexDir)
+            throws IOException {
+        File file = "file".equals(dataFileURL.getProtocol()) ? DDUtils.toFile(dataFileURL) : null;
+        if (file == null || !file.isFile() || file.length() > Integer.MAX_VALUE) {
+            log.debug("Data file can not be indexed by test-id: {}", dataFileURL);
+            return null;
+        }
+        File sidecar = getSidecar(file, format, indexDir);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        TestIdIndex index = indexes.get(sidecar.getPath());
+        if (index != null && index.length == length && index.lastModified == lastModified) {
+            return index;
+        }
+        index = read(sidecar, dataFileURL, file, format, length, lastModified);
+        if (index == null) {
+            log.info("Building test-id index of {}", dataFileURL);
+            String checksum = DDUtils.checksum(dataFileURL);
+            Rows rows = scan(dataFileURL, file, format);
+            if (rows == null) {
+                return null;
+            }
+            index = new TestIdIndex(dataFileURL, file, length, lastModified, checksum, rows);
+            index.write(sidecar, format);
+        }
+        indexes.put(sidecar.getPath(), index);
+        return index;
+    }
+
+    /**
+     * Gets the test-ids the selection keeps, from the predicate of
+     * {@link com.vmware.qe.framework.datadriven.impl.filter.DataFilterBasedOnTestId}.<br>
+     *
+     * @param selection the predicates rows must be accepted by.
+     * @return the test-ids, null if the selection does not select by test-id.
+     */
+    public static Set<String> getTestIds(List<KeyValuePredicate> selection) {
+        if (selection == null) {
+            return null;
+        }
+        for (KeyValuePredicate predicate : selection) {
+            Map<String, Set<String>> acceptedValues = predicate.getAcceptedValues();
+            if (acceptedValues.size() == 1 && acceptedValues.containsKey(TAG_TESTID_ATTR)) {
+                return acceptedValues.get(TAG_TESTID_ATTR);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens the content of the data file, leaving out the rows of test-ids other than the given
+     * ones. All content outside of the rows is kept.<br>
+     *
+     * @param testIds the test-ids of the rows to keep.
+     * @return stream of the content.
+     * @throws IOException if the file can't be read.
+     */
+    public InputStream open(Set<String> testIds) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Slices slices = new Slices(buffer);
+        int selected = 0;
+        int gapStart = 0;
+        for (int row = 0; row < rows.size; row++) {
+            slices.add(gapStart, rows.starts[row]);
+            String testId = rows.testIds[row];
+            if (testId == null || testIds.contains(testId)) {
+                slices.add(rows.starts[row], rows.ends[row]);
+                selected++;
+            }
+            gapStart = rows.ends[row];
+        }
+        slices.add(gapStart, buffer.limit());
+        log.debug("Reading {} of {} rows of {}", selected, rows.size, dataFileURL);
+        return slices.open();
+    }
+
+    /**
+     * @return URL of the indexed data file.
+     */
+    public URL getDataFileURL() {
+        return dataFileURL;
+    }
+
+    /**
+     * @return number of rows in the data file.
+     */
+    public int size() {
+        return rows.size;
+    }
+
+    /**
+     * @return the test-id read from a row, "" if there is none, or null if it can't be compared
+     *         as it is.
+     */
+    static String plainTestId(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&' || c == ',' || c == '\\' || c == '$' || Character.isWhitespace(c)
+                    && (i == 0 || i == value.length() - 1 || c != ' ')) {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    private static File getSidecar(File file, Format format, File indexDir) {
+        if (indexDir == null) {
+            return new File(file.getPath() + SUFFIX);
+        }
+        String key = file.getAbsolutePath() + "#" + format;
+        return new File(indexDir, file.getName() + "-" + Integer.toHexString(key.hashCode())
+                + SUFFIX);
+    }
+
+    private static Rows scan(URL dataFileURL, File file, Format format) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        switch (format) {
+        case XML:
+            return XMLNamespaceIndex.scanRows(dataFileURL, buffer);
+        case CSV:
+            return scanCSV(buffer);
+        default:
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    /**
+     * Finds the records after the header, the test-id being read from the 'test-id' column.<br>
+     */
+    private static Rows scanCSV(ByteBuffer buffer) {
+        CSVByteTokenizer tokenizer = new CSVByteTokenizer(buffer);
+        Rows rows = new Rows(1024);
+        if (!tokenizer.next()) {
+            return rows;
+        }
+        int testIdColumn = -1;
+        for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+            if (CSVColumnStore.COLUMN_TEST_ID.equals(tokenizer.decode(i))) {
+                testIdColumn = i;
+                break;
+            }
+        }
+        int end = tokenizer.getPosition();
+        while (tokenizer.next()) {
+            String testId = "";
+            if (testIdColumn >= 0 && testIdColumn < tokenizer.getFieldCount()) {
+                testId = plainTestId(tokenizer.decode(testIdColumn));
+            }
+            // the row takes the line breaks before it, so that rows follow each other.
+            rows.add(end, tokenizer.getPosition(), testId);
+            end = tokenizer.getPosition();
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the index from the sidecar in one go, as this is done on each run.<br>
+     *
+     * @return the index, or null if there is no sidecar or it does not match the data file.
+     */
+    private static TestIdIndex read(File sidecar, URL dataFileURL, File file, Format format,
+            long length, long lastModified) throws IOException {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(sidecar.toPath()));
+        String checksum;
+        boolean touched;
+        Rows rows;
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION
+                    || !format.name().equals(readString(in)) || in.getLong() != length) {
+                log.info("Data file changed since the test-id index was built: {}", dataFileURL);
+                return null;
+            }
+            touched = in.getLong() != lastModified;
+            checksum = readString(in);
+            if (touched && !DDUtils.checksum(dataFileURL).equals(checksum)) {
+                log.info("Data file changed since the test-id index was built: {}", dataFileURL);
+                return null;
+            }
+            int size = in.getInt();
+            rows = new Rows(size);
+            for (int i = 0; i < size; i++) {
+                int start = in.getInt();
+                rows.add(start, in.getInt(), readString(in));
+            }
+        } catch (BufferUnderflowException e) {
+            log.info("Test-id index {} is incomplete, building it again", sidecar);
+            return null;
+        }
+        log.debug("Read test-id index of {} from {}", dataFileURL, sidecar);
+        TestIdIndex index = new TestIdIndex(dataFileURL, file, length, lastModified, checksum,
+                rows);
+        if (touched) {
+            index.write(sidecar, format); // so that the next run need not check the content.
+        }
+        return index;
+    }
+
+    /**
+     * Writes the sidecar through a temporary file, so that other processes never read a partly
+     * written index. Failures are only logged, as the index still serves this process.<br>
+     */
+    private void write(File sidecar, Format format) {
+        File temp = null;
+        try {
+            File dir = sidecar.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            temp = File.createTempFile(sidecar.getName(), ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, format.name());
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                writeString(out, checksum);
+                out.writeInt(rows.size);
+                for (int i = 0; i < rows.size; i++) {
+                    out.writeInt(rows.starts[i]);
+                    out.writeInt(rows.ends[i]);
+                    writeString(out, rows.testIds[i]);
+                }
+            }
+            Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            log.debug("Wrote test-id index of {} to {}", dataFileURL, sidecar);
+        } catch (IOException e) {
+            log.warn("Could not write test-id index {}", sidecar, e);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the string as the length of it's UTF-8 bytes followed by the bytes, -1 for null.<br>
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int size = in.getInt();
+        if (size < 0) {
+            return null;
+        }
+        if (size > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.position(), size, UTF_8);
+        in.position(in.position() + size);
+        return value;
+    }
+
+    /**
+     * Byte ranges of a buffer read one after the other, joining ranges which follow each
+     * other.<br>
+     */
+    private static final class Slices {
+        private final ByteBuffer buffer;
+        private final List<InputStream> streams = new ArrayList<>();
+        private int start = 0;
+        private int end = 0;
+
+        private Slices(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void add(int rangeStart, int rangeEnd) {
+            if (rangeStart == rangeEnd) {
+                return;
+            }
+            if (rangeStart != end) {
+                flush();
+                start = rangeStart;
+            }
+            end = rangeEnd;
+        }
+
+        private InputStream open() {
+            flush();
+            return new SequenceInputStream(Collections.enumeration(streams));
+        }
+
+        private void flush() {
+            if (start < end) {
+                ByteBuffer slice = buffer.duplicate();
+                slice.limit(end);
+                slice.position(start);
+                streams.add(new XMLNamespaceIndex.BufferInputStream(slice));
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Byte ranges and test-ids of the rows of a file, in file order. A test-id is "" for a row
+     * without one and null for a row which must always be kept.<br>
+     */
+    static final class Rows {
+        private int[] starts;
+        private int[] ends;
+        private String[] testIds;
+        private int size;
+
+        Rows(int capacity) {
+            starts = new int[Math.max(capacity, 16)];
+            ends = new int[starts.length];
+            testIds = new String[starts.length];
+        }
+
+        void add(int start, int end, String testId) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                testIds = Arrays.copyOf(testIds, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            testIds[size] = testId;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * JVM wide cache of parsed XML data files keyed by the URL of the data file and the settings of
+ * the context which change how it is parsed.<br>
+ * A file is parsed and segregated by {@link XMLDataParser} only once for the same settings, no
+ * matter how many test classes share it. When the file backing the URL is on local disk, the entry is reloaded as soon
+ * as the size or modification time of the file changes.<br>
+ */
+public final class XMLDataCache {
+    private static final Logger log = LoggerFactory.getLogger(XMLDataCache.class);
+    private static final XMLDataCache instance = new XMLDataCache();
+    /** data file URL and parse settings vs the parsed data of that file. */
+    private final ConcurrentMap<String, Entry<Map<String, HierarchicalConfiguration>>> dataMaps;
+    /** data file URL vs the namespace index of that file. */
+    private final ConcurrentMap<String, Entry<XMLNamespaceIndex>> indexes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private XMLDataCache() {
+        dataMaps = new ConcurrentHashMap<>();
+        indexes = new ConcurrentHashMap<>();
+    }
+
+    public static XMLDataCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the segregated data of given file, parsing the file only if it was not parsed before or
+     * if it has changed since.<br>
+     * Concurrent callers asking for the same file wait for a single parse.<br>
+     *
+     * @param dataFileURL URL of the data file.
+     * @param clazz the test class.
+     * @param context context of the caller, callers whose contexts parse the file differently
+     *        get separate entries.
+     * @return Map of namespace/test vs the testData.
+     * @throws Exception on any issues when parsing the file.
+     */
+    public Map<String, HierarchicalConfiguration> get(final URL dataFileURL, final Class<?> clazz,
+            final HierarchicalConfiguration context) throws Exception {
+        Callable<Map<String, HierarchicalConfiguration>> loader =
+                new Callable<Map<String, HierarchicalConfiguration>>() {
+                    @Override
+                    public Map<String, HierarchicalConfiguration> call() throws Exception {
+                        return XMLDataParser.load(dataFileURL, clazz, context);
+                    }
+                };
+        String key = dataFileURL.toExternalForm() + "#" + XMLDataParser.getLoadSettings(context);
+        return get(dataMaps, key, dataFileURL, loader);
+    }
+
+    /**
+     * Gets the namespace index of given file, building it only if it was not built before or if
+     * the file has changed since.<br>
+     *
+     * @param dataFileURL URL of the data file.
+     * @return the index, or null if the file can't be indexed.
+     * @throws Exception on any issues when indexing the file.
+     * @see XMLNamespaceIndex#build(URL)
+     */
+    public XMLNamespaceIndex getIndex(final URL dataFileURL) throws Exception {
+        Callable<XMLNamespaceIndex> loader = new Callable<XMLNamespaceIndex>() {
+            @Override
+            public XMLNamespaceIndex call() throws Exception {
+                return XMLNamespaceIndex.build(dataFileURL);
+            }
+        };
+        return get(indexes, dataFileURL.toExternalForm(), dataFileURL, loader);
+    }
+
+    private <T> T get(ConcurrentMap<String, Entry<T>> entries, String key, URL dataFileURL,
+            Callable<T> loader) throws Exception {
+        final Stamp stamp = Stamp.of(dataFileURL);
+        while (true) {
+            Entry<T> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.stamp.equals(stamp)) {
+                    hits.incrementAndGet();
+                    log.debug("Cache hit for {}", key);
+                    return entry.get();
+                }
+                log.info("Data file changed since last load, reloading: {}", key);
+                entries.remove(key, entry);
+                continue;
+            }
+            Entry<T> newEntry = new Entry<>(stamp, loader);
+            if (entries.putIfAbsent(key, newEntry) == null) {
+                misses.incrementAndGet();
+                log.info("File was not loaded before, loading now: {}", key);
+                newEntry.task.run();
+                try {
+                    return newEntry.get();
+                } catch (Exception e) {
+                    entries.remove(key, newEntry);// let the next caller retry.
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of lookups served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups which required the file to be parsed.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of files currently cached, counting each index separately.
+     */
+    public int size() {
+        return dataMaps.size() + indexes.size();
+    }
+
+    /**
+     * Drops all cached files and resets the counters.<br>
+     */
+    public void clear() {
+        dataMaps.clear();
+        indexes.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "XMLDataCache[files=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+                + "]";
+    }
+
+    private static final class Entry<T> {
+        private final Stamp stamp;
+        private final FutureTask<T> task;
+
+        private Entry(Stamp stamp, Callable<T> loader) {
+            this.stamp = stamp;
+            this.task = new FutureTask<>(loader);
+        }
+
+        private T get() throws Exception {
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Size and modification time of the file backing a data file URL.<br>
+     * URLs which are not backed by a local file get an unknown stamp and are never reloaded.<br>
+     */
+    static final class Stamp {
+        private final long length;
+        private final long lastModified;
+
+        private Stamp(long length, long lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        static Stamp of(URL url) {
+            File file = DDUtils.toFile(url);
+            return file == null ? new Stamp(-1, -1) : new Stamp(file.length(),
+                    file.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) obj;
+            return length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (length ^ lastModified);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_CLASS_NAME;
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_DATA;
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_NAMESPACE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.HierarchicalConfiguration.Node;
+import org.apache.commons.configuration.PropertyConverter;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+
+/**
+ * SAX handler which builds the namespace data of a data file directly from parser events.<br>
+ * Every &lt;namespace&gt; is turned in to a HierarchicalConfiguration as soon as it's end tag is
+ * seen and is registered against each of it's &lt;class-name&gt;s, so the document as a whole is
+ * never held in memory. The node trees are built the same way XMLConfiguration builds them: text is
+ * trimmed and element and attribute values are split on the list delimiter.<br>
+ * The &lt;data&gt; rows of a namespace are kept apart from it's node tree, as {@link TestData} when
+ * they only have values directly under them, see {@link XMLNamespaceData}.<br>
+ * A handler can also build the data of one class only, leaving out the rows rejected by a
+ * selection as soon as they are parsed.<br>
+ */
+public class XMLDataHandler extends DefaultHandler {
+    private static final Logger log = LoggerFactory.getLogger(XMLDataHandler.class);
+    private static final char LIST_DELIMITER = ',';
+    private final Map<String, HierarchicalConfiguration> dataMap = new HashMap<>();
+    private final List<Element> stack = new ArrayList<>();
+    private final TestData.Keys.Interner keysInterner = new TestData.Keys.Interner();
+    /** the only class to build data for, null to build the data of all classes. */
+    private final String selectedClass;
+    private final List<KeyValuePredicate> selection;
+    private int namespaceCount = 0;
+
+    public XMLDataHandler() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a handler which builds the data of the given class only, leaving out the rows
+     * rejected by any of the given predicates.<br>
+     *
+     * @param selectedClass name of the class, null for all classes.
+     * @param selection predicates the rows must be accepted by, can be null.
+     */
+    public XMLDataHandler(String selectedClass, List<KeyValuePredicate> selection) {
+        this.selectedClass = selectedClass;
+        this.selection = selection == null ? Collections.<KeyValuePredicate> emptyList()
+                : selection;
+    }
+
+    /**
+     * @return Map of namespace/test vs the testData.
+     */
+    public Map<String, HierarchicalConfiguration> getDataMap() {
+        return dataMap;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        Element parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+        Element element = new Element(new Node(qName));
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String name = attributes.getQName(i);
+            List<String> values = PropertyConverter.split(attributes.getValue(i), LIST_DELIMITER,
+                    true);
+            element.attributes.put(name, values);
+        }
+        for (Map.Entry<String, List<String>> attribute : element.attributes.entrySet()) {
+            for (String value : attribute.getValue()) {
+                element.node.addAttribute(new Node(attribute.getKey(), value));
+            }
+        }
+        if (parent != null) {
+            parent.hasChildren = true;
+        }
+        stack.add(element);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        stack.get(stack.size() - 1).text.append(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        Element element = stack.remove(stack.size() - 1);
+        int level = stack.size();
+        boolean childrenFlag = element.hasChildren || !element.attributes.isEmpty();
+        String text = element.text.toString().trim();
+        if (text.length() > 0 || (!childrenFlag && level != 0)) {
+            element.node.setValue(text);
+        }
+        if (level == 0) {
+            return; // root element, namespaces are already registered.
+        }
+        Element parent = stack.get(level - 1);
+        if (level == 1 && TAG_NAMESPACE.equals(qName)) {
+            addNamespace(element);
+        } else if (level == 2 && TAG_DATA.equals(qName)
+                && TAG_NAMESPACE.equals(parent.node.getName())) {
+            if (selectedClass != null && !isSelected(getClassNames(parent.node))) {
+                return; // the namespace will not be registered.
+            }
+            TestData data = TestData.fromNode(element.node, keysInterner);
+            if (isSelected(data, element.node)) {
+                parent.rows.add(data != null ? data : element.node);
+            }
+        } else {
+            addChild(parent, element);
+        }
+    }
+
+    private boolean isSelected(List<String> classNames) {
+        return selectedClass == null || classNames.contains(selectedClass);
+    }
+
+    private boolean isSelected(TestData data, Node node) {
+        if (selection.isEmpty()) {
+            return true;
+        }
+        HierarchicalConfiguration row;
+        if (data != null) {
+            row = new TestDataConfiguration(data, TAG_DATA);
+        } else {
+            row = new HierarchicalConfiguration();
+            row.setRoot(node);
+        }
+        for (KeyValuePredicate predicate : selection) {
+            if (!predicate.accept(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> getClassNames(Node namespace) {
+        List<String> classNames = new ArrayList<>();
+        for (ConfigurationNode classNameNode : namespace.getChildren(TAG_CLASS_NAME)) {
+            if (classNameNode.getValue() != null) {
+                classNames.add(classNameNode.getValue().toString());
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Adds the child to the parent, splitting the value of the child on the list delimiter in to
+     * multiple nodes with the same name, like XMLConfiguration does.<br>
+     */
+    private void addChild(Element parent, Element child) {
+        Object value = child.node.getValue();
+        List<String> values = value == null ? null : PropertyConverter.split(value.toString(),
+                LIST_DELIMITER, true);
+        if (values == null || values.size() <= 1) {
+            if (values != null && values.size() == 1) {
+                child.node.setValue(values.get(0)); // value might have escaped delimiters.
+            }
+            parent.node.addChild(child.node);
+            return;
+        }
+        child.node.setValue(values.get(0));
+        parent.node.addChild(child.node);
+        for (int i = 1; i < values.size(); i++) {
+            Node node = new Node(child.node.getName(), values.get(i));
+            for (Map.Entry<String, List<String>> attribute : child.attributes.entrySet()) {
+                for (String attributeValue : attribute.getValue()) {
+                    node.addAttribute(new Node(attribute.getKey(), attributeValue));
+                }
+            }
+            parent.node.addChild(node);
+        }
+    }
+
+    /**
+     * Registers the namespace against each of it's class names. Data of a class given in more than
+     * one namespace is appended.<br>
+     */
+    private void addNamespace(Element namespace) {
+        XMLNamespaceData aNameSpaceData = new XMLNamespaceData(namespace.node, namespace.rows);
+        String[] classNames = aNameSpaceData.getStringArray(TAG_CLASS_NAME);
+        if (selectedClass != null) {
+            classNames = Arrays.asList(classNames).contains(selectedClass) ? new String[] {
+                    selectedClass } : new String[0];
+        }
+        for (String testClassName : classNames) {
+            log.debug(" ** Namespace: {} > {}", namespaceCount, testClassName);
+            HierarchicalConfiguration existing = dataMap.get(testClassName);
+            if (existing == null) {
+                dataMap.put(testClassName, aNameSpaceData);
+            } else if (existing instanceof XMLNamespaceData) {
+                ((XMLNamespaceData) existing).append(aNameSpaceData);
+            } else {
+                XMLDataParser.append(existing, aNameSpaceData);
+            }
+        }
+        namespaceCount++;
+    }
+
+    /**
+     * An element which is still being parsed.<br>
+     */
+    private static final class Element {
+        private final Node node;
+        private final StringBuilder text = new StringBuilder();
+        /** attributes in the order DOM reports them, which is sorted by name. */
+        private final Map<String, List<String>> attributes = new TreeMap<>();
+        /** data rows of a namespace, each a TestData or a Node. */
+        private final List<Object> rows = new ArrayList<>();
+        private boolean hasChildren = false;
+
+        private Element(Node node) {
+            this.node = node;
+        }
+    }
+}
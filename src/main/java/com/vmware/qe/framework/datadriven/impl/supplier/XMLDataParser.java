@@ -15,18 +15,28 @@
  */
 package com.vmware.qe.framework.datadriven.impl.supplier;
 
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_VALIDATE_ONCE;
+
+import java.io.InputStream;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.validation.ValidatorHandler;
 
-import org.apache.commons.configuration.ConfigurationUtils;
 import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.configuration.tree.ConfigurationNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
+import com.vmware.qe.framework.datadriven.core.DDConstants;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
 import com.vmware.qe.framework.datadriven.utils.XMLUtil;
 
 /**
@@ -40,6 +50,9 @@ public class XMLDataParser {
     public static final String TAG_DATA = "data";
     public static final String TAG_COMMON_DATA = "common-data";
     public static final String TAG_CLASS_NAME = "class-name";
+    /** Stamps of the data files when they were last validated in this JVM, by URL. */
+    private static final ConcurrentMap<String, XMLDataCache.Stamp> validatedFiles =
+            new ConcurrentHashMap<>();
 
     /**
      * Load the data file and convert them in to a list of data's.
@@ -48,64 +61,129 @@ public class XMLDataParser {
      */
     public static Map<String, HierarchicalConfiguration> load(URL dataFileURL, Class<?> clazz)
             throws Exception {
-        log.debug("Validating against schema file.");
-        validateAgainstSchema(dataFileURL);
-        log.debug("Reading the data file: " + dataFileURL);
-        HierarchicalConfiguration dataFromFile = new XMLConfiguration(dataFileURL);
-        return segregate(dataFromFile, clazz);
+        return load(dataFileURL, clazz, null);
     }
 
     /**
-     * Load the data file and convert them in to a list of data's.
+     * Load the data file and convert them in to a list of data's.<br>
+     * The file is read only once: schema validation and building of the namespace data are both
+     * driven by the same stream of parser events. When
+     * {@value DDConstants#TAG_SUPPLIER_XML_VALIDATE_ONCE} is set, a file which was already
+     * validated in this JVM is not validated again unless its size or modification time changed,
+     * so that the file need not be read up front to find out.<br>
      * 
+     * @param dataFileURL URL of the data file.
+     * @param clazz the test class.
+     * @param context context containing any relevant info, can be null.
      * @throws Exception
      */
-    public static Map<String, HierarchicalConfiguration> load(String dataFilePath, Class<?> clazz)
-            throws Exception {
-        HierarchicalConfiguration dataFromFile = null;
-        URL dataFileURL = clazz.getResource(dataFilePath);
-        log.info("Validating against schema file:");
-        validateAgainstSchema(dataFileURL);
-        log.info("Reading the data file: " + dataFileURL);
-        dataFromFile = new XMLConfiguration(dataFileURL);
-        return segregate(dataFromFile, clazz);
+    public static Map<String, HierarchicalConfiguration> load(URL dataFileURL, Class<?> clazz,
+            HierarchicalConfiguration context) throws Exception {
+        return load(dataFileURL, clazz, context, new XMLDataHandler());
     }
 
     /**
-     * Segregate the data based on the namespace.<br>
+     * Loads the data of given class only, leaving out the rows rejected by any of the given
+     * predicates as soon as they are parsed. Namespaces of other classes are parsed but not
+     * kept.<br>
      * 
-     * @param dataFromFile HierarchicalConfiguration data loaded from file.
+     * @param dataFileURL URL of the data file.
      * @param clazz the test class.
-     * @return Map of namespace/test vs the testData.
+     * @param context context containing any relevant info, can be null.
+     * @param selection predicates the rows must be accepted by.
+     * @return Map holding the data of the class, if any.
      * @throws Exception
      */
-    private static Map<String, HierarchicalConfiguration> segregate(
-            HierarchicalConfiguration dataFromFile, Class<?> clazz) throws Exception {
-        Map<String, HierarchicalConfiguration> dataMap = new HashMap<String, HierarchicalConfiguration>();
-        log.debug("Data : " + ConfigurationUtils.toString(dataFromFile));
-        List<HierarchicalConfiguration> allNameSpaces = null;
-        String[] classNames = null;
-        allNameSpaces = dataFromFile.configurationsAt(TAG_NAMESPACE);
-        log.debug(allNameSpaces.size() + " namespaces given.");
-        for (int i = 0; i < allNameSpaces.size(); i++) {
-            HierarchicalConfiguration aNameSpaceData = allNameSpaces.get(i);
-            classNames = aNameSpaceData.getStringArray(TAG_CLASS_NAME);
-            // data is added to individual testData in the same namespace is added
-            // to the dataMap using testClassName as key
-            for (String testClassName : classNames) {
-                log.debug(" ** Namespace: " + i + " > " + testClassName);
-                if (!dataMap.containsKey(testClassName)) {
-                    dataMap.put(testClassName, aNameSpaceData);
-                } else {
-                    append(dataMap.get(testClassName), aNameSpaceData);
-                }
-            }
+    public static Map<String, HierarchicalConfiguration> load(URL dataFileURL, Class<?> clazz,
+            HierarchicalConfiguration context, List<KeyValuePredicate> selection)
+            throws Exception {
+        return load(dataFileURL, clazz, context, new XMLDataHandler(clazz.getName(), selection));
+    }
+
+    /**
+     * @param context context containing any relevant info, can be null.
+     * @return the settings of the context which change how a data file is loaded, the same for
+     *         any two contexts loading files the same way.
+     */
+    static String getLoadSettings(HierarchicalConfiguration context) {
+        return TAG_SUPPLIER_XML_VALIDATE_ONCE + "="
+                + DDUtils.getConfigBoolean(context, TAG_SUPPLIER_XML_VALIDATE_ONCE, false);
+    }
+
+    private static Map<String, HierarchicalConfiguration> load(URL dataFileURL, Class<?> clazz,
+            HierarchicalConfiguration context, XMLDataHandler dataHandler) throws Exception {
+        log.debug("Reading the data file: " + dataFileURL);
+        boolean validate = true;
+        XMLDataCache.Stamp stamp = null;
+        if (DDUtils.getConfigBoolean(context, TAG_SUPPLIER_XML_VALIDATE_ONCE, false)) {
+            stamp = XMLDataCache.Stamp.of(dataFileURL);
+            validate = !stamp.equals(validatedFiles.get(dataFileURL.toExternalForm()));
+        }
+        if (!validate) {
+            log.debug("File already validated, skipping validation of {}", dataFileURL);
+        }
+        Map<String, HierarchicalConfiguration> dataMap;
+        try (InputStream in = dataFileURL.openStream()) {
+            dataMap = parse(in, dataFileURL.toExternalForm(), validate, dataHandler);
+        }
+        if (stamp != null) {
+            validatedFiles.put(dataFileURL.toExternalForm(), stamp);
         }
         log.debug("Data keys: " + dataMap.keySet());
         log.debug("Load size: " + dataMap.size());
         return dataMap;
     }
 
+    /**
+     * Parses the given XML content in to namespace data, validating it against
+     * {@link #XSD_FILE_NAME} while parsing if required.<br>
+     * 
+     * @param in the XML content.
+     * @param systemId system id used for resolving relative URIs and in error messages.
+     * @param validate whether to validate the content.
+     * @return Map of namespace/test vs the testData.
+     * @throws Exception
+     */
+    static Map<String, HierarchicalConfiguration> parse(InputStream in, String systemId,
+            boolean validate) throws Exception {
+        return parse(in, systemId, validate, new XMLDataHandler());
+    }
+
+    /**
+     * Parses the given XML content with the given handler, see
+     * {@link #parse(InputStream, String, boolean)}.<br>
+     */
+    static Map<String, HierarchicalConfiguration> parse(InputStream in, String systemId,
+            boolean validate, XMLDataHandler dataHandler) throws Exception {
+        ContentHandler contentHandler = dataHandler;
+        URL xsdURL = XMLDataParser.class.getResource(XSD_FILE_NAME);
+        if (xsdURL == null) {
+            log.error("Schema file not found!");
+        } else if (validate) {
+            log.debug("Validating against schema file.");
+            ValidatorHandler validatorHandler = XMLUtil.getSchema(xsdURL).newValidatorHandler();
+            validatorHandler.setContentHandler(dataHandler);
+            contentHandler = validatorHandler;
+        }
+        XMLReader reader = XMLUtil.newXMLReader();
+        reader.setContentHandler(contentHandler);
+        InputSource source = new InputSource(in);
+        source.setSystemId(systemId);
+        reader.parse(source);
+        return dataHandler.getDataMap();
+    }
+
+    /**
+     * Load the data file and convert them in to a list of data's.
+     * 
+     * @throws Exception
+     */
+    public static Map<String, HierarchicalConfiguration> load(String dataFilePath, Class<?> clazz)
+            throws Exception {
+        URL dataFileURL = clazz.getResource(dataFilePath);
+        return load(dataFileURL, clazz, null);
+    }
+
     /**
      * This method appends config2 with config1 This method is required since Configuration.append()
      * will not maintain hierarchical structure
@@ -113,21 +191,11 @@ public class XMLDataParser {
      * @param config1
      * @param config2
      */
-    public static void append(HierarchicalConfiguration config1, HierarchicalConfiguration config2)
-            throws Exception {
+    public static void append(HierarchicalConfiguration config1, HierarchicalConfiguration config2) {
         HierarchicalConfiguration clonedConfig2 = (HierarchicalConfiguration) config2.clone();
         List<ConfigurationNode> nodes = clonedConfig2.getRootNode().getChildren();
         for (ConfigurationNode configurationNode : nodes) {
             config1.getRoot().addChild(configurationNode);
         }
     }
-
-    private static void validateAgainstSchema(URL dataFileURL) throws Exception {
-        URL xsdURL = XMLDataParser.class.getResource(XSD_FILE_NAME);
-        if (xsdURL == null) {
-            log.error("Schema file not found!");
-        } else {
-            XMLUtil.validateXML(dataFileURL.openStream(), xsdURL.openStream());
-        }
-    }
 }
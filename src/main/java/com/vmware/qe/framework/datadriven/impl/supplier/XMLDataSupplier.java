@@ -15,9 +15,16 @@
  */
 package com.vmware.qe.framework.datadriven.impl.supplier;
 
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX_DIR;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_CACHE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_INDEX;
+
+import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,38 +32,60 @@ import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vmware.qe.framework.datadriven.core.DDConstants;
 import com.vmware.qe.framework.datadriven.core.DDException;
-import com.vmware.qe.framework.datadriven.core.DataSupplier;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.SelectiveDataSupplier;
 import com.vmware.qe.framework.datadriven.utils.DDUtils;
 
 /**
  * Represents XML file based data supplier.<br>
  */
-public class XMLDataSupplier implements DataSupplier {
+public class XMLDataSupplier implements SelectiveDataSupplier {
     private static final Logger log = LoggerFactory.getLogger(XMLDataSupplier.class);
-    /**
-     * Cache containing the test case name and corresponding data.<br>
-     * Ex: {test.Pos001=datas, test.Pos002=datas}
-     */
-    private static final Map<String, HierarchicalConfiguration> cache = new HashMap<String, HierarchicalConfiguration>();
-    /** loaded files list, {test.Pos001.xml,..} */
-    private static final Set<String> loadedFiles = new HashSet<String>();
+    private static final XMLDataCache cache = XMLDataCache.getInstance();
 
     /**
      * Get's data from XML file in classpath in specified format.<br>
-     * First search the
+     * Parsed files are kept in {@link XMLDataCache} so that a package level data file shared by
+     * many test classes is parsed only once. Each call gets it's own copy of the cached data, so
+     * changes made by a test are not seen by others. Set
+     * {@value DDConstants#TAG_SUPPLIER_XML_CACHE} to false to always load the file.<br>
+     * With {@value DDConstants#TAG_SUPPLIER_XML_INDEX} set, data files on local disk are indexed
+     * instead and only the namespaces of the requested class are parsed, see
+     * {@link XMLNamespaceIndex}.<br>
      * 
      * @param className ClassName
      * @param context The context.
      */
     public HierarchicalConfiguration getData(final String className,
             HierarchicalConfiguration context) {
+        return getData(className, context, Collections.<KeyValuePredicate> emptyList());
+    }
+
+    /**
+     * Gets the data like {@link #getData(String, HierarchicalConfiguration)}, leaving out the rows
+     * rejected by the selection. Files which are not cached are parsed for the class only, rows
+     * being dropped as soon as they are parsed. Data taken from the cache is copied with only the
+     * selected rows.<br>
+     * With {@value DDConstants#TAG_SUPPLIER_TESTID_INDEX} set and the selection having test-ids,
+     * only the rows of those test-ids are read from the file, see {@link TestIdIndex}.<br>
+     * 
+     * @param className ClassName
+     * @param context The context.
+     * @param selection predicates the rows must be accepted by.
+     */
+    @Override
+    public HierarchicalConfiguration getData(final String className,
+            HierarchicalConfiguration context, List<KeyValuePredicate> selection) {
         HierarchicalConfiguration dataForTestCase = null;
+        boolean select = selection != null && !selection.isEmpty();
         try {
             Class<?> clazz = Class.forName(className);
             String dataFilePath = null;
             URL dataFileURL = null;
-            boolean packageFile = false;
+            boolean useCache = DDUtils.getConfigBoolean(context, TAG_SUPPLIER_XML_CACHE, true);
+            boolean useIndex = DDUtils.getConfigBoolean(context, TAG_SUPPLIER_XML_INDEX, false);
             Map<String, HierarchicalConfiguration> dataMap = null;
             String dataFileName = context.getString("supplier.dataFile", null);
             log.debug("Checking the data file in argument...");
@@ -72,40 +101,67 @@ public class XMLDataSupplier implements DataSupplier {
                 return null;// No data found, hence it's a normal test case.
             }
             dataFileURL = clazz.getResource(dataFilePath);
-            if (packageFile) {
-                // The data file is from package file name so check the cache.
-                log.debug("Cache: " + cache.size());
-                synchronized (XMLDataSupplier.class) {
-                    if (loadedFiles.contains(dataFilePath)) { // get it from cache.
-                        log.info("File was loaded before !!!");
-                        dataForTestCase = cache.get(clazz.getName());
-                    } else {// not in cache, so load and put it to cache.
-                        log.info("File was not loaded before, loading now...");
-                        if (dataFileURL != null) {
-                            cache.putAll(XMLDataParser.load(dataFileURL, clazz));
-                        } else {
-                            cache.putAll(XMLDataParser.load(dataFilePath, clazz));
-                        }
-                        dataForTestCase = cache.get(clazz.getName());
-                        loadedFiles.add(dataFilePath);
-                    }
+            Set<String> testIds = select ? TestIdIndex.getTestIds(selection) : null;
+            TestIdIndex testIdIndex = null;
+            if (testIds != null && dataFileURL != null
+                    && DDUtils.getConfigBoolean(context, TAG_SUPPLIER_TESTID_INDEX, false)) {
+                String indexDir = DDUtils.getConfigString(context, TAG_SUPPLIER_TESTID_INDEX_DIR,
+                        null);
+                testIdIndex = TestIdIndex.get(dataFileURL, TestIdIndex.Format.XML,
+                        indexDir == null ? null : new File(indexDir));
+            }
+            XMLNamespaceIndex index = null;
+            if (testIdIndex == null && useCache && useIndex && dataFileURL != null) {
+                index = cache.getIndex(dataFileURL);
+            }
+            if (testIdIndex != null) {
+                log.debug("Loading the rows of test-ids {}", testIds);
+                try (InputStream in = testIdIndex.open(testIds)) {
+                    dataMap = XMLDataParser.parse(in, dataFileURL.toExternalForm(), true,
+                            new XMLDataHandler(clazz.getName(), selection));
                 }
-                if ((dataForTestCase == null) || dataForTestCase.isEmpty()) {
-                    log.info("Data for '{}' is not available!", className);
-                    return null;
+                dataForTestCase = dataMap.get(clazz.getName());
+            } else if (index != null) {
+                dataForTestCase = select ? index.getData(clazz.getName(), selection)
+                        : copyOf(index.getData(clazz.getName()));
+                log.debug("Cache: {}", cache);
+            } else if (useCache && dataFileURL != null) {
+                dataMap = cache.get(dataFileURL, clazz, context);
+                log.debug("Cache: {}", cache);
+                dataForTestCase = dataMap.get(clazz.getName());
+                if (select && dataForTestCase instanceof XMLNamespaceData) {
+                    dataForTestCase = ((XMLNamespaceData) dataForTestCase).select(selection);
+                } else {
+                    dataForTestCase = copyOf(dataForTestCase);
                 }
-            } else { // data file not from package file so go ahead and load.
+            } else {
                 log.debug("Loading the xml file...");
-                if (dataFileURL != null) {
-                    dataMap = XMLDataParser.load(dataFileURL, clazz);
-                } else {
+                if (dataFileURL == null) {
                     dataMap = XMLDataParser.load(dataFilePath, clazz);
+                } else if (select) {
+                    dataMap = XMLDataParser.load(dataFileURL, clazz, context, selection);
+                } else {
+                    dataMap = XMLDataParser.load(dataFileURL, clazz, context);
                 }
                 dataForTestCase = dataMap.get(clazz.getName());
             }
+            if ((dataForTestCase == null) || dataForTestCase.isEmpty()) {
+                log.info("Data for '{}' is not available!", className);
+                return null;
+            }
         } catch (Exception ex) {
             throw new DDException("Error in loading the data file", ex);
         }
         return dataForTestCase;
     }
+
+    /**
+     * @return copy of the cached data, null if there is none.
+     */
+    private static HierarchicalConfiguration copyOf(HierarchicalConfiguration data) {
+        if (data instanceof XMLNamespaceData) {
+            return ((XMLNamespaceData) data).copy();
+        }
+        return data == null ? null : (HierarchicalConfiguration) data.clone();
+    }
 }
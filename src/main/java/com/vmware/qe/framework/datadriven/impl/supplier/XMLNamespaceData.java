@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.tree.ConfigurationNode;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+
+/**
+ * Data of a namespace of an XML data file, holding the &lt;data&gt; rows apart from the nodes.<br>
+ * Rows which only have values directly under them are kept as {@link TestData}, the others as
+ * nodes, in the order of the file. {@link #configurationsAt(String)} for 'data' hands out the rows
+ * without building their nodes and other lookups only look at the rest of the namespace. Any other
+ * access builds a new tree with the nodes of all rows once, after which this behaves like a plain
+ * HierarchicalConfiguration. The tree without the rows is never changed by then, so lookups
+ * racing with the tree being built stay correct.<br>
+ * Data kept in a cache is shared, callers get a {@link #copy()} of it.<br>
+ */
+public class XMLNamespaceData extends HierarchicalConfiguration {
+    private static final long serialVersionUID = 1L;
+    /** keys which may select data rows. */
+    private static final Pattern DATA_KEY = Pattern.compile(TAG_DATA + "([.(\\[].*)?");
+    /** the rows, each a TestData or a Node. */
+    private final List<Object> rows;
+    /** the nodes of the namespace without the rows. */
+    private final ConfigurationNode treeWithoutRows;
+    private volatile boolean materialized = false;
+
+    XMLNamespaceData(Node root, List<Object> rows) {
+        super.setRootNode(root);
+        this.rows = rows;
+        this.treeWithoutRows = root;
+    }
+
+    /**
+     * Appends the nodes and rows of the other namespace data, copying the nodes.<br>
+     */
+    void append(XMLNamespaceData other) {
+        HierarchicalConfiguration otherCopy = new HierarchicalConfiguration();
+        otherCopy.setRootNode(other.getTreeWithoutRows());
+        otherCopy = (HierarchicalConfiguration) otherCopy.clone();
+        for (ConfigurationNode node : otherCopy.getRootNode().getChildren()) {
+            getTreeWithoutRows().addChild(node);
+        }
+        for (Object row : other.rows) {
+            if (row instanceof TestData) {
+                rows.add(row);
+            } else {
+                HierarchicalConfiguration rowCopy = new HierarchicalConfiguration();
+                rowCopy.setRoot((Node) row);
+                rows.add(((HierarchicalConfiguration) rowCopy.clone()).getRoot());
+            }
+        }
+    }
+
+    /**
+     * Copies this data, so that changes to the copy do not reach this data. The copy shares the
+     * compact rows, which are copied when changed, and copies the rest.<br>
+     *
+     * @return the copy.
+     */
+    HierarchicalConfiguration copy() {
+        if (materialized) {
+            return (HierarchicalConfiguration) clone();
+        }
+        return copy(rows);
+    }
+
+    /**
+     * Copies this data keeping only the rows accepted by all of the given predicates, see
+     * {@link #copy()}.<br>
+     *
+     * @param selection predicates the rows must be accepted by.
+     * @return the copy, with all rows if it's tree was already built.
+     */
+    HierarchicalConfiguration select(List<KeyValuePredicate> selection) {
+        if (materialized) {
+            return copy();
+        }
+        List<Object> selectedRows = new ArrayList<>();
+        List<HierarchicalConfiguration> rowConfigs = new RowList();
+        for (int i = 0; i < rows.size(); i++) {
+            if (isAccepted(rowConfigs.get(i), selection)) {
+                selectedRows.add(rows.get(i));
+            }
+        }
+        return copy(selectedRows);
+    }
+
+    private XMLNamespaceData copy(List<Object> copiedRows) {
+        XMLNamespaceData copy = new XMLNamespaceData(new Node(getTreeWithoutRows().getName()),
+                new ArrayList<Object>());
+        copy.append(new XMLNamespaceData((Node) getTreeWithoutRows(), copiedRows));
+        return copy;
+    }
+
+    private static boolean isAccepted(HierarchicalConfiguration row,
+            List<KeyValuePredicate> selection) {
+        for (KeyValuePredicate predicate : selection) {
+            if (!predicate.accept(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<HierarchicalConfiguration> configurationsAt(String key) {
+        if (!materialized && TAG_DATA.equals(key)) {
+            return new RowList();
+        }
+        return super.configurationsAt(key);
+    }
+
+    @Override
+    protected List<ConfigurationNode> fetchNodeList(String key) {
+        if (!materialized && !DATA_KEY.matcher(key).matches()) {
+            return getExpressionEngine().query(getTreeWithoutRows(), key);
+        }
+        return super.fetchNodeList(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (!materialized) {
+            return rows.isEmpty() && !nodeDefined(getTreeWithoutRows());
+        }
+        return super.isEmpty();
+    }
+
+    @Override
+    public Node getRoot() {
+        materialize();
+        return super.getRoot();
+    }
+
+    @Override
+    public ConfigurationNode getRootNode() {
+        materialize();
+        return super.getRootNode();
+    }
+
+    @Override
+    public void setRootNode(ConfigurationNode rootNode) {
+        super.setRootNode(rootNode);
+        materialized = rows != null; // rows is null while being constructed.
+    }
+
+    /**
+     * @return the node tree without the rows, null once the rows were added to the tree.
+     */
+    ConfigurationNode getNodesWithoutRows() {
+        return materialized ? null : getTreeWithoutRows();
+    }
+
+    /**
+     * @return the rows, each a TestData or a Node, null once the rows were added to the tree.
+     */
+    List<Object> getRows() {
+        return materialized ? null : Collections.unmodifiableList(rows);
+    }
+
+    private ConfigurationNode getTreeWithoutRows() {
+        return treeWithoutRows;
+    }
+
+    /**
+     * Builds a copy of the tree with the nodes of the rows added and makes it the root.<br>
+     */
+    private void materialize() {
+        if (materialized || rows == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!materialized) {
+                HierarchicalConfiguration copy = new HierarchicalConfiguration();
+                copy.setRootNode(treeWithoutRows);
+                copy = (HierarchicalConfiguration) copy.clone();
+                ConfigurationNode root = copy.getRootNode();
+                for (Object row : rows) {
+                    root.addChild(row instanceof TestData ? ((TestData) row).toNode(TAG_DATA)
+                            : (Node) row);
+                }
+                setRootNode(root); // marks the data as materialized.
+            }
+        }
+    }
+
+    private final class RowList extends AbstractList<HierarchicalConfiguration> implements
+            RandomAccess {
+        @Override
+        public HierarchicalConfiguration get(int index) {
+            Object row = rows.get(index);
+            if (row instanceof TestData) {
+                return new TestDataConfiguration((TestData) row, TAG_DATA);
+            }
+            HierarchicalConfiguration data = new HierarchicalConfiguration();
+            data.setRoot((Node) row);
+            return data;
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+    }
+}
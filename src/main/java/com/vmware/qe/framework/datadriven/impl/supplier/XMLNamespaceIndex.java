@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_CLASS_NAME;
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_DATA;
+import static com.vmware.qe.framework.datadriven.impl.supplier.XMLDataParser.TAG_NAMESPACE;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.PropertyConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.utils.DDUtils;
+
+/**
+ * Index of the &lt;namespace&gt; elements of a XML data file on local disk.<br>
+ * The file is memory mapped and scanned once, recording the byte range of each namespace against
+ * it's class names. Data of a class is then parsed only from the namespaces of that class, so a
+ * package file with thousands of namespaces can serve a single test class without parsing the
+ * rest of the file. Only the parsed namespaces are validated against the schema.<br>
+ * Files which can't be indexed safely (not UTF-8, having a DOCTYPE or entity references in class
+ * names) are reported by {@link #build(URL)} returning null, and should be loaded as a whole.<br>
+ * The same scan finds the data rows for {@link TestIdIndex}.<br>
+ */
+public final class XMLNamespaceIndex {
+    private static final Logger log = LoggerFactory.getLogger(XMLNamespaceIndex.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char LIST_DELIMITER = ',';
+    private static final Pattern TEST_ID_ATTR = Pattern
+            .compile("\\stest-id\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private final URL dataFileURL;
+    private final ByteBuffer buffer;
+    /** the start tag of the root element, used to wrap namespaces when parsing them. */
+    private final byte[] rootStart;
+    private final byte[] rootEnd;
+    /** class name vs byte ranges of namespaces of that class, in document order. */
+    private final Map<String, List<int[]>> namespaces;
+    private final ConcurrentMap<String, HierarchicalConfiguration> loaded;
+
+    private XMLNamespaceIndex(URL dataFileURL, ByteBuffer buffer, byte[] rootStart,
+            byte[] rootEnd, Map<String, List<int[]>> namespaces) {
+        this.dataFileURL = dataFileURL;
+        this.buffer = buffer;
+        this.rootStart = rootStart;
+        this.rootEnd = rootEnd;
+        this.namespaces = namespaces;
+        this.loaded = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Builds the index of given data file.<br>
+     *
+     * @param dataFileURL URL of the data file.
+     * @return the index or null if the file is not on local disk or can't be indexed.
+     * @throws IOException if the file can't be read.
+     */
+    public static XMLNamespaceIndex build(URL dataFileURL) throws IOException {
+        File file = "file".equals(dataFileURL.getProtocol()) ? DDUtils.toFile(dataFileURL) : null;
+        if (file == null || file.length() > Integer.MAX_VALUE) {
+            log.debug("Data file can not be memory mapped: {}", dataFileURL);
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        XMLNamespaceIndex index = new Scanner(dataFileURL, buffer, null).scan();
+        if (index == null) {
+            log.info("Data file can not be indexed, it will be loaded as a whole: {}",
+                    dataFileURL);
+        } else {
+            log.debug("Indexed {} classes of {}", index.namespaces.size(), dataFileURL);
+        }
+        return index;
+    }
+
+    /**
+     * Finds the &lt;data&gt; rows of the namespaces in given file content, each row taking the
+     * white space before it.<br>
+     *
+     * @param dataFileURL URL of the data file, for logging.
+     * @param buffer content of the file.
+     * @return the rows or null if the file can't be indexed.
+     */
+    static TestIdIndex.Rows scanRows(URL dataFileURL, ByteBuffer buffer) {
+        Scanner scanner = new Scanner(dataFileURL, buffer, new TestIdIndex.Rows(1024));
+        return scanner.scan() == null ? null : scanner.rows;
+    }
+
+    /**
+     * Gets the data of given class, parsing the namespaces of that class on first request. The
+     * data is shared by all callers, see {@link XMLNamespaceData#copy()}.<br>
+     *
+     * @param className name of the test class.
+     * @return the data of the class or null if no namespace is given for the class.
+     * @throws Exception on any issues when parsing the namespaces.
+     */
+    public HierarchicalConfiguration getData(String className) throws Exception {
+        HierarchicalConfiguration data = loaded.get(className);
+        if (data != null) {
+            return data;
+        }
+        data = parse(className, new XMLDataHandler());
+        if (data == null) {
+            return null;
+        }
+        HierarchicalConfiguration existing = loaded.putIfAbsent(className, data);
+        return existing != null ? existing : data;
+    }
+
+    /**
+     * Gets the data of given class, leaving out the rows rejected by any of the given predicates.
+     * Namespaces of the class which were not parsed yet are parsed for this call only, skipping
+     * the rejected rows while parsing. The data is not shared.<br>
+     *
+     * @param className name of the test class.
+     * @param selection predicates the rows must be accepted by.
+     * @return the data of the class or null if no namespace is given for the class.
+     * @throws Exception on any issues when parsing the namespaces.
+     */
+    public HierarchicalConfiguration getData(String className, List<KeyValuePredicate> selection)
+            throws Exception {
+        HierarchicalConfiguration data = loaded.get(className);
+        if (data instanceof XMLNamespaceData) {
+            return ((XMLNamespaceData) data).select(selection);
+        }
+        if (data != null) {
+            return (HierarchicalConfiguration) data.clone();
+        }
+        return parse(className, new XMLDataHandler(className, selection));
+    }
+
+    private HierarchicalConfiguration parse(String className, XMLDataHandler dataHandler)
+            throws Exception {
+        List<int[]> ranges = namespaces.get(className);
+        if (ranges == null) {
+            return null;
+        }
+        List<InputStream> streams = new ArrayList<>();
+        streams.add(new ByteArrayInputStream(rootStart));
+        for (int[] range : ranges) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(range[1]);
+            slice.position(range[0]);
+            streams.add(new BufferInputStream(slice));
+        }
+        streams.add(new ByteArrayInputStream(rootEnd));
+        log.debug("Loading {} namespaces of '{}' from {}", ranges.size(), className, dataFileURL);
+        try (InputStream in = new SequenceInputStream(Collections.enumeration(streams))) {
+            return XMLDataParser.parse(in, dataFileURL.toExternalForm(), true, dataHandler).get(
+                    className);
+        }
+    }
+
+    /**
+     * @return number of classes which have data in the file.
+     */
+    public int size() {
+        return namespaces.size();
+    }
+
+    /**
+     * Byte level scanner of the data file. Tracks element depth, skipping comments, CDATA sections
+     * and processing instructions, to find the namespaces and their class names.<br>
+     */
+    private static final class Scanner {
+        private final URL dataFileURL;
+        private final ByteBuffer buffer;
+        private final int limit;
+        private final Map<String, List<int[]>> namespaces = new HashMap<>();
+        /** the data rows found, if asked for. */
+        private final TestIdIndex.Rows rows;
+        private byte[] rootStart;
+        private String rootName;
+
+        private Scanner(URL dataFileURL, ByteBuffer buffer, TestIdIndex.Rows rows) {
+            this.dataFileURL = dataFileURL;
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+            this.rows = rows;
+        }
+
+        private XMLNamespaceIndex scan() {
+            int pos = 0;
+            if (startsWith(0, new byte[] { (byte) 0xFE, (byte) 0xFF })
+                    || startsWith(0, new byte[] { (byte) 0xFF, (byte) 0xFE })) {
+                return null; // UTF-16
+            }
+            if (startsWith(0, new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF })) {
+                pos = 3; // UTF-8 BOM
+            }
+            int depth = 0;
+            int namespaceStart = -1;
+            int textStart = -1;
+            List<String> classNames = null;
+            int markupEnd = pos; // end of the last tag, comment or instruction.
+            int rowStart = -1;
+            String rowTestId = null;
+            while (pos < limit) {
+                if (buffer.get(pos) != '<') {
+                    pos++;
+                    continue;
+                }
+                if (startsWith(pos, "<!--")) {
+                    pos = skipPast(pos + 4, "-->");
+                } else if (startsWith(pos, "<![CDATA[")) {
+                    pos = skipPast(pos + 9, "]]>");
+                } else if (startsWith(pos, "<?")) {
+                    int end = skipPast(pos + 2, "?>");
+                    if (depth == 0 && startsWith(pos, "<?xml ") && !isUtf8(pos, end)) {
+                        return null;
+                    }
+                    pos = end;
+                } else if (startsWith(pos, "<!")) {
+                    return null; // DOCTYPE may declare entities.
+                } else if (pos + 1 < limit && buffer.get(pos + 1) == '/') {
+                    int nameEnd = nameEnd(pos + 2);
+                    String name = decode(pos + 2, nameEnd);
+                    int end = skipPast(nameEnd, ">");
+                    depth--;
+                    if (depth == 2 && classNames != null && TAG_CLASS_NAME.equals(name)) {
+                        String text = decode(textStart, pos);
+                        if (text.indexOf('&') >= 0 || text.indexOf('<') >= 0) {
+                            return null;
+                        }
+                        classNames.addAll(PropertyConverter.split(text.trim(), LIST_DELIMITER,
+                                true));
+                    } else if (depth == 1 && classNames != null && TAG_NAMESPACE.equals(name)) {
+                        for (String className : classNames) {
+                            List<int[]> ranges = namespaces.get(className);
+                            if (ranges == null) {
+                                ranges = new ArrayList<>();
+                                namespaces.put(className, ranges);
+                            }
+                            ranges.add(new int[] { namespaceStart, end });
+                        }
+                        classNames = null;
+                    } else if (depth == 2 && rowStart >= 0 && TAG_DATA.equals(name)) {
+                        rows.add(rowStart, end, rowTestId);
+                        rowStart = -1;
+                    }
+                    pos = end;
+                } else {
+                    int nameEnd = nameEnd(pos + 1);
+                    String name = decode(pos + 1, nameEnd);
+                    int end = tagEnd(nameEnd);
+                    if (end < 0) {
+                        log.debug("Unexpected end of file while indexing {}", dataFileURL);
+                        return null;
+                    }
+                    boolean empty = buffer.get(end - 2) == '/';
+                    if (rows != null && depth == 2 && classNames != null
+                            && TAG_DATA.equals(name)) {
+                        int start = isWhitespace(markupEnd, pos) ? markupEnd : pos;
+                        if (empty) {
+                            rows.add(start, end, testId(pos, end));
+                        } else {
+                            rowStart = start;
+                            rowTestId = testId(pos, end);
+                        }
+                    }
+                    if (depth == 0) {
+                        rootName = name;
+                        rootStart = new byte[end - pos];
+                        ByteBuffer slice = buffer.duplicate();
+                        slice.position(pos);
+                        slice.get(rootStart);
+                    }
+                    if (!empty) {
+                        depth++;
+                        if (depth == 2 && TAG_NAMESPACE.equals(name)) {
+                            namespaceStart = pos;
+                            classNames = new ArrayList<>();
+                        } else if (depth == 3 && classNames != null
+                                && TAG_CLASS_NAME.equals(name)) {
+                            textStart = end;
+                        }
+                    }
+                    pos = end;
+                }
+                if (pos < 0) {
+                    log.debug("Unexpected end of file while indexing {}", dataFileURL);
+                    return null;
+                }
+                markupEnd = pos;
+            }
+            if (rootName == null) {
+                return null;
+            }
+            byte[] rootEnd = ("</" + rootName + ">").getBytes(UTF8);
+            return new XMLNamespaceIndex(dataFileURL, buffer, rootStart, rootEnd, namespaces);
+        }
+
+        /**
+         * @return whether the XML declaration between given offsets declares UTF-8 or no encoding.
+         */
+        private boolean isUtf8(int start, int end) {
+            String declaration = decode(start, end);
+            int index = declaration.indexOf("encoding");
+            if (index < 0) {
+                return true;
+            }
+            String encoding = declaration.substring(index + "encoding".length())
+                    .replaceAll("^\\s*=\\s*['\"]([^'\"]*)['\"].*$", "$1").trim();
+            return encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8");
+        }
+
+        /**
+         * @return the test-id of the data start tag between given offsets, see
+         *         {@link TestIdIndex#plainTestId(String)}.
+         */
+        private String testId(int start, int end) {
+            Matcher matcher = TEST_ID_ATTR.matcher(decode(start, end));
+            if (!matcher.find()) {
+                return "";
+            }
+            return TestIdIndex.plainTestId(matcher.group(1) != null ? matcher.group(1) : matcher
+                    .group(2));
+        }
+
+        private boolean isWhitespace(int start, int end) {
+            for (int i = start; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean startsWith(int pos, String prefix) {
+            return startsWith(pos, prefix.getBytes(UTF8));
+        }
+
+        private boolean startsWith(int pos, byte[] prefix) {
+            if (pos + prefix.length > limit) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (buffer.get(pos + i) != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return offset just after the next occurrence of given text, or -1 if not found.
+         */
+        private int skipPast(int pos, String text) {
+            byte[] bytes = text.getBytes(UTF8);
+            for (int i = pos; i <= limit - bytes.length; i++) {
+                if (buffer.get(i) == bytes[0] && startsWith(i, bytes)) {
+                    return i + bytes.length;
+                }
+            }
+            return -1;
+        }
+
+        private int nameEnd(int pos) {
+            int i = pos;
+            while (i < limit) {
+                byte b = buffer.get(i);
+                if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * @return offset just after the '&gt;' closing the tag, skipping quoted attribute values.
+         */
+        private int tagEnd(int pos) {
+            byte quote = 0;
+            for (int i = pos; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '>') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private String decode(int start, int end) {
+            if (start < 0 || end < start) {
+                return "";
+            }
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            return new String(bytes, UTF8);
+        }
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a buffer.<br>
+     */
+    static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
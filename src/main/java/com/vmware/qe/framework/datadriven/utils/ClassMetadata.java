@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Reflective information about a test class, resolved once per class and shared by all threads.<br>
+ * Holds a method handle to the default constructor and a setter handle per injected field, so
+ * creating and injecting an instance does no reflective lookup after the first one.<br>
+ */
+public final class ClassMetadata {
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class,
+            Object.class);
+    private static final ClassValue<ClassMetadata> metadata = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+    private final Class<?> type;
+    private final ConcurrentMap<String, MethodHandle> setters = new ConcurrentHashMap<>();
+    private volatile MethodHandle constructor;
+
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * @param type the class.
+     * @return metadata of given class.
+     */
+    public static ClassMetadata of(Class<?> type) {
+        return metadata.get(type);
+    }
+
+    /**
+     * Looks up a class by name. The class is not cached here, only it's metadata is, which does
+     * not keep the class or it's class loader from being unloaded.<br>
+     *
+     * @param className fully qualified name of the class.
+     * @return metadata of the class.
+     * @throws DDException if the class is not found.
+     */
+    public static ClassMetadata forName(String className) {
+        try {
+            return of(Class.forName(className));
+        } catch (ClassNotFoundException e) {
+            throw new DDException("Class not found. Class name = " + className, e);
+        }
+    }
+
+    /**
+     * @return the class.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Creates an instance by calling the default constructor, which may be non public.<br>
+     *
+     * @return the new instance.
+     * @throws DDException if there is no default constructor or it throws a checked exception.
+     */
+    public Object newInstance() {
+        MethodHandle handle = constructor;
+        if (handle == null) {
+            handle = constructor = findConstructor();
+        }
+        try {
+            return handle.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DDException("Error in creating instance of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Gets a setter for the field of given name, declared by the class or any of it's super
+     * classes. The setter takes the target object and the value, both as Object.<br>
+     *
+     * @param fieldName name of the field.
+     * @return the setter handle.
+     * @throws DDException if the class has no such field.
+     */
+    public MethodHandle getSetter(String fieldName) {
+        MethodHandle setter = setters.get(fieldName);
+        if (setter == null) {
+            setter = toSetter(findField(fieldName));
+            setters.putIfAbsent(fieldName, setter);
+        }
+        return setter;
+    }
+
+    /**
+     * Sets the field of given name on given instance.<br>
+     *
+     * @param target instance of the class.
+     * @param fieldName name of the field.
+     * @param value the value to set.
+     * @throws DDException if there is no such field or the value does not fit it.
+     */
+    public void set(Object target, String fieldName, Object value) {
+        set(getSetter(fieldName), target, fieldName, value);
+    }
+
+    /**
+     * Sets a field using a setter obtained from {@link #getSetter(String)} or
+     * {@link #toSetter(Field)}.<br>
+     *
+     * @param setter the setter handle.
+     * @param target instance of the class.
+     * @param fieldName name of the field, for error messages.
+     * @param value the value to set.
+     * @throws DDException if the value does not fit the field.
+     */
+    public static void set(MethodHandle setter, Object target, String fieldName, Object value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (ClassCastException | NullPointerException e) {
+            throw new DDException("Failed to inject data to property with name =" + fieldName, e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DDException("Failed to inject data to property with name =" + fieldName, e);
+        }
+    }
+
+    /**
+     * Creates a setter for given field, taking the target object and the value as Object. The
+     * setter of a static field ignores the target.<br>
+     *
+     * @param field the field, which may be non public.
+     * @return the setter handle.
+     */
+    public static MethodHandle toSetter(Field field) {
+        try {
+            field.setAccessible(true);
+            MethodHandle setter = MethodHandles.lookup().unreflectSetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            }
+            return setter.asType(SETTER_TYPE);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new DDException("Field '" + field.getName() + "' of class "
+                    + field.getDeclaringClass().getName() + " can not be set", e);
+        }
+    }
+
+    private Field findField(String fieldName) {
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.getName().equals(fieldName)) {
+                    return field;
+                }
+            }
+        }
+        throw new DDException("Field '" + fieldName + "' not found on class " + type.getName());
+    }
+
+    private MethodHandle findConstructor() {
+        try {
+            Constructor<?> defaultConstructor = type.getDeclaredConstructor();
+            defaultConstructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(defaultConstructor)
+                    .asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            throw new DDException("Error in creating test instance. No usable default constructor"
+                    + " in class = " + type.getName(), e);
+        }
+    }
+}
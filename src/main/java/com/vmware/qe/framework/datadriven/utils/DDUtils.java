@@ -1,11 +1,21 @@
 package com.vmware.qe.framework.datadriven.utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vmware.qe.framework.datadriven.config.DDConfig;
 import com.vmware.qe.framework.datadriven.core.DDException;
 
 public class DDUtils {
@@ -48,4 +58,98 @@ public class DDUtils {
         }
         return dataFilePath;
     }
+
+    /**
+     * Gets the value of given key from context, falling back to {@link DDConfig} when the context
+     * does not have it.<br>
+     * 
+     * @param context context containing any relevant info.
+     * @param key the key to look up.
+     * @param defaultValue value returned when neither context nor DDConfig has the key.
+     * @return the configured value or the default value.
+     */
+    public static String getConfigString(HierarchicalConfiguration context, String key,
+            String defaultValue) {
+        String value = context == null ? null : context.getString(key, null);
+        if (value == null) {
+            Configuration ddConfig = DDConfig.getSingleton().getData();
+            value = ddConfig.getString(key, null);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static boolean getConfigBoolean(HierarchicalConfiguration context, String key,
+            boolean defaultValue) {
+        String value = getConfigString(context, key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static long getConfigLong(HierarchicalConfiguration context, String key,
+            long defaultValue) {
+        String value = getConfigString(context, key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new DDException("Invalid number '" + value + "' given for " + key, e);
+        }
+    }
+
+    public static int getConfigInt(HierarchicalConfiguration context, String key, int defaultValue) {
+        return (int) getConfigLong(context, key, defaultValue);
+    }
+
+    /**
+     * Finds the file on local disk backing the given URL. Works for 'file:' URLs and for entries
+     * of jar files on local disk, in which case the jar file is returned.<br>
+     * 
+     * @param url URL of the resource.
+     * @return the local file or null if the resource is not backed by a local file.
+     */
+    public static File toFile(URL url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return new File(url.toURI());
+            }
+            if ("jar".equals(url.getProtocol())) {
+                URLConnection connection = url.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    return toFile(((JarURLConnection) connection).getJarFileURL());
+                }
+            }
+        } catch (URISyntaxException | IOException | IllegalArgumentException e) {
+            log.debug("Could not resolve local file for {}", url, e);
+        }
+        return null;
+    }
+
+    /**
+     * Computes the MD5 checksum of the content of given URL.<br>
+     * 
+     * @param url URL of the resource.
+     * @return checksum as hex string.
+     * @throws IOException if the resource could not be read.
+     */
+    public static String checksum(URL url) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new DDException("MD5 digest not supported", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = url.openStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
 }
@@ -28,10 +28,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
@@ -57,12 +60,15 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * XMLUtil encapsulates general XML related utility methods.<br>
  */
 public class XMLUtil {
     private static final Logger log = LoggerFactory.getLogger(XMLUtil.class);
+    /** Compiled schemas keyed by the URL of the schema file. Schema objects are thread-safe. */
+    private static final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<>();
 
     /**
      * Finds all the children node whose tag names are in tags ArrayList. For example to get <one>
@@ -354,6 +360,39 @@ public class XMLUtil {
         validateDocument(document, xsdFileStream);
     }
 
+    /**
+     * Creates a namespace aware SAX reader.<br>
+     * 
+     * @return new XMLReader instance.
+     * @throws Exception if the reader could not be created.
+     */
+    public static XMLReader newXMLReader() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setValidating(false);
+        return factory.newSAXParser().getXMLReader();
+    }
+
+    /**
+     * Gets the compiled schema of given XSD file. The schema is compiled on first use and cached.<br>
+     * 
+     * @param xsdFileURL - URL of the XSD file.
+     * @return the compiled schema.
+     * @throws SAXException if the schema could not be compiled.
+     */
+    public static Schema getSchema(URL xsdFileURL) throws SAXException {
+        String key = xsdFileURL.toExternalForm();
+        Schema schema = schemas.get(key);
+        if (schema == null) {
+            log.debug("Compiling schema: {}", key);
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = factory.newSchema(xsdFileURL);
+            Schema existing = schemas.putIfAbsent(key, schema);
+            schema = existing != null ? existing : schema;
+        }
+        return schema;
+    }
+
     /**
      * Validates the given document with its schema.
      * 
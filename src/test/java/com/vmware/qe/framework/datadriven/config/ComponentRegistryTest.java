@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.config;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.KEY_DEFAULT;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Checks how {@link ComponentRegistry} registers, creates and replaces components.<br>
+ */
+public class ComponentRegistryTest {
+    @Test
+    public void testPutDefaultReturnsPreviousDefault() {
+        ComponentRegistry<Runnable> registry = new ComponentRegistry<>(Runnable.class);
+        Runnable first = new Task();
+        Runnable second = new OtherTask();
+        assertNull(registry.put(KEY_DEFAULT, first));
+        assertSame(registry.get(KEY_DEFAULT), first);
+        assertSame(registry.put(KEY_DEFAULT, second), first);
+        assertSame(registry.get(KEY_DEFAULT), second);
+        assertNull(registry.put("task", second));
+        assertSame(registry.put("task", first), second);
+    }
+
+    @Test
+    public void testDefaultIsAKey() {
+        ComponentRegistry<Runnable> registry = new ComponentRegistry<>(Runnable.class);
+        registry.register("other", OtherTask.class.getName(), false);
+        assertFalse(registry.containsKey(KEY_DEFAULT));
+        assertEquals(registry.keySet(), new HashSet<>(Arrays.asList("other")));
+        registry.register("task", Task.class.getName(), true);
+        assertTrue(registry.containsKey(KEY_DEFAULT));
+        assertEquals(registry.size(), 3);
+        assertEquals(new ArrayList<>(registry.keySet()), Arrays.asList("other", "task",
+                KEY_DEFAULT));
+        assertTrue(registry.getStartupCosts().isEmpty());
+        Map<String, Runnable> copy = new HashMap<>(registry);
+        assertEquals(copy.size(), registry.size());
+        assertSame(copy.get(KEY_DEFAULT), registry.get("task"));
+        assertEquals(copy, registry);
+    }
+
+    @Test
+    public void testCreatesLazily() {
+        ComponentRegistry<Runnable> registry = new ComponentRegistry<>(Runnable.class);
+        registry.register("task", Task.class.getName(), true);
+        assertTrue(registry.getStartupCosts().isEmpty());
+        Runnable task = registry.get(KEY_DEFAULT);
+        assertEquals(task.getClass(), Task.class);
+        assertSame(registry.get("task"), task);
+        assertEquals(registry.getStartupCosts().keySet().iterator().next(), "task");
+    }
+
+    @Test
+    public void testConstructorFailure() {
+        ComponentRegistry<Runnable> registry = new ComponentRegistry<>(Runnable.class);
+        registry.register("failing", FailingTask.class.getName(), false);
+        try {
+            registry.get("failing");
+            fail("creating FailingTask should fail");
+        } catch (DDException e) {
+            assertEquals(e.getCause().getMessage(), "no task");
+        }
+    }
+
+    @Test
+    public void testServicesLoadedByGivenClassLoader() throws IOException {
+        File dir = File.createTempFile("services", "");
+        assertTrue(dir.delete() && new File(dir, "META-INF/services").mkdirs());
+        File file = new File(dir, "META-INF/services/" + Runnable.class.getName());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            writer.write("# tasks\n" + Task.class.getName() + "\n");
+        }
+        try (RecordingClassLoader classLoader = new RecordingClassLoader(dir.toURI().toURL())) {
+            ComponentRegistry<Runnable> registry = new ComponentRegistry<>(Runnable.class);
+            assertEquals(registry.registerServices(classLoader), 1);
+            assertTrue(classLoader.loaded.isEmpty());
+            assertEquals(registry.get("ComponentRegistryTest$Task").getClass(), Task.class);
+            assertEquals(classLoader.loaded, Collections.singletonList(Task.class.getName()));
+        } finally {
+            assertTrue(file.delete() && file.getParentFile().delete()
+                    && file.getParentFile().getParentFile().delete() && dir.delete());
+        }
+    }
+
+    public static class Task implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+
+    public static class OtherTask extends Task {
+    }
+
+    public static class FailingTask extends Task {
+        public FailingTask() {
+            throw new IllegalStateException("no task");
+        }
+    }
+
+    private static final class RecordingClassLoader extends URLClassLoader {
+        private final List<String> loaded = new ArrayList<>();
+
+        private RecordingClassLoader(URL url) {
+            super(new URL[] { url }, ComponentRegistryTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            loaded.add(name);
+            return super.loadClass(name, resolve);
+        }
+    }
+}
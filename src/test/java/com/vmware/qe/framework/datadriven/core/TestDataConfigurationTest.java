@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the lookups of a {@link TestDataConfiguration} against a HierarchicalConfiguration built
+ * by adding the same values with addProperty, before and after it builds it's node tree.<br>
+ */
+public class TestDataConfigurationTest {
+    private static final String[] KEYS = { "a", "b", "x-y", "vm.name", "vm.os", "vm[@id]",
+            "deep.er.key", "[@test-id]", "[@tags]" };
+    private static final String[] FLAT_KEYS = { "a", "b", "x-y", "[@test-id]", "[@tags]" };
+    private static final String[] VALUES = { "1", "alpha", "Zürich", "two words", "" };
+    /** values with variables, never given to the keys the variables refer to. */
+    private static final String[] VARIABLE_VALUES = { "${x-y}", "${x-y} and ${[@test-id]}",
+            "${missing}" };
+    private static final String[] LOOKUPS = { "vm", "deep", "deep.er", "nope", "vm.nope",
+            "[@nope]", "a(0)", "a(1)", "vm(0).name", "vm.name(1)", "vm(0)[@id]", "deep.er(0).key",
+            "nope(0)" };
+
+    @Test
+    public void testLookupsMatchAddProperty() {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            List<String> keys = randomKeys(random, KEYS);
+            HierarchicalConfiguration expected = new HierarchicalConfiguration();
+            TestData data = randomData(random, keys, expected);
+            TestDataConfiguration config = new TestDataConfiguration(data);
+            String message = "seed " + seed + ": " + data;
+            String first = keys.isEmpty() ? "a" : keys.get(0);
+            assertEquals(config.getList(first), expected.getList(first), message);
+            assertNotNull(config.getTestData()); // plain keys are looked up in the data.
+            assertSameLookups(config, expected, keys, message);
+            assertSameLookups((HierarchicalConfiguration) config.clone(), expected, keys,
+                    message);
+            config.getRootNode(); // builds the node tree.
+            assertNull(config.getTestData());
+            assertSameLookups(config, expected, keys, message + " (tree)");
+        }
+    }
+
+    @Test
+    public void testChangesStayLocal() {
+        TestData data = new TestData.Builder(TestData.Keys.of(Arrays.asList("a", "[@test-id]")))
+                .add("a", "1").add("[@test-id]", "7").build();
+        TestDataConfiguration config = new TestDataConfiguration(data, "data");
+        HierarchicalConfiguration copy = (HierarchicalConfiguration) config.clone();
+        copy.setProperty("a", "2");
+        copy.addProperty("b", "3");
+        assertEquals(copy.getString("a"), "2");
+        assertEquals(config.getString("a"), "1");
+        assertNull(config.getString("b"));
+        assertEquals(data.getString("a"), "1");
+        config.addProperty("a", "4");
+        assertEquals(config.getList("a"), Arrays.asList("1", "4"));
+        assertEquals(config.getRootNode().getName(), "data");
+        assertEquals(data.getList("a"), Arrays.asList("1"));
+        assertEquals(new TestDataConfiguration(data).getString("[@test-id]"), "7");
+    }
+
+    @Test
+    public void testComposedMatchesAddProperty() {
+        TestData.Composer composer = new TestData.Composer();
+        for (int seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            HierarchicalConfiguration expected = new HierarchicalConfiguration();
+            TestData[] parts = new TestData[1 + random.nextInt(4)];
+            List<String> allKeys = new ArrayList<>();
+            for (int i = 0; i < parts.length; i++) {
+                List<String> keys = randomKeys(random, FLAT_KEYS);
+                parts[i] = randomData(random, keys, expected);
+                allKeys.addAll(keys);
+            }
+            TestData composed = composer.compose(parts);
+            assertSameLookups(new TestDataConfiguration(composed), expected, allKeys, "seed "
+                    + seed + ": " + Arrays.toString(parts));
+        }
+    }
+
+    private static List<String> randomKeys(Random random, String[] pool) {
+        List<String> keys = new ArrayList<>(Arrays.asList(pool));
+        for (int i = keys.size() - 1; i > 0; i--) {
+            keys.set(i, keys.set(random.nextInt(i + 1), keys.get(i)));
+        }
+        return keys.subList(0, random.nextInt(keys.size() + 1));
+    }
+
+    /**
+     * Builds data of random values at given keys, adding the same values to the expected
+     * configuration.<br>
+     */
+    private static TestData randomData(Random random, List<String> keys,
+            HierarchicalConfiguration expected) {
+        TestData.Builder builder = new TestData.Builder(TestData.Keys.of(keys));
+        for (String key : keys) {
+            int count = key.startsWith("[@") ? 1 : random.nextInt(3);
+            for (int i = 0; i < count; i++) {
+                boolean variable = !key.startsWith("[@") && !key.equals("x-y")
+                        && random.nextInt(3) == 0;
+                String value = variable ? VARIABLE_VALUES[random.nextInt(
+                        VARIABLE_VALUES.length)] : VALUES[random.nextInt(VALUES.length)];
+                builder.add(key, value);
+                expected.addProperty(key, value);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void assertSameLookups(HierarchicalConfiguration config,
+            HierarchicalConfiguration expected, List<String> keys, String message) {
+        assertEquals(keySet(config), keySet(expected), message);
+        assertEquals(config.isEmpty(), expected.isEmpty(), message);
+        List<String> lookups = new ArrayList<>(keys);
+        lookups.addAll(Arrays.asList(LOOKUPS));
+        for (String key : lookups) {
+            String keyMessage = message + ", key " + key;
+            assertEquals(config.getProperty(key), expected.getProperty(key), keyMessage);
+            assertEquals(config.containsKey(key), expected.containsKey(key), keyMessage);
+            assertEquals(config.getString(key), expected.getString(key), keyMessage);
+            assertEquals(config.getList(key), expected.getList(key), keyMessage);
+            assertEquals(config.getStringArray(key), expected.getStringArray(key), keyMessage);
+        }
+    }
+
+    private static TreeSet<String> keySet(HierarchicalConfiguration config) {
+        TreeSet<String> keys = new TreeSet<>();
+        for (Iterator<String> it = config.getKeys(); it.hasNext();) {
+            keys.add(it.next());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DataFilter;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+import com.vmware.qe.framework.datadriven.core.TestData;
+import com.vmware.qe.framework.datadriven.core.TestDataConfiguration;
+import com.vmware.qe.framework.datadriven.impl.filter.DataFilterBasedOnProperty;
+import com.vmware.qe.framework.datadriven.impl.filter.DataFilterBasedOnTestId;
+
+/**
+ * Checks that {@link CompiledFilters} selects the same data as calling each filter of the chain
+ * the way the filters used to decide, for random filter settings and data.<br>
+ */
+public class CompiledFiltersTest {
+    private static final String CLASS_NAME = "a.B";
+    private static final String[] KEYS = { "a", "b", "vm.name" };
+    private static final String[] VALUES = { "1", "2", "3", "" };
+    private static final String[] TEST_IDS = { "1", "2", "3", "" };
+
+    @Test
+    public void testMatchesOriginalChain() {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            HierarchicalConfiguration context = randomContext(random);
+            List<DataFilter> filters = new ArrayList<>();
+            List<DataFilter> originalFilters = new ArrayList<>();
+            filters.add(new DataFilterBasedOnProperty());
+            originalFilters.add(new OriginalPropertyFilter());
+            filters.add(new DataFilterBasedOnTestId());
+            originalFilters.add(new OriginalTestIdFilter());
+            if (random.nextBoolean()) {
+                filters.add(new OddValueFilter());
+                originalFilters.add(new OddValueFilter());
+            }
+            CompiledFilters compiled = CompiledFilters.compile(filters, CLASS_NAME, context);
+            for (KeyValuePredicate predicate : compiled.getSelection()) {
+                assertTrue(predicate.getAcceptedValues().size() > 0);
+            }
+            for (int i = 0; i < 600; i++) {
+                HierarchicalConfiguration data = randomData(random);
+                boolean expected = true;
+                for (DataFilter filter : originalFilters) {
+                    expected &= filter.canRun(CLASS_NAME, data, context);
+                }
+                assertEquals(compiled.canRun(data), expected, "seed " + seed + ", data " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testFiltersAcceptingAllDataDropped() {
+        List<DataFilter> filters = new ArrayList<>();
+        filters.add(new DataFilterBasedOnProperty());
+        filters.add(new DataFilterBasedOnTestId());
+        assertEquals(CompiledFilters.compile(filters, CLASS_NAME, new HierarchicalConfiguration())
+                .size(), 0);
+        filters.add(new OddValueFilter());
+        assertEquals(CompiledFilters.compile(filters, CLASS_NAME, new HierarchicalConfiguration())
+                .size(), 1);
+    }
+
+    private static HierarchicalConfiguration randomContext(Random random) {
+        HierarchicalConfiguration context = new HierarchicalConfiguration();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            context.addProperty(DataFilterBasedOnProperty.ARG_FILTER_KEY, pick(random, KEYS));
+        }
+        for (int i = random.nextInt(4); i > 0; i--) {
+            context.addProperty(DataFilterBasedOnProperty.ARG_FILTER_VALUE, pick(random,
+                    VALUES));
+        }
+        for (int i = random.nextInt(3); i > 0; i--) {
+            context.addProperty(CLASS_NAME + "-testids", pick(random, TEST_IDS));
+        }
+        return context;
+    }
+
+    /**
+     * Builds random data, held as plain configuration or as {@link TestData}.<br>
+     */
+    private static HierarchicalConfiguration randomData(Random random) {
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String key : KEYS) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                keys.add(key);
+                values.add(pick(random, VALUES));
+            }
+        }
+        if (random.nextBoolean()) {
+            keys.add(TAG_TESTID_ATTR);
+            values.add(pick(random, TEST_IDS));
+        }
+        if (random.nextBoolean()) {
+            HierarchicalConfiguration data = new HierarchicalConfiguration();
+            for (int i = 0; i < keys.size(); i++) {
+                data.addProperty(keys.get(i), values.get(i));
+            }
+            return data;
+        }
+        List<String> names = new ArrayList<>();
+        for (String key : keys) {
+            if (!names.contains(key)) {
+                names.add(key);
+            }
+        }
+        TestData.Builder builder = new TestData.Builder(TestData.Keys.of(names));
+        for (int i = 0; i < keys.size(); i++) {
+            builder.add(keys.get(i), values.get(i));
+        }
+        return new TestDataConfiguration(builder.build());
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Filter which can not be compiled, accepting data whose value of 'a' is odd or missing.<br>
+     */
+    private static final class OddValueFilter implements DataFilter {
+        @Override
+        public boolean canRun(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            String value = data.getString("a", "");
+            return value.isEmpty() || Integer.parseInt(value) % 2 == 1;
+        }
+    }
+
+    /**
+     * {@link DataFilterBasedOnProperty} as it was before it could be compiled.<br>
+     */
+    private static final class OriginalPropertyFilter implements DataFilter {
+        @Override
+        public boolean canRun(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            if (!context.containsKey(DataFilterBasedOnProperty.ARG_FILTER_KEY)
+                    || context.getString(DataFilterBasedOnProperty.ARG_FILTER_KEY).trim()
+                            .equals("")) {
+                return true; // the DD configuration gives no filter either.
+            }
+            String[] filterKeys = context.getStringArray(DataFilterBasedOnProperty.ARG_FILTER_KEY);
+            String[] filterValues = context.getStringArray(
+                    DataFilterBasedOnProperty.ARG_FILTER_VALUE);
+            for (int index = 0; index < filterKeys.length; index++) {
+                String filterValue = index >= filterValues.length ? "" : filterValues[index];
+                if (data.containsKey(filterKeys[index])
+                        && data.getString(filterKeys[index], "").equals(filterValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * {@link DataFilterBasedOnTestId} as it was before it could be compiled.<br>
+     */
+    private static final class OriginalTestIdFilter implements DataFilter {
+        @Override
+        public boolean canRun(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            List<String> testIds = Arrays.asList(context.getStringArray(className + "-testids"));
+            return testIds.isEmpty() || testIds.contains(data.getString(TAG_TESTID_ATTR, ""));
+        }
+    }
+}
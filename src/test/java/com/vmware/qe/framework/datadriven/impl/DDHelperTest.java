@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_AUTOGEN_ATTR;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_DATA_INJECTOR_TYPE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_FILTER_PUSHDOWN;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_DYNAMIC;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_TYPE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_PARALLEL;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_POOL_SIZE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_INSTANCE_CREATOR_TYPE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TYPE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.DynamicUsage;
+import com.vmware.qe.framework.datadriven.SampleTest;
+import com.vmware.qe.framework.datadriven.config.DDComponentsConfig;
+import com.vmware.qe.framework.datadriven.config.DDConfig;
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.DataFilter;
+import com.vmware.qe.framework.datadriven.core.DataGenerator;
+import com.vmware.qe.framework.datadriven.core.DataInjector;
+import com.vmware.qe.framework.datadriven.core.StreamingDataGenerator;
+import com.vmware.qe.framework.datadriven.core.TestInstanceCreator;
+import com.vmware.qe.framework.datadriven.core.ThreadSafe;
+import com.vmware.qe.framework.datadriven.demo.app.TestLaunchBirds;
+import com.vmware.qe.framework.datadriven.impl.filter.DataFilterBasedOnProperty;
+import com.vmware.qe.framework.datadriven.impl.generator.ExhaustiveGenerator;
+import com.vmware.qe.framework.datadriven.impl.supplier.BinaryDataFile;
+import com.vmware.qe.framework.datadriven.impl.supplier.DataFileCompiler;
+import com.vmware.qe.framework.datadriven.impl.supplier.XMLDataSupplier;
+
+/**
+ * Checks the tests created by {@link DDHelper#getTests(String, HierarchicalConfiguration)}.<br>
+ */
+public class DDHelperTest {
+    private static final String CLASS_NAME = SampleTest.class.getName();
+    private static final String CREATOR = "DDHelperTest-creator";
+    private static final String SERIAL_CREATOR = "DDHelperTest-serial-creator";
+    private static final String FAILING_CREATOR = "DDHelperTest-failing-creator";
+    private static final String INJECTOR = "DDHelperTest-injector";
+    private static final String SERIAL_INJECTOR = "DDHelperTest-serial-injector";
+    private static final String STREAMING_GENERATOR = "DDHelperTest-streaming-generator";
+    private static final String LIST_GENERATOR = "DDHelperTest-list-generator";
+    /** test classes of the sample data files and the supplier of each. */
+    private static final String[][] DATA_CLASSES = { { CLASS_NAME, "XML" },
+            { CLASS_NAME, "CSV" }, { DynamicUsage.class.getName(), "XML" },
+            { TestLaunchBirds.class.getName(), "XML" } };
+
+    @BeforeClass
+    public void registerComponents() {
+        DDComponentsConfig config = DDComponentsConfig.getInstance();
+        config.getInstanceCreatorMap().put(CREATOR, new Creator());
+        config.getInstanceCreatorMap().put(SERIAL_CREATOR, new SerialCreator());
+        config.getInstanceCreatorMap().put(FAILING_CREATOR, new FailingCreator());
+        config.getDataInjectorMap().put(INJECTOR, new Injector());
+        config.getDataInjectorMap().put(SERIAL_INJECTOR, new SerialInjector());
+        config.getDataGeneratorMap().put(STREAMING_GENERATOR, new CountingGenerator());
+        config.getDataGeneratorMap().put(LIST_GENERATOR, new ListGenerator());
+    }
+
+    @Test
+    public void testMatchesEagerPath() {
+        for (String[] dataClass : DATA_CLASSES) {
+            for (String generator : new String[] { "AllComb", "Pairwise", "IPOG" }) {
+                for (HierarchicalConfiguration context : filterContexts()) {
+                    context.addProperty(TAG_SUPPLIER_TYPE, dataClass[1]);
+                    context.addProperty(TAG_GENERATOR_TYPE, generator);
+                    assertSameTests(dataClass[0], context);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStaticDataOnlyWithoutGeneration() {
+        Configuration ddConfig = DDConfig.getSingleton().getData();
+        Object dynamic = ddConfig.getProperty(TAG_GENERATOR_DYNAMIC);
+        ddConfig.setProperty(TAG_GENERATOR_DYNAMIC, "false");
+        try {
+            for (String[] dataClass : DATA_CLASSES) {
+                for (HierarchicalConfiguration context : filterContexts()) {
+                    context.addProperty(TAG_SUPPLIER_TYPE, dataClass[1]);
+                    context.addProperty(TAG_GENERATOR_TYPE, STREAMING_GENERATOR);
+                    CountingGenerator.pulled.set(0);
+                    assertSameTests(dataClass[0], context);
+                    assertEquals(CountingGenerator.pulled.get(), 0);
+                }
+            }
+            // the static data marked auto-gen is kept.
+            HierarchicalConfiguration context = context(CREATOR, INJECTOR, false);
+            assertTrue(getData(context).toString().contains("[@auto-gen]=[true]"));
+        } finally {
+            ddConfig.setProperty(TAG_GENERATOR_DYNAMIC, dynamic);
+        }
+    }
+
+    @Test
+    public void testAutoGeneratedStaticDataDropped() {
+        List<String> datas = getData(context(CREATOR, INJECTOR, false));
+        assertTrue(datas.size() > 0);
+        assertTrue(!datas.toString().contains("[@auto-gen]=[true]"), datas.toString());
+    }
+
+    @Test
+    public void testPushdownMatchesFiltering() throws Exception {
+        String sampleXml = "com.vmware.qe.framework.datadriven.xml";
+        String sampleCsv = "com.vmware.qe.framework.datadriven.csv";
+        String dynamicXml = "com.vmware.qe.framework.datadriven.DynamicUsage.xml";
+        List<File> compiled = new ArrayList<>();
+        try {
+            for (String dataFile : new String[] { sampleXml, sampleCsv, dynamicXml }) {
+                File file = new File(SampleTest.class.getResource(dataFile).toURI());
+                File target = new File(file.getPath() + BinaryDataFile.SUFFIX);
+                compiled.add(target);
+                assertTrue(DataFileCompiler.compile(file, target), dataFile);
+            }
+            // test class, supplier and data file of the supplier.
+            String[][] suppliers = { { CLASS_NAME, "XML", null }, { CLASS_NAME, "CSV", null },
+                    { CLASS_NAME, "Binary", null },
+                    { CLASS_NAME, "Binary", sampleCsv + BinaryDataFile.SUFFIX },
+                    { DynamicUsage.class.getName(), "XML", null },
+                    { DynamicUsage.class.getName(), "Binary", null } };
+            int selective = 0;
+            for (String[] supplier : suppliers) {
+                for (HierarchicalConfiguration context : filterContexts()) {
+                    context.addProperty(TAG_SUPPLIER_TYPE, supplier[1]);
+                    context.addProperty(TAG_GENERATOR_TYPE, "AllComb");
+                    if (supplier[2] != null) {
+                        context.addProperty("supplier.dataFile", supplier[2]);
+                    }
+                    if (!CompiledFilters.compile(DDComponentsConfig.getInstance()
+                            .getDataFilters(), supplier[0], context).getSelection().isEmpty()) {
+                        selective++;
+                    }
+                    for (String pushdown : new String[] { "true", "false" }) {
+                        context.setProperty(TAG_FILTER_PUSHDOWN, pushdown);
+                        assertSameTests(supplier[0], context);
+                    }
+                }
+            }
+            assertTrue(selective > 0, "no filter pushed down");
+        } finally {
+            for (File file : compiled) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingGeneratorPulledLazily() {
+        HierarchicalConfiguration context = context(CREATOR, INJECTOR, false);
+        context.addProperty(TAG_GENERATOR_TYPE, STREAMING_GENERATOR);
+        CountingGenerator.pulled.set(0);
+        List<Integer> pulledAtCreation = new ArrayList<>();
+        for (Object test : DDHelper.getTests(CLASS_NAME, context)) {
+            pulledAtCreation.add(((Created) test).pulledAtCreation);
+        }
+        int generated = new ExhaustiveGenerator().generate(new XMLDataSupplier().getData(
+                CLASS_NAME, new HierarchicalConfiguration()), context).size();
+        assertTrue(generated > 1);
+        for (int i = 0; i < generated; i++) {
+            assertEquals(pulledAtCreation.get(i).intValue(), i + 1, "test " + i);
+        }
+        context.setProperty(TAG_GENERATOR_TYPE, "AllComb");
+        assertEquals(getData(context), getData(withGenerator(context, STREAMING_GENERATOR)));
+    }
+
+    @Test
+    public void testListGeneratorUsed() {
+        HierarchicalConfiguration context = context(CREATOR, INJECTOR, false);
+        ListGenerator.calls.set(0);
+        assertEquals(getData(withGenerator(context, LIST_GENERATOR)), getData(withGenerator(
+                context, "AllComb")));
+        assertEquals(ListGenerator.calls.get(), 1);
+    }
+
+    @Test
+    public void testParallelTestsInDataOrder() {
+        List<String> expected = getData(context(CREATOR, INJECTOR, false));
+        assertTrue(expected.size() > 4, "too few data to check the order");
+        for (int poolSize = 1; poolSize <= 4; poolSize++) {
+            HierarchicalConfiguration context = context(CREATOR, INJECTOR, true);
+            context.addProperty(TAG_INSTANCE_CREATOR_POOL_SIZE, Integer.toString(poolSize));
+            Creator.running.set(0);
+            Creator.maxRunning.set(0);
+            assertEquals(getData(context), expected, "pool size " + poolSize);
+            assertTrue(Creator.maxRunning.get() <= poolSize, Creator.maxRunning + " running");
+        }
+    }
+
+    @Test
+    public void testSerialWhenNotThreadSafe() {
+        String[][] components = { { SERIAL_CREATOR, INJECTOR }, { CREATOR, SERIAL_INJECTOR } };
+        List<String> expected = getData(context(CREATOR, INJECTOR, false));
+        for (String[] component : components) {
+            Created.threads.clear();
+            assertEquals(getData(context(component[0], component[1], true)), expected);
+            assertEquals(Created.threads.size(), 1);
+            assertTrue(Created.threads.contains(Thread.currentThread().getName()));
+        }
+    }
+
+    @Test
+    public void testCreatorExceptionNotWrapped() {
+        try {
+            DDHelper.getTests(CLASS_NAME, context(FAILING_CREATOR, INJECTOR, true));
+            fail("the creator did not fail");
+        } catch (IllegalStateException e) {
+            assertSame(e, FailingCreator.failure);
+        }
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testInvalidPoolSize() {
+        HierarchicalConfiguration context = context(CREATOR, INJECTOR, true);
+        context.addProperty(TAG_INSTANCE_CREATOR_POOL_SIZE, "0");
+        DDHelper.getTests(CLASS_NAME, context);
+    }
+
+    private static HierarchicalConfiguration context(String creator, String injector,
+            boolean parallel) {
+        HierarchicalConfiguration context = new HierarchicalConfiguration();
+        context.addProperty(TAG_INSTANCE_CREATOR_TYPE, creator);
+        context.addProperty(TAG_DATA_INJECTOR_TYPE, injector);
+        context.addProperty(TAG_INSTANCE_CREATOR_PARALLEL, Boolean.toString(parallel));
+        return context;
+    }
+
+    private static HierarchicalConfiguration withGenerator(HierarchicalConfiguration context,
+            String generator) {
+        HierarchicalConfiguration copy = (HierarchicalConfiguration) context.clone();
+        copy.setProperty(TAG_GENERATOR_TYPE, generator);
+        return copy;
+    }
+
+    /**
+     * @return contexts without filter, filtering on a property and on test-ids.
+     */
+    private static List<HierarchicalConfiguration> filterContexts() {
+        List<HierarchicalConfiguration> contexts = new ArrayList<>();
+        contexts.add(context(CREATOR, INJECTOR, false));
+        HierarchicalConfiguration byProperty = context(CREATOR, INJECTOR, false);
+        byProperty.addProperty(DataFilterBasedOnProperty.ARG_FILTER_KEY, "service");
+        byProperty.addProperty(DataFilterBasedOnProperty.ARG_FILTER_VALUE, "ssh");
+        contexts.add(byProperty);
+        for (String[] dataClass : DATA_CLASSES) {
+            HierarchicalConfiguration byTestId = context(CREATOR, INJECTOR, false);
+            byTestId.addProperty(dataClass[0] + "-testids", "1");
+            byTestId.addProperty(dataClass[0] + "-testids", "020");
+            byTestId.addProperty(dataClass[0] + "-testids", "");
+            contexts.add(byTestId);
+        }
+        return contexts;
+    }
+
+    /**
+     * Asserts that the tests have the data of the eager path, or that there are no tests if it
+     * has no data.<br>
+     */
+    private static void assertSameTests(String className, HierarchicalConfiguration context) {
+        List<String> expected = getEagerData(className, context);
+        String message = className + " " + toString(context);
+        if (expected.isEmpty()) {
+            try {
+                DDHelper.getTests(className, context);
+                fail("tests created without data: " + message);
+            } catch (DDException e) {
+                return; // expected.
+            }
+        }
+        List<String> datas = new ArrayList<>();
+        for (Object test : DDHelper.getTests(className, context)) {
+            datas.add(toString(((Created) test).data));
+        }
+        assertEquals(datas, expected, message);
+    }
+
+    /**
+     * Gets the data the way DDHelper did before the data was pulled lazily: the generated data
+     * as a list, followed by the static data, then all of it filtered.<br>
+     */
+    private static List<String> getEagerData(String className,
+            HierarchicalConfiguration context) {
+        DDComponentsConfig config = DDComponentsConfig.getInstance();
+        HierarchicalConfiguration testData = config.getDataSupplierMap().get(
+                context.getString(TAG_SUPPLIER_TYPE)).getData(className, context);
+        List<HierarchicalConfiguration> datas;
+        if (DDConfig.getSingleton().getData().getBoolean(TAG_GENERATOR_DYNAMIC, false)) {
+            datas = config.getDataGeneratorMap().get(context.getString(TAG_GENERATOR_TYPE))
+                    .generate(testData, context);
+            for (HierarchicalConfiguration aStaticData : testData.configurationsAt(TAG_DATA)) {
+                if (!aStaticData.getBoolean(TAG_AUTOGEN_ATTR, false)) {
+                    datas.add(aStaticData);
+                }
+            }
+        } else {
+            datas = testData.configurationsAt(TAG_DATA);
+        }
+        List<String> filteredData = new ArrayList<>();
+        for (HierarchicalConfiguration aTestData : datas) {
+            boolean canRun = true;
+            for (DataFilter filter : config.getDataFilters()) {
+                canRun &= filter.canRun(className, aTestData, context);
+            }
+            if (canRun) {
+                filteredData.add(toString(aTestData));
+            }
+        }
+        return filteredData;
+    }
+
+    /**
+     * @return the data of the created tests, each as its keys and values.
+     */
+    private static List<String> getData(HierarchicalConfiguration context) {
+        List<String> datas = new ArrayList<>();
+        for (Object test : DDHelper.getTests(CLASS_NAME, context)) {
+            Created created = (Created) test;
+            assertTrue(created.injected, "data not injected");
+            datas.add(toString(created.data));
+        }
+        return datas;
+    }
+
+    static String toString(HierarchicalConfiguration data) {
+        StringBuilder text = new StringBuilder();
+        for (Iterator<String> keys = data.getKeys(); keys.hasNext();) {
+            String key = keys.next();
+            text.append(key).append('=').append(data.getList(key)).append(';');
+        }
+        return text.toString();
+    }
+
+    private static final class Created {
+        private static final Set<String> threads = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final HierarchicalConfiguration data;
+        private final int pulledAtCreation = CountingGenerator.pulled.get();
+        private volatile boolean injected = false;
+
+        private Created(HierarchicalConfiguration data) {
+            this.data = data;
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Creates tests slower for some data, so that tests finish out of order.<br>
+     */
+    @ThreadSafe
+    private static class Creator implements TestInstanceCreator {
+        private static final AtomicInteger running = new AtomicInteger();
+        private static final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Object newInstance(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            int now = running.incrementAndGet();
+            for (int max; (max = maxRunning.get()) < now;) {
+                maxRunning.compareAndSet(max, now);
+            }
+            try {
+                Thread.sleep(DDHelperTest.toString(data).hashCode() & 3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            return new Created(data);
+        }
+    }
+
+    private static final class SerialCreator implements TestInstanceCreator {
+        @Override
+        public Object newInstance(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            return new Created(data);
+        }
+    }
+
+    @ThreadSafe
+    private static final class FailingCreator implements TestInstanceCreator {
+        private static final IllegalStateException failure = new IllegalStateException("failed");
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Object newInstance(String className, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            if (count.incrementAndGet() == 3) {
+                throw failure;
+            }
+            return new Created(data);
+        }
+    }
+
+    /**
+     * Streaming generator counting the data pulled from it, which must not be generated as a
+     * list.<br>
+     */
+    private static final class CountingGenerator implements StreamingDataGenerator {
+        private static final AtomicInteger pulled = new AtomicInteger();
+
+        @Override
+        public List<HierarchicalConfiguration> generate(HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            throw new AssertionError("data generated as a list");
+        }
+
+        @Override
+        public Iterator<HierarchicalConfiguration> iterate(HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            final Iterator<HierarchicalConfiguration> datas = new ExhaustiveGenerator().iterate(
+                    data, context);
+            return new Iterator<HierarchicalConfiguration>() {
+                @Override
+                public boolean hasNext() {
+                    return datas.hasNext();
+                }
+
+                @Override
+                public HierarchicalConfiguration next() {
+                    pulled.incrementAndGet();
+                    return datas.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Generator which only generates lists.<br>
+     */
+    private static final class ListGenerator implements DataGenerator {
+        private static final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public List<HierarchicalConfiguration> generate(HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            calls.incrementAndGet();
+            return new ExhaustiveGenerator().generate(data, context);
+        }
+    }
+
+    @ThreadSafe
+    private static final class Injector implements DataInjector {
+        @Override
+        public void inject(Object test, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            ((Created) test).injected = true;
+        }
+    }
+
+    private static final class SerialInjector implements DataInjector {
+        @Override
+        public void inject(Object test, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            ((Created) test).injected = true;
+        }
+    }
+}
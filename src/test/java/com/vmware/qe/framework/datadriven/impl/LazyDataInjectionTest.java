@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DataInjector;
+
+/**
+ * Checks that {@link LazyDataInjection} injects a test once and does not keep tests alive.<br>
+ */
+public class LazyDataInjectionTest {
+    @Test
+    public void testInjectsOnce() {
+        RecordingInjector injector = new RecordingInjector();
+        HierarchicalConfiguration data = new HierarchicalConfiguration();
+        Object test = new Object();
+        Object other = new Object();
+        int pendingBefore = LazyDataInjection.getPendingCount();
+        LazyDataInjection.register(test, data, injector, null);
+        LazyDataInjection.register(other, data, injector, null);
+        assertEquals(LazyDataInjection.getPendingCount(), pendingBefore + 2);
+        assertTrue(LazyDataInjection.inject(test));
+        assertFalse(LazyDataInjection.inject(test));
+        assertEquals(injector.tests.size(), 1);
+        assertSame(injector.tests.get(0), test);
+        assertSame(injector.datas.get(0), data);
+        assertFalse(LazyDataInjection.inject(new Object()));
+        assertTrue(LazyDataInjection.inject(other));
+        assertEquals(LazyDataInjection.getPendingCount(), pendingBefore);
+    }
+
+    @Test
+    public void testTestsNotPinned() throws Exception {
+        RecordingInjector injector = new RecordingInjector();
+        Object test = new Object();
+        WeakReference<Object> testRef = new WeakReference<Object>(test);
+        int pendingBefore = LazyDataInjection.getPendingCount();
+        LazyDataInjection.register(test, new HierarchicalConfiguration(), injector, null);
+        assertEquals(LazyDataInjection.getPendingCount(), pendingBefore + 1);
+        test = null;
+        for (int i = 0; i < 50 && (testRef.get() != null
+                || LazyDataInjection.getPendingCount() > pendingBefore); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(testRef.get(), "test never run should be collectable");
+        assertEquals(LazyDataInjection.getPendingCount(), pendingBefore);
+    }
+
+    private static final class RecordingInjector implements DataInjector {
+        private final List<Object> tests = new ArrayList<>();
+        private final List<HierarchicalConfiguration> datas = new ArrayList<>();
+
+        @Override
+        public void inject(Object test, HierarchicalConfiguration data,
+                HierarchicalConfiguration context) {
+            tests.add(test);
+            datas.add(data);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_COST_FILE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_COUNT;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_INDEX;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SHARD_MODE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Checks that the shards of all nodes together hold each data exactly once, in the given order.<br>
+ */
+public class ShardingTest {
+
+    @Test
+    public void testHashPartitionsExactly() {
+        for (int count = 2; count <= 7; count++) {
+            assertPartitions(randomData(new Random(count), 500), count, "hash", null);
+        }
+    }
+
+    @Test
+    public void testRoundRobinPartitionsExactly() {
+        for (int count = 2; count <= 7; count++) {
+            List<HierarchicalConfiguration> datas = randomData(new Random(count), 500);
+            List<List<HierarchicalConfiguration>> shards = assertPartitions(datas, count,
+                    "round-robin", null);
+            for (List<HierarchicalConfiguration> shard : shards) {
+                assertTrue(Math.abs(shard.size() - datas.size() / count) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void testCostPartitionsExactly() throws IOException {
+        File costFile = File.createTempFile("costs", ".properties");
+        try {
+            Random random = new Random(7);
+            Properties costs = new Properties();
+            for (int i = 0; i < 300; i++) {
+                costs.setProperty("id" + i, Integer.toString(random.nextInt(100)));
+            }
+            try (OutputStream out = new FileOutputStream(costFile)) {
+                costs.store(out, null);
+            }
+            for (int count = 2; count <= 7; count++) {
+                assertPartitions(randomData(random, 500), count, "cost", costFile);
+            }
+        } finally {
+            costFile.delete();
+        }
+    }
+
+    @Test
+    public void testHashShardStableWhenDataRemoved() {
+        List<HierarchicalConfiguration> datas = randomData(new Random(1), 500);
+        List<HierarchicalConfiguration> fewer = new ArrayList<>();
+        for (int i = 0; i < datas.size(); i += 2) {
+            fewer.add(datas.get(i));
+        }
+        for (int index = 0; index < 4; index++) {
+            Sharding sharding = Sharding.of(context(index, 4, "hash", null));
+            List<HierarchicalConfiguration> all = toList(sharding.select(datas.iterator()));
+            for (Iterator<HierarchicalConfiguration> it = sharding.select(fewer.iterator()); it
+                    .hasNext();) {
+                HierarchicalConfiguration data = it.next();
+                if (!data.getString(TAG_TESTID_ATTR, "").isEmpty()) {
+                    assertTrue(containsSame(all, data), data.getString(TAG_TESTID_ATTR));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNotSplit() {
+        assertNull(Sharding.of(new HierarchicalConfiguration()));
+        assertNull(Sharding.of(context(0, 1, "hash", null)));
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testInvalidIndex() {
+        Sharding.of(context(3, 3, "hash", null));
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testUnknownMode() {
+        Sharding.of(context(0, 3, "random", null));
+    }
+
+    /**
+     * Asserts that the shards of all nodes hold each of the data exactly once, each in the given
+     * order.<br>
+     *
+     * @return the data of each node.
+     */
+    private static List<List<HierarchicalConfiguration>> assertPartitions(
+            List<HierarchicalConfiguration> datas, int count, String mode, File costFile) {
+        Map<HierarchicalConfiguration, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < datas.size(); i++) {
+            positions.put(datas.get(i), i);
+        }
+        Map<HierarchicalConfiguration, Integer> shardOf = new IdentityHashMap<>();
+        List<List<HierarchicalConfiguration>> shards = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            Sharding sharding = Sharding.of(context(index, count, mode, costFile));
+            List<HierarchicalConfiguration> shard = toList(sharding.select(datas.iterator()));
+            int previous = -1;
+            for (HierarchicalConfiguration data : shard) {
+                Integer position = positions.get(data);
+                assertTrue(position != null && position > previous, mode + " out of order");
+                previous = position;
+                assertNull(shardOf.put(data, index), mode + " data given to two nodes");
+            }
+            shards.add(shard);
+        }
+        assertEquals(shardOf.size(), datas.size(), mode + " data given to no node");
+        return shards;
+    }
+
+    private static HierarchicalConfiguration context(int index, int count, String mode,
+            File costFile) {
+        HierarchicalConfiguration context = new HierarchicalConfiguration();
+        context.addProperty(TAG_SHARD_INDEX, Integer.toString(index));
+        context.addProperty(TAG_SHARD_COUNT, Integer.toString(count));
+        context.addProperty(TAG_SHARD_MODE, mode);
+        if (costFile != null) {
+            context.addProperty(TAG_SHARD_COST_FILE, costFile.getPath());
+        }
+        return context;
+    }
+
+    /**
+     * Builds data with distinct test-ids, some of them without test-id or with an empty one.<br>
+     */
+    private static List<HierarchicalConfiguration> randomData(Random random, int size) {
+        List<HierarchicalConfiguration> datas = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            HierarchicalConfiguration data = new HierarchicalConfiguration();
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                data.addProperty(TAG_TESTID_ATTR, "");
+            } else if (kind > 1) {
+                data.addProperty(TAG_TESTID_ATTR, "id" + i);
+            }
+            data.addProperty("value", Integer.toString(i));
+            datas.add(data);
+        }
+        return datas;
+    }
+
+    private static List<HierarchicalConfiguration> toList(
+            Iterator<HierarchicalConfiguration> datas) {
+        List<HierarchicalConfiguration> list = new ArrayList<>();
+        while (datas.hasNext()) {
+            list.add(datas.next());
+        }
+        return list;
+    }
+
+    private static boolean containsSame(List<HierarchicalConfiguration> datas,
+            HierarchicalConfiguration data) {
+        for (HierarchicalConfiguration each : datas) {
+            if (each == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
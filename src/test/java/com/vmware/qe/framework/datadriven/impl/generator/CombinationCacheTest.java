@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_CACHE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_GENERATOR_CACHE_DIR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the combinations read from a {@link CombinationCache} are the ones recorded.<br>
+ */
+public class CombinationCacheTest {
+    private File dir;
+    private HierarchicalConfiguration context;
+
+    @BeforeMethod
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("combinations").toFile();
+        context = new HierarchicalConfiguration();
+        context.addProperty(TAG_GENERATOR_CACHE, "true");
+        context.addProperty(TAG_GENERATOR_CACHE_DIR, dir.getPath());
+    }
+
+    @AfterMethod
+    public void deleteDir() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        int[] maxValues = { 1, 200, 255, 256, 65535, 65536, Integer.MAX_VALUE };
+        for (int i = 0; i < maxValues.length; i++) {
+            Random random = new Random(i);
+            int width = 1 + random.nextInt(5);
+            List<List<Integer>> combinations = randomCombinations(random, 1 + random.nextInt(300),
+                    width, maxValues[i]);
+            CombinationCache cache = CombinationCache.of("key", dataComb(i), context);
+            assertNull(cache.read(width));
+            assertEquals(toList(cache.record(combinations.iterator(), width)), combinations);
+            assertEquals(toList(cache.read(width)), combinations, "max value " + maxValues[i]);
+            cache = CombinationCache.of("key", dataComb(i), context);
+            assertEquals(toList(cache.read(width)), combinations, "max value " + maxValues[i]);
+        }
+    }
+
+    @Test
+    public void testNoCombinations() {
+        CombinationCache cache = CombinationCache.of("key", dataComb(0), context);
+        List<List<Integer>> none = new ArrayList<>();
+        assertEquals(toList(cache.record(none.iterator(), 3)), none);
+        assertEquals(toList(cache.read(3)), none);
+    }
+
+    @Test
+    public void testKeptApart() {
+        List<List<Integer>> combinations = randomCombinations(new Random(1), 10, 2, 5);
+        toList(CombinationCache.of("key", dataComb(0), context).record(combinations.iterator(),
+                2));
+        assertNull(CombinationCache.of("other", dataComb(0), context).read(2));
+        assertNull(CombinationCache.of("key", dataComb(1), context).read(2));
+        HierarchicalConfiguration attributesSwapped = new HierarchicalConfiguration();
+        attributesSwapped.addProperty("set(0)[@b]", "2");
+        attributesSwapped.addProperty("set(0)[@a]", "1");
+        HierarchicalConfiguration attributes = new HierarchicalConfiguration();
+        attributes.addProperty("set(0)[@a]", "1");
+        attributes.addProperty("set(0)[@b]", "2");
+        toList(CombinationCache.of("key", attributes, context).record(combinations.iterator(),
+                2));
+        assertEquals(toList(CombinationCache.of("key", attributesSwapped, context).read(2)),
+                combinations);
+    }
+
+    @Test
+    public void testUnusableFileIgnored() throws IOException {
+        List<List<Integer>> combinations = randomCombinations(new Random(2), 10, 3, 300);
+        CombinationCache cache = CombinationCache.of("key", dataComb(0), context);
+        toList(cache.record(combinations.iterator(), 3));
+        assertNull(cache.read(2));
+        File file = dir.listFiles()[0];
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 1);
+        }
+        assertNull(cache.read(3));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(6);
+        }
+        assertNull(cache.read(3));
+        toList(cache.record(combinations.iterator(), 3));
+        assertEquals(toList(cache.read(3)), combinations);
+    }
+
+    @Test
+    public void testNotCached() {
+        assertNull(CombinationCache.of(null, dataComb(0), context));
+        assertNull(CombinationCache.of("key", dataComb(0), new HierarchicalConfiguration()));
+        HierarchicalConfiguration disabled = new HierarchicalConfiguration();
+        disabled.addProperty(TAG_GENERATOR_CACHE, "false");
+        assertNull(CombinationCache.of("key", dataComb(0), disabled));
+    }
+
+    private static HierarchicalConfiguration dataComb(int seed) {
+        HierarchicalConfiguration dataComb = new HierarchicalConfiguration();
+        dataComb.addProperty("set(0).value", "a" + seed);
+        dataComb.addProperty("set(0).value", "b");
+        dataComb.addProperty("set(1).value", "c");
+        return dataComb;
+    }
+
+    private static List<List<Integer>> randomCombinations(Random random, int count, int width,
+            int maxValue) {
+        List<List<Integer>> combinations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Integer[] combination = new Integer[width];
+            for (int j = 0; j < width; j++) {
+                combination[j] = random.nextInt(maxValue);
+            }
+            combinations.add(Arrays.asList(combination));
+        }
+        combinations.get(random.nextInt(count)).set(random.nextInt(width), maxValue);
+        return combinations;
+    }
+
+    /**
+     * Copies the combinations, as the iterator of the cache hands out the same list each time.<br>
+     */
+    private static List<List<Integer>> toList(Iterator<List<Integer>> combinations) {
+        assertNotNull(combinations);
+        List<List<Integer>> list = new ArrayList<>();
+        while (combinations.hasNext()) {
+            list.add(new ArrayList<>(combinations.next()));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static com.vmware.qe.framework.datadriven.impl.generator.CombinationConstraints.UNDECIDED;
+import static com.vmware.qe.framework.datadriven.impl.generator.IPOGDataGeneratorTest.list;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Checks the forbid and implies constraints on full and partial combinations.<br>
+ */
+public class CombinationConstraintsTest {
+    private static final int[] SIZES = { 3, 2, 3 };
+
+    @Test
+    public void testForbid() throws ConfigurationException {
+        CombinationConstraints constraints = compile("<constraint type='forbid'>"
+                + "<if key='k0' value='v1'/><if key='k2' value='v0,v2'/></constraint>");
+        assertFalse(constraints.isAllowed(list(1, 0, 0)));
+        assertFalse(constraints.isAllowed(list(1, 1, 2)));
+        assertTrue(constraints.isAllowed(list(1, 0, 1)));
+        assertTrue(constraints.isAllowed(list(0, 0, 0)));
+        // a partial combination is only rejected once every 'if' set is decided.
+        assertFalse(constraints.isViolated(new int[] { 1, UNDECIDED, UNDECIDED }));
+        assertTrue(constraints.isViolated(new int[] { 1, UNDECIDED, 2 }));
+    }
+
+    @Test
+    public void testImplies() throws ConfigurationException {
+        CombinationConstraints constraints = compile("<constraint type='implies'>"
+                + "<if key='k0' value='v2'/><then key='k1' value='v1'/></constraint>");
+        assertFalse(constraints.isAllowed(list(2, 0, 0)));
+        assertTrue(constraints.isAllowed(list(2, 1, 0)));
+        assertTrue(constraints.isAllowed(list(0, 0, 0)));
+        assertFalse(constraints.isViolated(new int[] { 2, UNDECIDED, UNDECIDED }));
+        assertTrue(constraints.isViolated(new int[] { 2, 0, UNDECIDED }));
+    }
+
+    @Test
+    public void testNegateAndPattern() throws ConfigurationException {
+        CombinationConstraints constraints = compile("<constraint type='implies'>"
+                + "<if key='k1' pattern='v[1-9]'/><then key='k2' value='v0' negate='true'/>"
+                + "</constraint>");
+        assertFalse(constraints.isAllowed(list(0, 1, 0)));
+        assertTrue(constraints.isAllowed(list(0, 1, 1)));
+        assertTrue(constraints.isAllowed(list(0, 0, 0)));
+    }
+
+    @Test
+    public void testViolatedAtLastSet() throws ConfigurationException {
+        CombinationConstraints constraints = compile("<constraint type='forbid'>"
+                + "<if key='k0' value='v0'/><if key='k1' value='v0'/></constraint>");
+        int[] positions = { 0, 0, UNDECIDED };
+        assertFalse(constraints.isViolatedAt(0, positions));
+        assertTrue(constraints.isViolatedAt(1, positions));
+        assertFalse(constraints.isViolatedAt(2, positions));
+    }
+
+    @Test
+    public void testForPositions() throws ConfigurationException {
+        CombinationConstraints constraints = compile("<constraint type='forbid'>"
+                + "<if key='k0' value='v2'/><if key='k2' value='v1'/></constraint>");
+        List<List<Integer>> indexData = IPOGDataGeneratorTest.indexData(SIZES);
+        // sets in the order 2, 0, 1, with the elements of set 0 at reversed positions.
+        indexData.set(0, list(2, 1, 0));
+        CombinationConstraints translated = constraints.forPositions(new int[] { 2, 0, 1 },
+                indexData);
+        assertTrue(translated.isViolated(new int[] { 1, 0, UNDECIDED }));
+        assertFalse(translated.isViolated(new int[] { 1, 2, UNDECIDED }));
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testUnknownKey() throws ConfigurationException {
+        compile("<constraint type='forbid'><if key='nokey' value='v0'/></constraint>");
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testForbidWithThen() throws ConfigurationException {
+        compile("<constraint type='forbid'><if key='k0'/><then key='k1'/></constraint>");
+    }
+
+    @Test(expectedExceptions = DDException.class)
+    public void testUnknownType() throws ConfigurationException {
+        compile("<constraint type='allow'><if key='k0'/></constraint>");
+    }
+
+    private static CombinationConstraints compile(String constraints)
+            throws ConfigurationException {
+        return IPOGDataGeneratorTest.compile(IPOGDataGeneratorTest.dataComb(SIZES, constraints));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link IPOGDataGenerator} covers every t-way combination of elements which is part
+ * of an allowed combination, found by enumerating all combinations.<br>
+ */
+public class IPOGDataGeneratorTest {
+    private static final int[] SIZES = { 3, 2, 4, 3, 2 };
+
+    @Test
+    public void testCoversAllTuples() {
+        List<List<Integer>> indexData = indexData(SIZES);
+        for (int strength = IPOGDataGenerator.MIN_STRENGTH;
+                strength <= IPOGDataGenerator.MAX_STRENGTH; strength++) {
+            List<List<Integer>> rows = new IPOGDataGenerator().generateCombinations(indexData,
+                    strength);
+            assertCovers(rows, indexData, CombinationConstraints.none(), strength);
+            assertTrue(rows.size() < 3 * 2 * 4 * 3 * 2, "rows: " + rows.size());
+        }
+    }
+
+    @Test
+    public void testCoversAllowedTuplesUnderConstraints() throws ConfigurationException {
+        for (int seed = 0; seed < 60; seed++) {
+            Random random = new Random(seed);
+            int[] sizes = randomSizes(random);
+            HierarchicalConfiguration dataComb = randomDataComb(random, sizes);
+            CombinationConstraints constraints = compile(dataComb);
+            List<List<Integer>> indexData = indexData(sizes);
+            for (int strength = 2; strength <= Math.min(3, sizes.length); strength++) {
+                List<List<Integer>> rows = new IPOGDataGenerator().generateCombinations(
+                        indexData, strength, constraints);
+                assertCovers(rows, indexData, constraints, strength);
+            }
+        }
+    }
+
+    /**
+     * Constraints which only reject a pair together with a third set, so the pair looks allowed
+     * until the third set is decided.<br>
+     */
+    @Test
+    public void testImpliedConflicts() throws ConfigurationException {
+        int[] sizes = { 2, 2, 2, 2 };
+        HierarchicalConfiguration dataComb = dataComb(sizes, "<constraint type='implies'>"
+                + "<if key='k0' value='v1'/><then key='k3' value='v0'/></constraint>"
+                + "<constraint type='implies'><if key='k1' value='v1'/>"
+                + "<then key='k3' value='v1'/></constraint>"
+                + "<constraint type='forbid'><if key='k2' value='v0'/>"
+                + "<if key='k3' value='v0'/></constraint>");
+        CombinationConstraints constraints = compile(dataComb);
+        List<List<Integer>> indexData = indexData(sizes);
+        for (int strength = 2; strength <= 4; strength++) {
+            assertCovers(new IPOGDataGenerator().generateCombinations(indexData, strength,
+                    constraints), indexData, constraints, strength);
+        }
+    }
+
+    /**
+     * Asserts that every row is allowed and that every t-way combination of an allowed
+     * combination appears in some row.<br>
+     */
+    static void assertCovers(List<List<Integer>> rows, List<List<Integer>> indexData,
+            CombinationConstraints constraints, int strength) {
+        Set<List<Integer>> covered = new HashSet<>();
+        for (List<Integer> row : rows) {
+            assertTrue(constraints.isAllowed(row), "Row not allowed: " + row);
+            covered.addAll(tuples(row, strength));
+        }
+        int[] radices = new int[indexData.size()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = indexData.get(i).size();
+        }
+        MixedRadixCounter counter = new MixedRadixCounter(radices);
+        do {
+            List<Integer> comb = new ArrayList<>();
+            for (int i = 0; i < radices.length; i++) {
+                comb.add(indexData.get(i).get(counter.get(i)));
+            }
+            if (constraints.isAllowed(comb)) {
+                for (List<Integer> tuple : tuples(comb, strength)) {
+                    if (!covered.contains(tuple)) {
+                        fail("Not covered: " + tuple + " of " + comb + ", rows: " + rows);
+                    }
+                }
+            }
+        } while (counter.next());
+    }
+
+    /**
+     * @return the t-way combinations of the row, each as the sets followed by their elements.
+     */
+    private static List<List<Integer>> tuples(List<Integer> row, int strength) {
+        List<List<Integer>> tuples = new ArrayList<>();
+        int t = Math.min(strength, row.size());
+        int[] sets = new int[t];
+        for (int i = 0; i < t; i++) {
+            sets[i] = i;
+        }
+        while (true) {
+            List<Integer> tuple = new ArrayList<>();
+            for (int set : sets) {
+                tuple.add(set);
+            }
+            for (int set : sets) {
+                tuple.add(row.get(set));
+            }
+            tuples.add(tuple);
+            int i = t - 1;
+            while (i >= 0 && sets[i] == row.size() - t + i) {
+                i--;
+            }
+            if (i < 0) {
+                return tuples;
+            }
+            sets[i]++;
+            for (int j = i + 1; j < t; j++) {
+                sets[j] = sets[j - 1] + 1;
+            }
+        }
+    }
+
+    static List<List<Integer>> indexData(int[] sizes) {
+        List<List<Integer>> indexData = new ArrayList<>();
+        for (int size : sizes) {
+            List<Integer> elements = new ArrayList<>();
+            for (int e = 0; e < size; e++) {
+                elements.add(e);
+            }
+            indexData.add(elements);
+        }
+        return indexData;
+    }
+
+    static int[] randomSizes(Random random) {
+        int[] sizes = new int[3 + random.nextInt(3)];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = 2 + random.nextInt(3);
+        }
+        return sizes;
+    }
+
+    /**
+     * @return a data-combination over the sizes with a few random constraints, the element e of
+     *         set s having the key 'ks' with the value 've'.
+     */
+    static HierarchicalConfiguration randomDataComb(Random random, int[] sizes)
+            throws ConfigurationException {
+        StringBuilder constraints = new StringBuilder();
+        int count = 1 + random.nextInt(4);
+        for (int c = 0; c < count; c++) {
+            int first = random.nextInt(sizes.length);
+            int second = (first + 1 + random.nextInt(sizes.length - 1)) % sizes.length;
+            String negate = random.nextInt(4) == 0 ? " negate='true'" : "";
+            String ifCondition = "<if key='k" + first + "' value='v" + random.nextInt(sizes[first])
+                    + "'/>";
+            if (random.nextBoolean()) {
+                constraints.append("<constraint type='forbid'>").append(ifCondition).append(
+                        "<if key='k" + second + "' value='v" + random.nextInt(sizes[second])
+                                + "'" + negate + "/></constraint>");
+            } else {
+                constraints.append("<constraint type='implies'>").append(ifCondition).append(
+                        "<then key='k" + second + "' value='v" + random.nextInt(sizes[second])
+                                + "'" + negate + "/></constraint>");
+            }
+        }
+        return dataComb(sizes, constraints.toString());
+    }
+
+    static HierarchicalConfiguration dataComb(int[] sizes, String constraints)
+            throws ConfigurationException {
+        StringBuilder xml = new StringBuilder("<data-combination>");
+        for (int s = 0; s < sizes.length; s++) {
+            xml.append("<set>");
+            for (int e = 0; e < sizes[s]; e++) {
+                xml.append("<element><k").append(s).append(">v").append(e).append("</k").append(s)
+                        .append("></element>");
+            }
+            xml.append("</set>");
+        }
+        xml.append(constraints).append("</data-combination>");
+        XMLConfiguration dataComb = new XMLConfiguration();
+        dataComb.load(new StringReader(xml.toString()));
+        return dataComb;
+    }
+
+    static CombinationConstraints compile(HierarchicalConfiguration dataComb) {
+        List<List<HierarchicalConfiguration>> combData = new ArrayList<>();
+        for (HierarchicalConfiguration set : dataComb.configurationsAt("set")) {
+            combData.add(set.configurationsAt("element"));
+        }
+        return CombinationConstraints.compile(dataComb, combData);
+    }
+
+    static List<Integer> list(Integer... values) {
+        return Arrays.asList(values);
+    }
+}
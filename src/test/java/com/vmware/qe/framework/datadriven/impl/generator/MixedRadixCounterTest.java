@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Checks {@link MixedRadixCounter} against plain counting.<br>
+ */
+public class MixedRadixCounterTest {
+    private static final int[] RADICES = { 3, 1, 4, 2 };
+
+    @Test
+    public void testNextCountsInRankOrder() {
+        MixedRadixCounter counter = new MixedRadixCounter(RADICES);
+        assertEquals(counter.size(), 24);
+        for (long rank = 0; rank < counter.size(); rank++) {
+            assertEquals(counter.rank(), rank);
+            assertEquals(counter.digits(), digitsOf(rank));
+            assertEquals(counter.next(), rank < counter.size() - 1);
+        }
+        assertEquals(counter.rank(), 0);
+        assertEquals(counter.digits(), new int[RADICES.length]);
+    }
+
+    @Test
+    public void testDigitsArePlainMixedRadix() {
+        MixedRadixCounter counter = new MixedRadixCounter(RADICES);
+        for (int a = 0; a < 3; a++) {
+            for (int b = 0; b < 1; b++) {
+                for (int c = 0; c < 4; c++) {
+                    for (int d = 0; d < 2; d++) {
+                        int[] expected = { a, b, c, d };
+                        for (int i = 0; i < expected.length; i++) {
+                            assertEquals(counter.get(i), expected[i]);
+                        }
+                        counter.next();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSkipJumpsPastSharedPrefix() {
+        for (long rank = 0; rank < 24; rank++) {
+            for (int index = 0; index < RADICES.length; index++) {
+                MixedRadixCounter counter = at(rank);
+                int[] before = counter.digits().clone();
+                long expected = rank;
+                do {
+                    expected++;
+                } while (expected < counter.size() && samePrefix(digitsOf(expected), before,
+                        index));
+                int changed = counter.skip(index);
+                if (expected == counter.size()) {
+                    assertEquals(changed, -1);
+                    assertEquals(counter.rank(), 0);
+                    assertEquals(counter.digits(), new int[RADICES.length]);
+                } else {
+                    assertEquals(counter.rank(), expected);
+                    assertEquals(counter.digits(), digitsOf(expected));
+                    assertTrue(changed <= index);
+                    assertEquals(Arrays.copyOf(counter.digits(), changed), Arrays.copyOf(before,
+                            changed));
+                    assertFalse(counter.digits()[changed] == before[changed]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSkipThenNextKeepsRank() {
+        MixedRadixCounter counter = new MixedRadixCounter(RADICES);
+        int steps = 0;
+        do {
+            assertEquals(counter.digits(), digitsOf(counter.rank()));
+            steps++;
+        } while (steps % 3 == 0 ? counter.skip(2) >= 0 : counter.next());
+        assertEquals(counter.rank(), 0);
+    }
+
+    @Test
+    public void testEmptyAndZeroRadix() {
+        assertEquals(new MixedRadixCounter().size(), 0);
+        assertEquals(new MixedRadixCounter(2, 0, 3).size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOverflow() {
+        new MixedRadixCounter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return a counter moved to given rank by counting.
+     */
+    private static MixedRadixCounter at(long rank) {
+        MixedRadixCounter counter = new MixedRadixCounter(RADICES);
+        for (long i = 0; i < rank; i++) {
+            counter.next();
+        }
+        return counter;
+    }
+
+    /**
+     * @return digits of the combination of given rank, the last digit varying fastest.
+     */
+    private static int[] digitsOf(long rank) {
+        int[] digits = new int[RADICES.length];
+        for (int i = RADICES.length - 1; i >= 0; i--) {
+            digits[i] = (int) (rank % RADICES[i]);
+            rank /= RADICES[i];
+        }
+        return digits;
+    }
+
+    private static boolean samePrefix(int[] digits, int[] other, int index) {
+        return Arrays.equals(Arrays.copyOf(digits, index + 1), Arrays.copyOf(other, index + 1));
+    }
+}
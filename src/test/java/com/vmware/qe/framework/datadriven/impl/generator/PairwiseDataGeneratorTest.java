@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.generator;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link PairwiseDataGenerator} covers every allowed pair under constraints.<br>
+ */
+public class PairwiseDataGeneratorTest {
+
+    @Test
+    public void testCoversAllowedPairsUnderConstraints() throws ConfigurationException {
+        for (int seed = 0; seed < 60; seed++) {
+            Random random = new Random(seed);
+            int[] sizes = IPOGDataGeneratorTest.randomSizes(random);
+            HierarchicalConfiguration dataComb = IPOGDataGeneratorTest.randomDataComb(random,
+                    sizes);
+            CombinationConstraints constraints = IPOGDataGeneratorTest.compile(dataComb);
+            List<List<Integer>> indexData = IPOGDataGeneratorTest.indexData(sizes);
+            List<List<Integer>> rows = new ArrayList<>();
+            Iterator<List<Integer>> it = new PairwiseDataGenerator().iterateCombinations(
+                    indexData, new HierarchicalConfiguration(), constraints);
+            while (it.hasNext()) {
+                rows.add(new ArrayList<>(it.next()));
+            }
+            IPOGDataGeneratorTest.assertCovers(rows, indexData, constraints, 2);
+        }
+    }
+
+    @Test
+    public void testUnconstrainedUnchanged() {
+        List<List<Integer>> indexData = IPOGDataGeneratorTest.indexData(new int[] { 3, 2, 2 });
+        PairwiseDataGenerator generator = new PairwiseDataGenerator();
+        Iterator<List<Integer>> it = generator.iterateCombinations(indexData,
+                new HierarchicalConfiguration(), CombinationConstraints.none());
+        for (List<Integer> expected : generator.generateCombinations(indexData)) {
+            assertEquals(it.next(), expected);
+        }
+        assertEquals(it.hasNext(), false);
+    }
+}
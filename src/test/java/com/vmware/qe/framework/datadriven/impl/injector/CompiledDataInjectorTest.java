@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.injector;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.TestData;
+
+/**
+ * Checks the conversions of {@link CompiledDataInjector}, on plain configurations and on
+ * configurations backed by {@link TestData}.<br>
+ */
+public class CompiledDataInjectorTest {
+    @Test
+    public void testConversions() {
+        HierarchicalConfiguration data = newData();
+        checkInjected(data);
+        TestData testData = TestData.fromNode(data.getRootNode(), new TestData.Keys.Interner());
+        checkInjected(testData.toConfiguration());
+    }
+
+    @Test
+    public void testMissingKeys() {
+        AllTypes test = new AllTypes();
+        test.count = 7;
+        CompiledDataInjector.forClass(AllTypes.class).inject(test, new HierarchicalConfiguration());
+        assertEquals(test.count, 7);
+        assertNull(test.id);
+        assertNull(test.mode);
+        assertEquals(test.ports.length, 0);
+        assertEquals(test.names, Arrays.asList());
+    }
+
+    @Test
+    public void testStaticField() {
+        HierarchicalConfiguration data = new HierarchicalConfiguration();
+        data.addProperty("name", "first");
+        data.addProperty("level", "3");
+        CompiledDataInjector.forClass(StaticFields.class).inject(new StaticFields(), data);
+        assertEquals(StaticFields.name, "first");
+        assertEquals(StaticFields.level, 3);
+        new DataInjectorUsingAnnotations().inject(new StaticFields(), newStaticData("second"),
+                null);
+        assertEquals(StaticFields.name, "second");
+    }
+
+    @Test
+    public void testInvalidValue() {
+        HierarchicalConfiguration data = new HierarchicalConfiguration();
+        data.addProperty("count", "many");
+        try {
+            CompiledDataInjector.forClass(AllTypes.class).inject(new AllTypes(), data);
+            fail("conversion of 'many' to int should fail");
+        } catch (DDException e) {
+            assertEquals(e.getCause().getClass().getSimpleName(), "ConversionException");
+        }
+    }
+
+    private static void checkInjected(HierarchicalConfiguration data) {
+        AllTypes test = new AllTypes();
+        CompiledDataInjector.forClass(AllTypes.class).inject(test, data);
+        assertEquals(test.id, "vm-1");
+        assertEquals(test.count, 42);
+        assertEquals(test.boxedCount, Integer.valueOf(42));
+        assertEquals(test.enabled, true);
+        assertEquals(test.ratio, 0.5d);
+        assertEquals(test.mode, TimeUnit.SECONDS);
+        assertEquals(test.timeout, 90000L);
+        assertEquals(test.ports, new int[] { 22, 80, 22 });
+        assertEquals(test.secondPort, 80);
+        assertEquals(test.names, Arrays.asList("a", "b", "a"));
+        assertEquals(test.uniqueNames, new LinkedHashSet<String>(Arrays.asList("a", "b")));
+        assertEquals(test.label, "count is 42");
+        assertSame(test.all, data);
+    }
+
+    private static HierarchicalConfiguration newData() {
+        HierarchicalConfiguration data = new HierarchicalConfiguration();
+        data.addProperty("[@id]", "vm-1");
+        data.addProperty("count", "42");
+        data.addProperty("enabled", "yes");
+        data.addProperty("ratio", "0.5");
+        data.addProperty("mode", "seconds");
+        data.addProperty("timeout", "1m30s");
+        data.addProperty("port", "22");
+        data.addProperty("port", "80");
+        data.addProperty("port", "22");
+        data.addProperty("name", "a");
+        data.addProperty("name", "b");
+        data.addProperty("name", "a");
+        data.addProperty("label", "count is ${count}");
+        return data;
+    }
+
+    private static HierarchicalConfiguration newStaticData(String name) {
+        HierarchicalConfiguration data = new HierarchicalConfiguration();
+        data.addProperty("name", name);
+        return data;
+    }
+
+    static class AllTypes {
+        @Data(name = "[@id]")
+        String id;
+        @Data(name = "count")
+        int count;
+        @Data(name = "count")
+        Integer boxedCount;
+        @Data(name = "enabled")
+        boolean enabled;
+        @Data(name = "ratio")
+        double ratio;
+        @Data(name = "mode")
+        TimeUnit mode;
+        @Data(name = "timeout", converter = DurationConverter.class)
+        long timeout;
+        @Data(name = "port")
+        int[] ports;
+        @Data(name = "port(1)")
+        int secondPort;
+        @Data(name = "name")
+        List<String> names;
+        @Data(name = "name")
+        Set<String> uniqueNames;
+        @Data(name = "label")
+        String label;
+        @Data(name = "")
+        HierarchicalConfiguration all;
+    }
+
+    static class StaticFields {
+        @Data(name = "name")
+        static String name;
+        @Data(name = "level")
+        private static int level;
+    }
+}
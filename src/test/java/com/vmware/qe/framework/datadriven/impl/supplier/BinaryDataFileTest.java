@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Checks that the data loaded from a {@link BinaryDataFile} is the data of the XML or CSV file it
+ * was compiled from.<br>
+ */
+public class BinaryDataFileTest {
+    private static final String CSV = "test-id,vm.name,user,count\n" + "1,alpha,root,3\n"
+            + "2,\"beta,gamma\",,4\n" + "3,Zürich,admin,\n";
+    private static final String[] DATA_FILES = {
+            "/com/vmware/qe/framework/datadriven/com.vmware.qe.framework.datadriven.xml",
+            "/com/vmware/qe/framework/datadriven/"
+                    + "com.vmware.qe.framework.datadriven.DynamicUsage.xml" };
+    /**
+     * Data with rows stored as TestData and as nodes, lists, attributes, strings shared between
+     * namespaces and a class given in two namespaces.<br>
+     */
+    private static final String DATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<test-data>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <class-name>a.C</class-name>\n"
+            + "    <common-data target=\"x\"><host>h1</host><ports>22,80</ports></common-data>\n"
+            + "    <data test-id=\"1\"><user>root</user><count>3</count></data>\n"
+            + "    <data test-id=\"2\"><vm><name>alpha</name><disk>sda</disk></vm>"
+            + "<user>admin</user></data>\n"
+            + "    <data><vm name=\"beta\"/><city>Zürich</city></data>\n"
+            + "  </namespace>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <data test-id=\"3\"><user>admin</user><user>root</user></data>\n"
+            + "  </namespace>\n"
+            + "</test-data>\n";
+    private File dir;
+
+    @BeforeMethod
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("compiled").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDir() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testXMLRoundTrip() throws Exception {
+        byte[] xml = DATA.getBytes(StandardCharsets.UTF_8);
+        BinaryDataFile compiled = open(compile("data.xml", xml));
+        Map<String, HierarchicalConfiguration> expected = XMLDataParser.parse(
+                new ByteArrayInputStream(xml), "data.xml", true);
+        XMLDataHandlerTest.assertSameData(load(compiled, expected, null), expected);
+        assertNull(compiled.getData("a.D", null));
+    }
+
+    @Test
+    public void testDataFilesRoundTrip() throws Exception {
+        for (String dataFile : DATA_FILES) {
+            URL url = BinaryDataFileTest.class.getResource(dataFile);
+            byte[] xml;
+            try (InputStream in = url.openStream()) {
+                xml = readAll(in);
+            }
+            Map<String, HierarchicalConfiguration> expected = XMLDataParser.parse(
+                    new ByteArrayInputStream(xml), url.toExternalForm(), true);
+            BinaryDataFile compiled = open(compile(new File(url.getPath()).getName(), xml));
+            XMLDataHandlerTest.assertSameData(load(compiled, expected, null), expected);
+        }
+    }
+
+    @Test
+    public void testSelectionMatchesParser() throws Exception {
+        byte[] xml = DATA.getBytes(StandardCharsets.UTF_8);
+        BinaryDataFile compiled = open(compile("data.xml", xml));
+        List<List<KeyValuePredicate>> selections = Arrays.asList(
+                selection(TAG_TESTID_ATTR, "1", "3"), selection(TAG_TESTID_ATTR, "2"),
+                selection("user", "admin"), selection("vm.name", "alpha", "beta"));
+        for (List<KeyValuePredicate> selection : selections) {
+            // a.B only, the full load gives a.C the namespace appended for a.B as well.
+            Map<String, HierarchicalConfiguration> expected = XMLDataParser.parse(
+                    new ByteArrayInputStream(xml), "data.xml", true, new XMLDataHandler("a.B",
+                            selection));
+            XMLDataHandlerTest.assertSameData(load(compiled, expected, selection), expected);
+        }
+    }
+
+    @Test
+    public void testCSVRoundTrip() throws Exception {
+        BinaryDataFile compiled = open(compile("data.csv", CSV.getBytes(StandardCharsets.UTF_8)));
+        Map<String, HierarchicalConfiguration> expected = new HashMap<>();
+        expected.put("a.B", new CSVDataConfiguration(CSVColumnStore.read(new StringReader(CSV))));
+        XMLDataHandlerTest.assertSameData(load(compiled, expected, null), expected);
+        expected.put("a.B", new CSVDataConfiguration(CSVColumnStore.read(new StringReader(CSV),
+                selection("user", "admin"))));
+        XMLDataHandlerTest.assertSameData(load(compiled, expected, selection("user", "admin")),
+                expected);
+        assertEquals(compiled.getData("any.Class", selection(TAG_TESTID_ATTR, "2"))
+                .getList("data(0).vm.name"), Arrays.asList("beta", "gamma"));
+    }
+
+    @Test
+    public void testCompiledAgainWhenChanged() throws Exception {
+        File file = new File(dir, "data.csv");
+        Files.write(file.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+        File target = new File(dir, "data.csv" + BinaryDataFile.SUFFIX);
+        assertEquals(DataFileCompiler.compileAll(dir), 1);
+        assertTrue(BinaryDataFile.isCurrent(target));
+        assertEquals(DataFileCompiler.compileAll(dir), 0);
+        BinaryDataFile compiled = BinaryDataFile.open(target.toURI().toURL());
+        assertSame(BinaryDataFile.open(target.toURI().toURL()), compiled);
+        Files.write(file.toPath(), "test-id,name\n9,delta\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(target.lastModified() + 2000));
+        assertEquals(DataFileCompiler.compileAll(dir), 1);
+        assertTrue(target.setLastModified(file.lastModified() + 2000));
+        BinaryDataFile recompiled = BinaryDataFile.open(target.toURI().toURL());
+        assertNotSame(recompiled, compiled);
+        assertEquals(recompiled.getData("a.B", null).getString("data(0).name"), "delta");
+    }
+
+    @Test
+    public void testNotCompiled() throws Exception {
+        File other = new File(dir, "other.xml");
+        Files.write(other.toPath(), "<other/>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(DataFileCompiler.compile(other, new File(dir, "other.xml"
+                + BinaryDataFile.SUFFIX)));
+        assertFalse(BinaryDataFile.isCurrent(other));
+        try {
+            BinaryDataFile.open(other.toURI().toURL());
+            throw new AssertionError("opened a file which is not compiled");
+        } catch (DDException e) {
+            // expected.
+        }
+    }
+
+    private File compile(String name, byte[] content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content);
+        File target = new File(dir, name + BinaryDataFile.SUFFIX);
+        assertTrue(DataFileCompiler.compile(file, target));
+        return target;
+    }
+
+    private static BinaryDataFile open(File compiled) throws IOException {
+        return BinaryDataFile.open(compiled.toURI().toURL());
+    }
+
+    /**
+     * Loads the data of the classes of the expected data from the compiled file.<br>
+     */
+    private static Map<String, HierarchicalConfiguration> load(BinaryDataFile compiled,
+            Map<String, HierarchicalConfiguration> expected, List<KeyValuePredicate> selection) {
+        Map<String, HierarchicalConfiguration> dataMap = new HashMap<>();
+        for (String className : expected.keySet()) {
+            dataMap.put(className, compiled.getData(className, selection));
+        }
+        return dataMap;
+    }
+
+    private static List<KeyValuePredicate> selection(String key, String... values) {
+        return Collections.singletonList(new KeyValuePredicate(Collections.singletonMap(key,
+                Arrays.asList(values))));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int n; (n = in.read(chunk)) != -1;) {
+            bytes.write(chunk, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+}
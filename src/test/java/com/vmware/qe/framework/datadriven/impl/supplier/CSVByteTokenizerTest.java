@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.DDException;
+
+/**
+ * Checks the records of {@link CSVByteTokenizer} against the ones read by super-csv, for files
+ * with quotes, embedded line breaks, every kind of line end and a byte order mark.<br>
+ */
+public class CSVByteTokenizerTest {
+    private static final String[] LINE_ENDS = { "\n", "\r\n", "\r" };
+    private static final String[] WORDS = { "a", "vm-1", "Zürich", "東京", "x y", "1.5", "ü" };
+
+    @Test
+    public void testMatchesSuperCsv() throws IOException {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            byte[] csv = randomCsv(random, 1 + random.nextInt(20), 1 + random.nextInt(5),
+                    random.nextBoolean());
+            assertEquals(tokenize(csv), superCsvRecords(csv), "seed " + seed);
+        }
+    }
+
+    @Test
+    public void testQuotedFields() {
+        String csv = "\"a,b\",\"say \"\"hi\"\"\",\"\",\r\n\"one\r\ntwo\",\"x\ry\",z,\r\n\r\n";
+        List<List<String>> records = tokenize(csv.getBytes(StandardCharsets.UTF_8));
+        assertEquals(records.size(), 2);
+        assertEquals(records.get(0), Arrays.asList("a,b", "say \"hi\"", null, null));
+        assertEquals(records.get(1), Arrays.asList("one\ntwo", "x\ny", "z", null));
+    }
+
+    @Test
+    public void testUnterminatedQuote() {
+        CSVByteTokenizer tokenizer = new CSVByteTokenizer(ByteBuffer.wrap("a\n\"b,c\n"
+                .getBytes(StandardCharsets.UTF_8)));
+        tokenizer.next();
+        try {
+            tokenizer.next();
+            fail("unterminated quote should fail");
+        } catch (DDException e) {
+            assertEquals(e.getMessage(), "Unexpected end of file in quoted field starting on "
+                    + "line 2");
+        }
+    }
+
+    @Test
+    public void testNextRecordStart() {
+        for (int seed = 0; seed < 50; seed++) {
+            Random random = new Random(seed);
+            byte[] csv = randomCsv(random, 10, 3, false);
+            ByteBuffer buffer = ByteBuffer.wrap(csv);
+            List<List<String>> all = tokenize(csv);
+            for (int from = 0; from < csv.length; from++) {
+                boolean inQuotes = CSVByteTokenizer.countQuotes(buffer, 0, from) % 2 == 1;
+                int start = CSVByteTokenizer.nextRecordStart(buffer, from, inQuotes);
+                List<List<String>> tail = tokenize(buffer, start);
+                assertEquals(tail, all.subList(all.size() - tail.size(), all.size()),
+                        "seed " + seed + ", from " + from);
+            }
+        }
+    }
+
+    /**
+     * Generates well formed CSV content with the same number of fields in every record.<br>
+     *
+     * @param random source of the content.
+     * @param records number of records, including the header.
+     * @param fields number of fields in each record.
+     * @param byteOrderMark whether the content starts with a UTF-8 byte order mark.
+     * @return the content as UTF-8.
+     */
+    static byte[] randomCsv(Random random, int records, int fields, boolean byteOrderMark) {
+        StringBuilder csv = new StringBuilder(byteOrderMark ? "\uFEFF" : "");
+        for (int record = 0; record < records; record++) {
+            for (int field = 0; field < fields; field++) {
+                if (field > 0) {
+                    csv.append(',');
+                }
+                csv.append(record == 0 ? "h" + field : randomField(random));
+            }
+            csv.append(LINE_ENDS[random.nextInt(LINE_ENDS.length)]);
+            if (random.nextInt(10) == 0) {
+                csv.append(LINE_ENDS[random.nextInt(LINE_ENDS.length)]); // empty line.
+            }
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String randomField(Random random) {
+        switch (random.nextInt(6)) {
+        case 0:
+            return "";
+        case 1:
+            return "\"\"";
+        case 2:
+            StringBuilder quoted = new StringBuilder("\"");
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                quoted.append(WORDS[random.nextInt(WORDS.length)]);
+                switch (random.nextInt(5)) {
+                case 0:
+                    quoted.append("\"\"");
+                    break;
+                case 1:
+                    quoted.append(',');
+                    break;
+                case 2:
+                    quoted.append(LINE_ENDS[random.nextInt(LINE_ENDS.length)]);
+                    break;
+                default:
+                    break;
+                }
+            }
+            return quoted.append('"').toString();
+        default:
+            return WORDS[random.nextInt(WORDS.length)];
+        }
+    }
+
+    private static List<List<String>> tokenize(byte[] csv) {
+        return tokenize(ByteBuffer.wrap(csv), -1);
+    }
+
+    private static List<List<String>> tokenize(ByteBuffer buffer, int start) {
+        CSVByteTokenizer tokenizer = start < 0 ? new CSVByteTokenizer(buffer)
+                : new CSVByteTokenizer(buffer, start, buffer.limit());
+        List<List<String>> records = new ArrayList<>();
+        while (tokenizer.next()) {
+            List<String> record = new ArrayList<>();
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                record.add(tokenizer.decode(i));
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<List<String>> superCsvRecords(byte[] csv) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvListReader reader = new CsvListReader(new InputStreamReader(
+                new ByteArrayInputStream(csv), StandardCharsets.UTF_8),
+                CsvPreference.STANDARD_PREFERENCE)) {
+            for (List<String> record; (record = reader.read()) != null;) {
+                records.add(new ArrayList<>(record));
+            }
+        }
+        if (!records.isEmpty() && records.get(0).get(0) != null
+                && records.get(0).get(0).startsWith("\uFEFF")) {
+            records.get(0).set(0, records.get(0).get(0).substring(1));
+        }
+        return records;
+    }
+}
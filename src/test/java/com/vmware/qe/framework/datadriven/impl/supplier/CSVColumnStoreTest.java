@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.supercsv.io.CsvMapReader;
+import org.supercsv.prefs.CsvPreference;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Checks the rows of a {@link CSVColumnStore} against the test data built the way the CSV
+ * supplier used to build it, with HierarchicalConfiguration.addProperty for each cell.<br>
+ */
+public class CSVColumnStoreTest {
+    private static final String DOTTED = "test-id,vm.name,count,vm.host.ip\n"
+            + "1,alpha,3,10.0.0.1\n" + "2,\"beta,gamma\",,10.0.0.2\n";
+
+    @Test
+    public void testDottedHeaderNests() throws IOException {
+        CSVColumnStore store = CSVColumnStore.read(new StringReader(DOTTED));
+        HierarchicalConfiguration row = store.getRow(0);
+        assertEquals(row.getString("vm.name"), "alpha");
+        assertEquals(row.getString("vm.host.ip"), "10.0.0.1");
+        assertEquals(row.getString("[@test-id]"), "1");
+        assertNull(row.getString("vm"));
+        assertEquals(row.configurationsAt("vm").size(), 1);
+        assertEquals(store.getRow(1).getList("vm.name"), Arrays.asList("beta", "gamma"));
+        CSVDataConfiguration data = new CSVDataConfiguration(store);
+        assertEquals(data.configurationsAt("data").get(0).getString("vm.name"), "alpha");
+        data.getRoot(); // builds the node tree of all rows.
+        assertEquals(data.getString("data(0).vm.name"), "alpha");
+        assertEquals(data.getString("data(0).vm.host.ip"), "10.0.0.1");
+        assertEquals(data.getList("data(1).vm.name"), Arrays.asList("beta", "gamma"));
+        assertEquals(data.getString("data(1)[@test-id]"), "2");
+    }
+
+    @Test
+    public void testRowsMatchAddProperty() throws IOException {
+        String csv = "test-id,vm.name,vm.os,user,vm\n" + "1,alpha,linux,root,x\n"
+                + "2,beta,,\"a,b\",\n" + "3,,win,admin,y\n";
+        assertRowsMatch(CSVColumnStore.read(new StringReader(csv)), csv);
+    }
+
+    @Test
+    public void testExpressionHeaderMatchesAddProperty() throws IOException {
+        String csv = "test-id,vm[@id],vm.disk(0)\n" + "1,7,sda\n";
+        CSVColumnStore store = CSVColumnStore.read(new StringReader(csv));
+        assertEquals(store.getRow(0).getString("vm[@id]"), "7");
+        assertRowsMatch(store, csv);
+    }
+
+    @Test
+    public void testDottedHeaderWhenMapped() throws IOException {
+        File file = File.createTempFile("dotted", ".csv");
+        try {
+            Files.write(file.toPath(), DOTTED.getBytes(StandardCharsets.UTF_8));
+            assertRowsMatch(CSVColumnStore.map(file.toURI().toURL()), DOTTED);
+            assertRowsMatch(CSVColumnStore.map(file.toURI().toURL(), 0), DOTTED);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSelectionOnDottedHeader() throws IOException {
+        List<KeyValuePredicate> selection = new ArrayList<>();
+        selection.add(new KeyValuePredicate(Collections.singletonMap("vm.name",
+                Arrays.asList("alpha"))));
+        CSVColumnStore store = CSVColumnStore.read(new StringReader(DOTTED), selection);
+        assertEquals(store.getRowCount(), 1);
+        assertEquals(store.getRow(0).getString("vm.name"), "alpha");
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        File file = File.createTempFile("parallel", ".csv");
+        try {
+            for (int seed = 0; seed < 3; seed++) {
+                byte[] csv = CSVByteTokenizerTest.randomCsv(new Random(seed), 60000, 4,
+                        seed == 0);
+                Files.write(file.toPath(), csv);
+                CSVColumnStore expected = CSVColumnStore.read(new InputStreamReader(
+                        new ByteArrayInputStream(csv), StandardCharsets.UTF_8));
+                assertSameCells(CSVColumnStore.map(file.toURI().toURL(), 0), expected);
+                List<KeyValuePredicate> selection = Collections.singletonList(
+                        new KeyValuePredicate(Collections.singletonMap("h1", Arrays.asList("a",
+                                "東京"))));
+                expected = CSVColumnStore.read(new InputStreamReader(new ByteArrayInputStream(
+                        csv), StandardCharsets.UTF_8), selection);
+                assertSameCells(CSVColumnStore.map(file.toURI().toURL(), 0, selection),
+                        expected);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertSameCells(CSVColumnStore store, CSVColumnStore expected) {
+        assertEquals(store.getHeader(), expected.getHeader());
+        assertEquals(store.getRowCount(), expected.getRowCount());
+        for (int row = 0; row < expected.getRowCount(); row++) {
+            for (int column = 0; column < expected.getHeader().length; column++) {
+                assertEquals(store.getValue(row, column), expected.getValue(row, column), "row "
+                        + row + ", column " + column);
+            }
+        }
+    }
+
+    /**
+     * Asserts that every row of the store has the keys and values of the data built by adding
+     * each cell with addProperty, both before and after the node tree of the row is built.<br>
+     */
+    static void assertRowsMatch(CSVColumnStore store, String csv) throws IOException {
+        List<HierarchicalConfiguration> expected = addPropertyRows(csv);
+        assertEquals(store.getRowCount(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            HierarchicalConfiguration expectedRow = expected.get(i);
+            HierarchicalConfiguration row = store.getRow(i);
+            for (Iterator<String> keys = expectedRow.getKeys(); keys.hasNext();) {
+                String key = keys.next();
+                assertEquals(row.getList(key), expectedRow.getList(key), key);
+            }
+            HierarchicalConfiguration rowTree = new HierarchicalConfiguration();
+            rowTree.setRoot(store.getRowNode(i));
+            assertEquals(keys(rowTree), keys(expectedRow));
+            for (Iterator<String> keys = expectedRow.getKeys(); keys.hasNext();) {
+                String key = keys.next();
+                assertEquals(rowTree.getList(key), expectedRow.getList(key), key);
+            }
+        }
+    }
+
+    /**
+     * Builds the rows the way the CSV supplier built them before they were stored in columns.<br>
+     */
+    static List<HierarchicalConfiguration> addPropertyRows(String csv) throws IOException {
+        List<HierarchicalConfiguration> rows = new ArrayList<>();
+        try (CsvMapReader reader = new CsvMapReader(new StringReader(csv),
+                CsvPreference.STANDARD_PREFERENCE)) {
+            String[] header = reader.getHeader(true);
+            Map<String, String> map;
+            while ((map = reader.read(header)) != null) {
+                HierarchicalConfiguration row = new HierarchicalConfiguration();
+                for (String column : header) {
+                    if (column.equals("test-id")) {
+                        row.addProperty("[@test-id]", map.get(column));
+                    } else {
+                        row.addProperty(column, map.get(column));
+                    }
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> keys(HierarchicalConfiguration data) {
+        List<String> keys = new ArrayList<>();
+        for (Iterator<String> it = data.getKeys(); it.hasNext();) {
+            keys.add(it.next());
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+}
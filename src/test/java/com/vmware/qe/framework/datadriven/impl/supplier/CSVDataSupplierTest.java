@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_MMAP;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_PARALLEL;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_CSV_PARALLEL_THRESHOLD;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_TESTID_INDEX_DIR;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Checks that every reading mode of {@link CSVDataSupplier} gives the same data for a UTF-8 file
+ * with a byte order mark, CRLF line ends and quoted cells.<br>
+ */
+public class CSVDataSupplierTest {
+    private static final String DATA_FILE = "utf8-data.csv";
+
+    @Test
+    public void testModesDecodeAlike() throws Exception {
+        List<HierarchicalConfiguration> expected = load(context()).configurationsAt("data");
+        assertEquals(expected.size(), 3);
+        assertEquals(expected.get(0).getString(TAG_TESTID_ATTR), "1");
+        assertEquals(expected.get(0).getString("city"), "Zürich");
+        assertEquals(expected.get(0).getString("note"), "says \"grüezi\"");
+        assertEquals(expected.get(1).getString("city"), "東京");
+        assertEquals(expected.get(1).getString("note"), "line one\nline two");
+        assertEquals(expected.get(1).getString("vm.name"), "beta");
+        assertEquals(expected.get(2).getList("note"), Arrays.asList("a", "b"));
+        HierarchicalConfiguration mmap = context();
+        mmap.addProperty(TAG_SUPPLIER_CSV_MMAP, "true");
+        assertSameRows(load(mmap).configurationsAt("data"), expected);
+        HierarchicalConfiguration parallel = context();
+        parallel.addProperty(TAG_SUPPLIER_CSV_PARALLEL, "true");
+        parallel.addProperty(TAG_SUPPLIER_CSV_PARALLEL_THRESHOLD, "0");
+        assertSameRows(load(parallel).configurationsAt("data"), expected);
+    }
+
+    @Test
+    public void testIndexedModeDecodesAlike() throws Exception {
+        File indexDir = Files.createTempDirectory("tidx").toFile();
+        try {
+            HierarchicalConfiguration indexed = context();
+            indexed.addProperty(TAG_SUPPLIER_TESTID_INDEX, "true");
+            indexed.addProperty(TAG_SUPPLIER_TESTID_INDEX_DIR, indexDir.getPath());
+            List<KeyValuePredicate> selection = Collections.singletonList(new KeyValuePredicate(
+                    Collections.singletonMap(TAG_TESTID_ATTR, Arrays.asList("1", "2"))));
+            HierarchicalConfiguration data = new CSVDataSupplier().getData(getClass().getName(),
+                    indexed, selection);
+            List<HierarchicalConfiguration> expected = load(context()).configurationsAt("data");
+            assertSameRows(data.configurationsAt("data"), expected.subList(0, 2));
+        } finally {
+            for (File file : indexDir.listFiles()) {
+                file.delete();
+            }
+            indexDir.delete();
+        }
+    }
+
+    private HierarchicalConfiguration load(HierarchicalConfiguration context) {
+        return new CSVDataSupplier().getData(getClass().getName(), context);
+    }
+
+    private static HierarchicalConfiguration context() {
+        HierarchicalConfiguration context = new HierarchicalConfiguration();
+        context.addProperty("supplier.dataFile", DATA_FILE);
+        return context;
+    }
+
+    private static void assertSameRows(List<HierarchicalConfiguration> rows,
+            List<HierarchicalConfiguration> expected) {
+        assertEquals(rows.size(), expected.size());
+        for (int i = 0; i < rows.size(); i++) {
+            for (String key : Arrays.asList(TAG_TESTID_ATTR, "city", "note", "vm.name")) {
+                assertEquals(rows.get(i).getList(key), expected.get(i).getList(key), key);
+            }
+        }
+    }
+}
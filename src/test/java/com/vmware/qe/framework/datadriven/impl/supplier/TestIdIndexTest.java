@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_TESTID_ATTR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Checks that the content {@link TestIdIndex} hands out for a set of test-ids gives the same
+ * selected rows as the whole data file does.<br>
+ */
+public class TestIdIndexTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<test-data>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <!-- <data test-id=\"1\"><v>comment</v></data> -->\n"
+            + "    <data test-id=\"1\"><v>1</v></data>\n"
+            + "    <data test-id='2'><v>2</v></data>\n"
+            + "    <data test-id=\"&#51;\"><v>3</v></data>\n"
+            + "    <data test-id=\"4,5\"><v>4</v></data>\n"
+            + "    <data><v>none</v></data>\n"
+            + "    <data test-id=\" 6 \"><v><![CDATA[<data test-id=\"1\">]]></v></data>\n"
+            + "  </namespace>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.C</class-name>\n"
+            + "    <data test-id=\"1\"><v>c1</v></data>\n"
+            + "  </namespace>\n"
+            + "</test-data>\n";
+    private static final String CSV = "test-id,v\r\n" + "1,one\r\n" + "\"2\",\"two\r\nlines\"\r\n"
+            + "3,\"a,b\"\r\n" + ",empty\r\n" + "\"4,5\",list\r\n" + "1,again\r\n";
+    private static final List<Set<String>> SELECTIONS = Arrays.asList(ids("1"), ids("2", "3"),
+            ids("4"), ids("5"), ids("6"), ids(""), ids("9"), ids("1", "2", "3", "4", "5", "6"));
+
+    @Test
+    public void testXMLMatchesFullLoad() throws Exception {
+        File dir = Files.createTempDirectory("tidx").toFile();
+        File file = write(dir, "data.xml", XML);
+        try {
+            TestIdIndex index = TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.XML,
+                    dir);
+            assertEquals(index.size(), 7);
+            for (Set<String> testIds : SELECTIONS) {
+                List<KeyValuePredicate> selection = selection(testIds);
+                for (String className : Arrays.asList("a.B", "a.C")) {
+                    Map<String, HierarchicalConfiguration> expected = XMLDataParser.parse(
+                            new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)),
+                            "data.xml", true, new XMLDataHandler(className, selection));
+                    try (InputStream in = index.open(testIds)) {
+                        XMLDataHandlerTest.assertSameData(XMLDataParser.parse(in, "data.xml",
+                                true, new XMLDataHandler(className, selection)), expected);
+                    }
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCSVMatchesFullLoad() throws Exception {
+        File dir = Files.createTempDirectory("tidx").toFile();
+        File file = write(dir, "data.csv", CSV);
+        try {
+            TestIdIndex index = TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.CSV,
+                    dir);
+            assertEquals(index.size(), 6);
+            for (Set<String> testIds : SELECTIONS) {
+                List<KeyValuePredicate> selection = selection(testIds);
+                CSVColumnStore expected = CSVColumnStore.read(new InputStreamReader(
+                        new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)),
+                        StandardCharsets.UTF_8), selection);
+                CSVColumnStore store;
+                try (InputStream in = index.open(testIds)) {
+                    store = CSVColumnStore.read(new InputStreamReader(in, StandardCharsets.UTF_8),
+                            selection);
+                }
+                assertEquals(store.getRowCount(), expected.getRowCount(), testIds.toString());
+                for (int row = 0; row < expected.getRowCount(); row++) {
+                    for (int column = 0; column < 2; column++) {
+                        assertEquals(store.getValue(row, column), expected.getValue(row, column));
+                    }
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testRebuiltWhenFileChanges() throws Exception {
+        File dir = Files.createTempDirectory("tidx").toFile();
+        File file = write(dir, "data.csv", CSV);
+        try {
+            TestIdIndex index = TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.CSV,
+                    dir);
+            assertSame(TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.CSV, dir), index);
+            assertTrue(file.setLastModified(file.lastModified() - 10000));
+            TestIdIndex touched = TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.CSV,
+                    dir);
+            assertEquals(touched.size(), index.size());
+            write(dir, "data.csv", CSV + "7,seven\r\n");
+            TestIdIndex changed = TestIdIndex.get(file.toURI().toURL(), TestIdIndex.Format.CSV,
+                    dir);
+            assertNotSame(changed, index);
+            assertEquals(changed.size(), index.size() + 1);
+            try (InputStream in = changed.open(ids("7"))) {
+                CSVColumnStore store = CSVColumnStore.read(new InputStreamReader(in,
+                        StandardCharsets.UTF_8), selection(ids("7")));
+                assertEquals(store.getRowCount(), 1);
+                assertEquals(store.getValue(0, 1), "seven");
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static Set<String> ids(String... testIds) {
+        return new LinkedHashSet<>(Arrays.asList(testIds));
+    }
+
+    private static List<KeyValuePredicate> selection(Set<String> testIds) {
+        return Collections.singletonList(new KeyValuePredicate(Collections.singletonMap(
+                TAG_TESTID_ATTR, testIds)));
+    }
+
+    private static File write(File dir, String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+}
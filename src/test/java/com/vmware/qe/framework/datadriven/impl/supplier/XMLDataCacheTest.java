@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_VALIDATE_ONCE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.net.URL;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.SampleTest;
+
+/**
+ * Checks that {@link XMLDataCache} parses a file once for each way of parsing it.<br>
+ */
+public class XMLDataCacheTest {
+    private static final String DATA_FILE = "/com/vmware/qe/framework/datadriven/"
+            + "com.vmware.qe.framework.datadriven.xml";
+
+    @Test
+    public void testEntriesKeyedByParseSettings() throws Exception {
+        XMLDataCache cache = XMLDataCache.getInstance();
+        URL url = XMLDataCacheTest.class.getResource(DATA_FILE);
+        HierarchicalConfiguration validateOnce = new HierarchicalConfiguration();
+        validateOnce.addProperty(TAG_SUPPLIER_XML_VALIDATE_ONCE, "true");
+        cache.clear();
+        Map<String, HierarchicalConfiguration> data = cache.get(url, SampleTest.class,
+                new HierarchicalConfiguration());
+        assertSame(cache.get(url, SampleTest.class, new HierarchicalConfiguration()), data);
+        assertEquals(cache.getMisses(), 1);
+        Map<String, HierarchicalConfiguration> onceData = cache.get(url, SampleTest.class,
+                validateOnce);
+        assertEquals(cache.getMisses(), 2);
+        assertSame(cache.get(url, SampleTest.class, validateOnce), onceData);
+        assertSame(cache.get(url, SampleTest.class, null), data);
+        assertEquals(cache.getHits(), 3);
+        assertEquals(onceData.keySet(), data.keySet());
+        cache.clear();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the namespace data built by {@link XMLDataHandler} against the data built by loading the
+ * file in to an XMLConfiguration and splitting it by namespace, as the XML supplier used to.<br>
+ */
+public class XMLDataHandlerTest {
+    private static final String[] DATA_FILES = {
+            "/com/vmware/qe/framework/datadriven/com.vmware.qe.framework.datadriven.xml",
+            "/com/vmware/qe/framework/datadriven/"
+                    + "com.vmware.qe.framework.datadriven.DynamicUsage.xml",
+            "/com/vmware/qe/framework/datadriven/demo/app/"
+                    + "com.vmware.qe.framework.datadriven.demo.app.xml" };
+    /**
+     * Data with the cases XMLConfiguration handles specially. A value split on the list delimiter
+     * is always last among it's siblings, as XMLConfiguration skips the element after it.<br>
+     */
+    private static final String DATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<test-data>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <class-name> a.C </class-name>\n"
+            + "    <common-data target=\"x,y\"><host>  h1 </host><ports>22,80</ports>"
+            + "</common-data>\n"
+            + "    <data test-id=\"1\" tags=\"smoke,fast\">\n"
+            + "      <vm><name>alpha</name><disk size=\"10\">sda</disk><disk>sdb</disk></vm>\n"
+            + "      <empty/><esc>a\\,b</esc>\n"
+            + "      <text>\n        two\n        lines\n      </text>\n"
+            + "      <list>a, b ,c</list>\n"
+            + "    </data>\n"
+            + "    <data test-id=\"2\"><user>root</user><user>admin</user>"
+            + "<city>Zürich</city></data>\n"
+            + "    <data><vm name=\"beta\"/></data>\n"
+            + "  </namespace>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <data test-id=\"3\"><v>1</v><!-- comment --><w><![CDATA[x<y]]></w></data>\n"
+            + "  </namespace>\n"
+            + "</test-data>\n";
+
+    @Test
+    public void testMatchesXMLConfiguration() throws Exception {
+        byte[] xml = DATA.getBytes(StandardCharsets.UTF_8);
+        Map<String, HierarchicalConfiguration> expected = loadWithXMLConfiguration(
+                new ByteArrayInputStream(xml));
+        assertEquals(expected.keySet().size(), 2);
+        assertSameData(XMLDataParser.parse(new ByteArrayInputStream(xml), "data.xml", true),
+                expected);
+    }
+
+    @Test
+    public void testDataFilesMatchXMLConfiguration() throws Exception {
+        for (String dataFile : DATA_FILES) {
+            URL url = XMLDataHandlerTest.class.getResource(dataFile);
+            Map<String, HierarchicalConfiguration> expected;
+            try (InputStream in = url.openStream()) {
+                expected = loadWithXMLConfiguration(in);
+            }
+            try (InputStream in = url.openStream()) {
+                assertSameData(XMLDataParser.parse(in, url.toExternalForm(), true), expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSelectedClassOnly() throws Exception {
+        byte[] xml = DATA.getBytes(StandardCharsets.UTF_8);
+        Map<String, HierarchicalConfiguration> expected = loadWithXMLConfiguration(
+                new ByteArrayInputStream(xml));
+        expected.keySet().retainAll(Collections.singleton("a.B"));
+        assertSameData(XMLDataParser.parse(new ByteArrayInputStream(xml), "data.xml", true,
+                new XMLDataHandler("a.B", null)), expected);
+    }
+
+    /**
+     * Asserts that both maps have the same classes and that the data of each class has the same
+     * keys, values and data rows.<br>
+     */
+    static void assertSameData(Map<String, HierarchicalConfiguration> actual,
+            Map<String, HierarchicalConfiguration> expected) {
+        assertEquals(actual.keySet(), expected.keySet());
+        for (String className : expected.keySet()) {
+            assertSameConfiguration(actual.get(className), expected.get(className), className);
+            List<HierarchicalConfiguration> expectedRows = expected.get(className)
+                    .configurationsAt(XMLDataParser.TAG_DATA);
+            List<HierarchicalConfiguration> rows = actual.get(className).configurationsAt(
+                    XMLDataParser.TAG_DATA);
+            assertEquals(rows.size(), expectedRows.size(), className);
+            for (int i = 0; i < expectedRows.size(); i++) {
+                assertSameConfiguration(rows.get(i), expectedRows.get(i), className + " data("
+                        + i + ")");
+            }
+        }
+    }
+
+    private static void assertSameConfiguration(HierarchicalConfiguration actual,
+            HierarchicalConfiguration expected, String message) {
+        List<String> keys = keys(expected);
+        assertEquals(keys(actual), keys, message);
+        for (String key : keys) {
+            assertEquals(actual.getList(key), expected.getList(key), message + ": " + key);
+        }
+    }
+
+    private static List<String> keys(HierarchicalConfiguration data) {
+        List<String> keys = new ArrayList<>();
+        for (Iterator<String> it = data.getKeys(); it.hasNext();) {
+            keys.add(it.next());
+        }
+        return keys;
+    }
+
+    /**
+     * Loads the data the way the XML supplier did before it parsed the files itself.<br>
+     */
+    static Map<String, HierarchicalConfiguration> loadWithXMLConfiguration(InputStream in)
+            throws Exception {
+        XMLConfiguration dataFromFile = new XMLConfiguration();
+        dataFromFile.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Map<String, HierarchicalConfiguration> dataMap = new HashMap<>();
+        for (HierarchicalConfiguration namespace : dataFromFile.configurationsAt(
+                XMLDataParser.TAG_NAMESPACE)) {
+            for (String className : namespace.getStringArray(XMLDataParser.TAG_CLASS_NAME)) {
+                if (!dataMap.containsKey(className)) {
+                    dataMap.put(className, namespace);
+                } else {
+                    XMLDataParser.append(dataMap.get(className), namespace);
+                }
+            }
+        }
+        return dataMap;
+    }
+}
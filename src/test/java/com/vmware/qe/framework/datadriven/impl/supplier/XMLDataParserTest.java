@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_VALIDATE_ONCE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Checks that {@link XMLDataParser} reads a data file once and validates it again only when it
+ * changed.<br>
+ */
+public class XMLDataParserTest {
+    private static final String VALID = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<test-data><namespace><class-name>a.B</class-name>"
+            + "<data test-id=\"1\"><user>root</user></data></namespace></test-data>\n";
+    /** the same length as the valid data, with an attribute the schema does not allow. */
+    private static final String INVALID = VALID.replace("test-id", "test-ix");
+
+    @Test
+    public void testReadOnce() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        URL url = new URL(null, "counting:data.xml", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        reads.incrementAndGet();
+                        return new ByteArrayInputStream(VALID.getBytes(StandardCharsets.UTF_8));
+                    }
+                };
+            }
+        });
+        for (String validateOnce : new String[] { "false", "true", "true" }) {
+            reads.set(0);
+            assertEquals(XMLDataParser.load(url, XMLDataParserTest.class, context(validateOnce))
+                    .keySet().size(), 1);
+            assertEquals(reads.get(), 1, "validate once: " + validateOnce);
+        }
+    }
+
+    @Test
+    public void testValidatedAgainWhenChanged() throws Exception {
+        File file = File.createTempFile("data", ".xml");
+        try {
+            URL url = file.toURI().toURL();
+            HierarchicalConfiguration context = context("true");
+            write(file, INVALID, 0);
+            assertInvalid(url, context);
+            write(file, VALID, 0);
+            XMLDataParser.load(url, XMLDataParserTest.class, context);
+            long validated = file.lastModified();
+            // unchanged size and modification time, not validated again.
+            write(file, INVALID, validated);
+            XMLDataParser.load(url, XMLDataParserTest.class, context);
+            write(file, INVALID, validated + 2000);
+            assertInvalid(url, context);
+            assertInvalid(url, context("false"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertInvalid(URL url, HierarchicalConfiguration context)
+            throws Exception {
+        try {
+            XMLDataParser.load(url, XMLDataParserTest.class, context);
+            fail("invalid data file loaded");
+        } catch (SAXException e) {
+            // expected.
+        }
+    }
+
+    private static void write(File file, String content, long lastModified) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        if (lastModified != 0) {
+            file.setLastModified(lastModified);
+        }
+    }
+
+    private static HierarchicalConfiguration context(String validateOnce) {
+        HierarchicalConfiguration context = new HierarchicalConfiguration();
+        context.addProperty(TAG_SUPPLIER_XML_VALIDATE_ONCE, validateOnce);
+        return context;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_CACHE;
+import static com.vmware.qe.framework.datadriven.core.DDConstants.TAG_SUPPLIER_XML_INDEX;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the data handed out by {@link XMLDataSupplier} from its cache is not shared.<br>
+ */
+public class XMLDataSupplierTest {
+    private static final String CLASS_NAME = XMLDataSupplierTest.class.getName();
+    /** class given in the same namespace. */
+    private static final String OTHER_CLASS_NAME = XMLDataCacheTest.class.getName();
+
+    @AfterMethod
+    public void clearCache() {
+        XMLDataCache.getInstance().clear();
+    }
+
+    @Test
+    public void testCachedDataNotShared() {
+        for (HierarchicalConfiguration context : contexts()) {
+            XMLDataSupplier supplier = new XMLDataSupplier();
+            HierarchicalConfiguration data = supplier.getData(CLASS_NAME, context);
+            List<HierarchicalConfiguration> rows = data.configurationsAt("data");
+            rows.get(0).setProperty("user", "changed");
+            rows.get(1).setProperty("vm.name", "changed");
+            rows.get(1).addProperty("vm.disk", "sda");
+            data.addProperty("common-data.host", "h2");
+            data.setProperty("data(2).user", "changed");
+            for (String className : Arrays.asList(CLASS_NAME, OTHER_CLASS_NAME)) {
+                HierarchicalConfiguration again = supplier.getData(className, context);
+                assertNotSame(again, data);
+                assertUnchanged(again);
+                assertUnchanged(supplier.getData(className, context, null));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsWhileTreeIsBuilt() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 50; i++) {
+                final HierarchicalConfiguration data = new XMLDataSupplier().getData(CLASS_NAME,
+                        contexts().get(0));
+                List<Future<?>> lookups = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++) {
+                    final boolean buildsTree = thread == 0;
+                    lookups.add(pool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            if (buildsTree) {
+                                assertEquals(data.getString("data(1).vm.name"), "alpha");
+                            }
+                            assertUnchanged(data);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> lookup : lookups) {
+                    lookup.get();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertUnchanged(HierarchicalConfiguration data) {
+        assertEquals(data.getList("common-data.host"), Arrays.asList("h1"));
+        List<HierarchicalConfiguration> rows = data.configurationsAt("data");
+        assertEquals(rows.size(), 3);
+        assertEquals(rows.get(0).getList("user"), Arrays.asList("root"));
+        assertEquals(rows.get(1).getList("vm.name"), Arrays.asList("alpha"));
+        assertEquals(rows.get(1).getList("vm.disk"), Arrays.asList());
+        assertEquals(rows.get(2).getList("user"), Arrays.asList("guest"));
+    }
+
+    /**
+     * @return contexts loading the data file from the cache and from the index.
+     */
+    private static List<HierarchicalConfiguration> contexts() {
+        List<HierarchicalConfiguration> contexts = new ArrayList<>();
+        for (boolean index : new boolean[] { false, true }) {
+            HierarchicalConfiguration context = new HierarchicalConfiguration();
+            context.addProperty("supplier.dataFile", "XMLDataSupplierTest.xml");
+            context.addProperty(TAG_SUPPLIER_XML_CACHE, "true");
+            context.addProperty(TAG_SUPPLIER_XML_INDEX, Boolean.toString(index));
+            contexts.add(context);
+        }
+        return contexts;
+    }
+}
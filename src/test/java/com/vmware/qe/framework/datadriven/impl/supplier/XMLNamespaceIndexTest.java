@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.impl.supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.testng.annotations.Test;
+
+import com.vmware.qe.framework.datadriven.core.KeyValuePredicate;
+
+/**
+ * Checks that the data {@link XMLNamespaceIndex} parses for a class is the data a full load of
+ * the file gives for it.<br>
+ */
+public class XMLNamespaceIndexTest {
+    private static final String[] CLASSES = { "a.B", "a.C", "a.D", "a.E" };
+    private static final String DATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- <namespace><class-name>a.X</class-name></namespace> -->\n"
+            + "<test-data>\n"
+            + "  <?note <namespace> in a processing instruction ?>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.B</class-name>\n"
+            + "    <class-name>\n      a.C\n    </class-name>\n"
+            + "    <common-data><cmp op=\"&gt;\">a>b</cmp></common-data>\n"
+            + "    <data test-id=\"1\"><v>1</v><w><![CDATA[</namespace><x>]]></w></data>\n"
+            + "    <data test-id='2'><!-- </data> --><v>2</v></data>\n"
+            + "  </namespace>\n"
+            + "  <namespace><class-name>a.D</class-name><data test-id=\"3\"><v>3</v></data>"
+            + "</namespace>\n"
+            + "  <namespace>\n"
+            + "    <class-name>a.D</class-name>\n"
+            + "    <data test-id=\"4\"><v>4</v><vm><name>x</name></vm></data>\n"
+            + "    <data test-id=\"5\"><v>5,6</v></data>\n"
+            + "  </namespace>\n"
+            + "  <namespace><class-name>a.E</class-name></namespace>\n"
+            + "</test-data>\n";
+
+    @Test
+    public void testMatchesFullLoad() throws Exception {
+        File file = write(DATA);
+        try {
+            Map<String, HierarchicalConfiguration> expected = fullLoad(new XMLDataHandler());
+            XMLNamespaceIndex index = XMLNamespaceIndex.build(file.toURI().toURL());
+            assertEquals(index.size(), CLASSES.length);
+            for (String className : CLASSES) {
+                HierarchicalConfiguration data = index.getData(className);
+                XMLDataHandlerTest.assertSameData(Collections.singletonMap(className, data),
+                        Collections.singletonMap(className, expected.get(className)));
+                assertSame(index.getData(className), data);
+            }
+            assertNull(index.getData("a.X"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSelectionMatchesFullLoad() throws Exception {
+        File file = write(DATA);
+        try {
+            List<KeyValuePredicate> selection = Collections.singletonList(new KeyValuePredicate(
+                    Collections.singletonMap("v", Arrays.asList("2", "4"))));
+            XMLNamespaceIndex index = XMLNamespaceIndex.build(file.toURI().toURL());
+            for (String className : CLASSES) {
+                Map<String, HierarchicalConfiguration> expected = fullLoad(new XMLDataHandler(
+                        className, selection));
+                XMLDataHandlerTest.assertSameData(Collections.singletonMap(className,
+                        index.getData(className, selection)), expected);
+            }
+            index.getData("a.D"); // selects from the parsed data from now on.
+            XMLDataHandlerTest.assertSameData(Collections.singletonMap("a.D", index.getData(
+                    "a.D", selection)), fullLoad(new XMLDataHandler("a.D", selection)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnsafeFilesNotIndexed() throws Exception {
+        String[] unsafe = {
+                DATA.replace("<test-data>", "<!DOCTYPE test-data>\n<test-data>"),
+                DATA.replace("<class-name>a.B</class-name>", "<class-name>a.&#66;</class-name>"),
+                DATA.replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\"") };
+        for (String content : unsafe) {
+            File file = write(content);
+            try {
+                assertNull(XMLNamespaceIndex.build(file.toURI().toURL()), content);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static Map<String, HierarchicalConfiguration> fullLoad(XMLDataHandler dataHandler)
+            throws Exception {
+        return XMLDataParser.parse(new ByteArrayInputStream(DATA.getBytes(
+                StandardCharsets.UTF_8)), "data.xml", true, dataHandler);
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("namespaces", ".xml");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
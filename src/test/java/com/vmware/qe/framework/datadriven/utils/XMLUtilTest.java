@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013 VMware, Inc. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ *  
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vmware.qe.framework.datadriven.utils;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.xml.validation.Schema;
+
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link XMLUtil#getSchema(URL)} compiles each schema once.<br>
+ */
+public class XMLUtilTest {
+    private static final String XSD_FILE_NAME = "/data-driven.xsd";
+
+    @Test
+    public void testSchemaCompiledOnce() throws Exception {
+        URL xsdURL = XMLUtilTest.class.getResource(XSD_FILE_NAME);
+        Schema schema = XMLUtil.getSchema(xsdURL);
+        assertSame(XMLUtil.getSchema(xsdURL), schema);
+        assertSame(XMLUtil.getSchema(new URL(xsdURL.toExternalForm())), schema);
+    }
+
+    @Test
+    public void testSchemaPerURL() throws Exception {
+        File copy = File.createTempFile("data-driven", ".xsd");
+        try {
+            try (InputStream in = XMLUtilTest.class.getResourceAsStream(XSD_FILE_NAME)) {
+                Files.copy(in, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Schema schema = XMLUtil.getSchema(copy.toURI().toURL());
+            assertNotSame(schema, XMLUtil.getSchema(XMLUtilTest.class.getResource(
+                    XSD_FILE_NAME)));
+            assertSame(XMLUtil.getSchema(copy.toURI().toURL()), schema);
+        } finally {
+            copy.delete();
+        }
+    }
+}